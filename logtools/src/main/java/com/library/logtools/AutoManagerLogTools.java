@@ -1,12 +1,12 @@
 package com.library.logtools;
 
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.List;
 import java.util.Stack;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -15,41 +15,73 @@ import java.util.concurrent.ThreadFactory;
 public class AutoManagerLogTools {
 
     private static final String TAG = "AutoManagerLogTools";
-
-    // ====== 配置项 ======
-    private static volatile long maxFolderSize = 500L * 1024 * 1024; // 500MB
-    private static volatile int maxFileCount = 10000;               // 10k 文件
-    private static volatile double cleanTargetRatio = 0.8;          // 清理到 80%
+    // 分段的附属文件
+    private static final String[] SIDECAR_EXTENSIONS = {SegmentIndex.EXTENSION, SegmentBloom.EXTENSION,
+            SegmentSummary.EXTENSION};
+    // 每批删除的文件数与批次间隔
+    private static final int DELETE_BATCH_SIZE = 32;
+    private static final long DELETE_BATCH_INTERVAL_MS = 50;
+    // 按顺序匹配的保留规则，整体替换
+    private static volatile RetentionRule[] retentionRules = new RetentionRule[0];
 
     private static final ExecutorService executor =
             Executors.newSingleThreadExecutor(new ThreadFactory () {
                 @Override
                 public Thread newThread(Runnable r) {
-                    Thread t = new Thread(r);
+                    Thread t = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    });
                     t.setName("AutoManagerLogTools-Worker");
                     return t;
                 }
             });
 
 
-    // ========= 配置方法 =========
+    // ========= 配置方法（保存在 LogConfig 快照中） =========
     public static void setMaxFolderSize(long bytes) {
-        if (bytes > 0) maxFolderSize = bytes;
+        if (bytes > 0) LogConfigStore.update(config -> config.withMaxFolderSize(bytes));
     }
 
     public static void setMaxFileCount(int count) {
-        if (count > 0) maxFileCount = count;
+        if (count > 0) LogConfigStore.update(config -> config.withMaxFileCount(count));
     }
 
     public static void setCleanTargetRatio(double ratio) {
-        if (ratio > 0 && ratio < 1) cleanTargetRatio = ratio;
+        if (ratio > 0 && ratio < 1) LogConfigStore.update(config -> config.withCleanTargetRatio(ratio));
+    }
+
+    /**
+     * 设置保留规则，文件归入第一条匹配的规则，在下一次清理时生效；传入 null 或空列表时只按总量清理
+     * <p>
+     * 例如：过滤日志保留 30 天，含 E/F 的分段至少保留 14 天，只有 V 级别的分段最多占 20%：
+     * <pre>
+     * setRetentionRules(Arrays.asList(
+     *         new RetentionRule("filter").withPrefix("filter_").withMinAgeDays(30).withMaxAgeDays(30),
+     *         new RetentionRule("error").withMinLevel(Level.E).withMinAgeDays(14),
+     *         new RetentionRule("verbose").withMaxLevel(Level.V).withQuotaRatio(0.2)));
+     * </pre>
+     */
+    public static void setRetentionRules(List<RetentionRule> rules) {
+        retentionRules = rules == null ? new RetentionRule[0] : rules.toArray(new RetentionRule[0]);
+    }
+
+    public static List<RetentionRule> getRetentionRules() {
+        return new ArrayList<>(Arrays.asList(retentionRules));
     }
 
     public static void printCurrentConfig() {
+        LogConfig config = LogConfigStore.get();
         Log.d(TAG, "===== AutoManagerLogTools Config =====");
-        Log.d(TAG, "maxFolderSize = " + maxFolderSize);
-        Log.d(TAG, "maxFileCount  = " + maxFileCount);
-        Log.d(TAG, "cleanTarget   = " + (cleanTargetRatio * 100) + "%");
+        Log.d(TAG, "maxFolderSize = " + config.getMaxFolderSize());
+        Log.d(TAG, "maxFileCount  = " + config.getMaxFileCount());
+        Log.d(TAG, "cleanTarget   = " + (config.getCleanTargetRatio() * 100) + "%");
+        for (RetentionRule rule : retentionRules) {
+            Log.d(TAG, "retention     = " + rule);
+        }
     }
 
 
@@ -67,67 +99,66 @@ public class AutoManagerLogTools {
     // ========= 核心清理逻辑（兼容 Android 4.1.2） =========
     private static void cleanFolder(File folder) {
         if (folder == null || !folder.exists() || !folder.isDirectory()) return;
-
-        ArrayList<File> allFiles = new ArrayList<File>();
-        Stack<File> dirStack = new Stack<File>();
-        dirStack.push(folder);
-
-        long totalSize = 0;
-        int totalCount = 0;
-
-        // -------- 手动栈遍历所有文件（避免递归） --------
-        while (!dirStack.isEmpty()) {
-            File dir = dirStack.pop();
-            File[] items = dir.listFiles();
-            if (items == null) continue;
-
-            for (int i = 0; i < items.length; i++) {
-                File f = items[i];
-                if (f.isDirectory()) {
-                    dirStack.push(f);
-                } else {
-                    long len = f.length();
-                    totalSize += len;
-                    totalCount++;
-                    allFiles.add(f);
-                }
-            }
+        SizeLedger ledger = SizeLedger.register(folder);
+        try {
+            cleanFolder(folder, ledger);
+        } finally {
+            ledger.onCleanFinished();
         }
+    }
 
-        if (totalSize <= maxFolderSize && totalCount <= maxFileCount) {
+    // 完整遍历目录，按保留规则与总量删除文件，并用遍历结果校正台账
+    private static void cleanFolder(File folder, SizeLedger ledger) {
+        LogConfig config = LogConfigStore.get();
+        long maxFolderSize = config.getMaxFolderSize();
+        int maxFileCount = config.getMaxFileCount();
+        double cleanTargetRatio = config.getCleanTargetRatio();
+        RetentionRule[] rules = retentionRules;
+
+        long[] mark = ledger.mark();
+        CleanupPlanner planner = CleanupPlanner.scan(folder, SIDECAR_EXTENSIONS);
+        long totalSize = planner.getTotalSize();
+        int totalCount = planner.getTotalCount();
+
+        if (rules.length == 0 && totalSize <= maxFolderSize && totalCount <= maxFileCount) {
+            ledger.reconcile(mark, totalSize, totalCount);
             return; // 不需要清理
         }
 
-        // ------- 按时间排序（旧 → 新）--------
-        Collections.sort(allFiles, new Comparator<File>() {
-            @Override
-            public int compare(File o1, File o2) {
-                long d = o1.lastModified() - o2.lastModified();
-                return d < 0 ? -1 : (d > 0 ? 1 : 0);
-            }
-        });
-
-        long targetSize = (long) (maxFolderSize * cleanTargetRatio);
-        int targetCount = (int) (maxFileCount * cleanTargetRatio);
-
         long curSize = totalSize;
         int curCount = totalCount;
 
-        // ------- 依次删除最旧文件 -------
-        for (int i = 0; i < allFiles.size(); i++) {
-            if (curSize <= targetSize && curCount <= targetCount) break;
-
-            File f = allFiles.get(i);
-            long len = f.length();
-
+        // ------- 只选出需要删除的文件，分批删除 -------
+        List<CleanupPlanner.Entry> selected = planner.plan(rules, maxFolderSize, maxFileCount, cleanTargetRatio,
+                System.currentTimeMillis());
+        if (selected.isEmpty()) {
+            ledger.reconcile(mark, totalSize, totalCount);
+            return;
+        }
+        for (int i = 0; i < selected.size(); i++) {
+            if (i > 0 && i % DELETE_BATCH_SIZE == 0) {
+                // 与写日志线程共用同一存储设备，批次之间让出 IO
+                SystemClock.sleep(DELETE_BATCH_INTERVAL_MS);
+            }
+            CleanupPlanner.Entry entry = selected.get(i);
+            File f = entry.file;
+            if (SegmentRotator.isActive(f)) {
+                // 计划生成之后滚动到了这个分段
+                continue;
+            }
             if (f.delete()) {
-                curSize -= len;
+                for (String extension : SIDECAR_EXTENSIONS) {
+                    SegmentRotator.sidecarOf(f, extension).delete();
+                }
+                curSize -= entry.weight;
                 curCount--;
             } else {
                 Log.w(TAG, "Delete failed: " + f.getAbsolutePath());
             }
         }
 
+        ledger.reconcile(mark, curSize, curCount);
+
         // -------- 最后清理所有空目录 --------
         deleteEmptyDirs(folder);
     }
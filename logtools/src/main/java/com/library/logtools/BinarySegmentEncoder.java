@@ -0,0 +1,139 @@
+package com.library.logtools;
+
+import java.util.HashMap;
+
+/**
+ * 二进制日志分段编码，只在写日志线程中使用
+ * <pre>
+ * 分段   := MAGIC 帧*
+ * 帧     := TAG  id name          定义 tag 字典项
+ *         | SITE id location      定义调用位置字典项
+ *         | BLOCK time line       新的时间块，记录的时间与行号相对该块递增编码
+ *         | RECORD flags Δline Δtime pid ref message
+ * flags  := level 序号(低 3 位) | 是否为调用位置(第 4 位) | BufferType 序号(高 4 位)
+ * ref    := tag 或调用位置字典 id，0 表示 null
+ * </pre>
+ * 整数均为 varint，增量为 zigzag varint，字符串为 varint 长度 + UTF-8；
+ * 帧类型 0 视为映射分段的预分配填充，解码到此结束。字典只在分段内有效，每个二进制分段都是新文件。
+ */
+final class BinarySegmentEncoder {
+    static final byte[] MAGIC = {'F', 'L', 'B', '1'};
+    static final int FRAME_TAG = 1;
+    static final int FRAME_SITE = 2;
+    static final int FRAME_BLOCK = 3;
+    static final int FRAME_RECORD = 4;
+    static final int FLAG_SITE = 0x08;
+    // 每个时间块的记录数，块首使用绝对时间
+    private static final int BLOCK_RECORDS = 256;
+
+    private final HashMap<String, Integer> tags = new HashMap<>();
+    private final HashMap<String, Integer> sites = new HashMap<>();
+    private byte[] buffer = new byte[256];
+    private int position;
+    private boolean headerWritten;
+    private int blockRecords;
+    private long lastTime;
+    private int lastLine;
+
+    /**
+     * 新分段打开时清空全部状态
+     */
+    void reset() {
+        headerWritten = false;
+        invalidate();
+    }
+
+    /**
+     * 上一帧没有写入时调用，之后的记录重新定义字典并开始新的时间块
+     */
+    void invalidate() {
+        tags.clear();
+        sites.clear();
+        blockRecords = BLOCK_RECORDS;
+    }
+
+    /**
+     * 编码记录在消息之前的全部字节，消息本身直接取自 {@link EncodedRecord} 的缓冲区
+     *
+     * @return {@link #buffer()} 中的有效长度
+     */
+    int encodeHead(EncodedRecord record) {
+        position = 0;
+        if (!headerWritten) {
+            ensureCapacity(MAGIC.length);
+            System.arraycopy(MAGIC, 0, buffer, 0, MAGIC.length);
+            position = MAGIC.length;
+            headerWritten = true;
+        }
+        boolean site = record.location != null;
+        int ref = site ? reference(sites, FRAME_SITE, record.location) : reference(tags, FRAME_TAG, record.tag);
+        if (blockRecords >= BLOCK_RECORDS) {
+            ensureCapacity(16);
+            buffer[position++] = FRAME_BLOCK;
+            writeVarLong(record.timeMillis);
+            writeVarLong(record.lineNumber);
+            lastTime = record.timeMillis;
+            lastLine = record.lineNumber;
+            blockRecords = 0;
+        }
+        blockRecords++;
+        ensureCapacity(32);
+        buffer[position++] = FRAME_RECORD;
+        buffer[position++] = (byte) ((record.level.ordinal() & 0x07) | (site ? FLAG_SITE : 0)
+                | (record.bufferType.ordinal() << 4));
+        writeVarLong(zigzag(record.lineNumber - lastLine));
+        writeVarLong(zigzag(record.timeMillis - lastTime));
+        writeVarLong(record.pid);
+        writeVarLong(ref);
+        writeVarLong(record.getMessageTextLength());
+        lastLine = record.lineNumber;
+        lastTime = record.timeMillis;
+        return position;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    private int reference(HashMap<String, Integer> dictionary, int frame, String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = dictionary.get(value);
+        if (id != null) {
+            return id;
+        }
+        int next = dictionary.size() + 1;
+        dictionary.put(value, next);
+        ensureCapacity(12 + value.length() * 3);
+        buffer[position++] = (byte) frame;
+        writeVarLong(next);
+        // 先在预留的长度位置之后编码，再把长度写到前面
+        int start = position + 5;
+        int end = Utf8.encode(value, buffer, start);
+        writeVarLong(end - start);
+        System.arraycopy(buffer, start, buffer, position, end - start);
+        position += end - start;
+        return next;
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.length < position + extra) {
+            byte[] grown = new byte[Math.max(position + extra, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grown, 0, position);
+            buffer = grown;
+        }
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
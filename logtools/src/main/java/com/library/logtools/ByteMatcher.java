@@ -0,0 +1,77 @@
+package com.library.logtools;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 字节级 Boyer–Moore–Horspool 子串查找，ASCII 字母忽略大小写
+ * wholeWord 时 term 首尾为字母数字的一侧要求匹配位置处于单词边界，与 {@link SegmentBloom} 的分词规则一致
+ */
+final class ByteMatcher {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] pattern;
+    private final int[] skip = new int[256];
+    private final boolean leftBoundary;
+    private final boolean rightBoundary;
+
+    ByteMatcher(String term, boolean wholeWord) {
+        byte[] bytes = term.getBytes(UTF_8);
+        pattern = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            pattern[i] = fold(bytes[i]);
+        }
+        int length = pattern.length;
+        for (int i = 0; i < skip.length; i++) {
+            skip[i] = length;
+        }
+        for (int i = 0; i < length - 1; i++) {
+            skip[pattern[i] & 0xFF] = length - 1 - i;
+        }
+        leftBoundary = wholeWord && isTokenByte(pattern[0]);
+        rightBoundary = wholeWord && isTokenByte(pattern[length - 1]);
+    }
+
+    /**
+     * 在 buffer 的 [from, to) 中查找，返回匹配起始位置，没有时返回 -1
+     */
+    int indexOf(ByteBuffer buffer, int from, int to) {
+        int length = pattern.length;
+        byte last = pattern[length - 1];
+        int i = from;
+        while (i <= to - length) {
+            byte tail = fold(buffer.get(i + length - 1));
+            if (tail == last && regionMatches(buffer, i) && isBoundary(buffer, i, to)) {
+                return i;
+            }
+            i += skip[tail & 0xFF];
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(ByteBuffer buffer, int start) {
+        for (int j = pattern.length - 2; j >= 0; j--) {
+            if (fold(buffer.get(start + j)) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 边界按整个缓冲区判断，from 只是查找起点
+    private boolean isBoundary(ByteBuffer buffer, int start, int to) {
+        if (leftBoundary && start > 0 && isTokenByte(buffer.get(start - 1))) {
+            return false;
+        }
+        int end = start + pattern.length;
+        return !rightBoundary || end >= to || !isTokenByte(buffer.get(end));
+    }
+
+    private static byte fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static boolean isTokenByte(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+}
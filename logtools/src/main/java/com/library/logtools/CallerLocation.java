@@ -0,0 +1,97 @@
+package com.library.logtools;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 调用位置，格式化后的 "(File:line)#Method" 按调用点缓存，同一行重复调用只需一次查表
+ * <p>
+ * 记录日志的线程只创建 Throwable 填充调用栈，展开为 StackTraceElement 并查找调用帧推迟到第一次读取位置时，
+ * 不输出到 logcat 时由写日志线程完成
+ */
+final class CallerLocation {
+    private static final int MAX_CACHE_SIZE = 1024;
+    private static final String FACE_LOG_TOOLS = FaceLogTools.class.getName();
+    private static final ConcurrentHashMap<StackTraceElement, CallerLocation> CACHE = new ConcurrentHashMap<>();
+
+    private static final String UNKNOWN_LOCATION = "(Unknown)";
+
+    // 尚未展开的调用栈，展开后置为 null
+    private Throwable callSite;
+    private String fileName;
+    private String location;
+
+    private CallerLocation(Throwable callSite) {
+        this.callSite = callSite;
+    }
+
+    private CallerLocation(StackTraceElement frame) {
+        this.fileName = frame.getFileName();
+        String methodName = frame.getMethodName();
+        if (methodName != null && methodName.length() > 0) {
+            methodName = Character.toUpperCase(methodName.charAt(0)) + methodName.substring(1);
+        }
+        this.location = "(" + fileName + ":" + frame.getLineNumber() + ")#" + methodName;
+    }
+
+    private CallerLocation(String fileName, String location) {
+        this.fileName = fileName;
+        this.location = location;
+    }
+
+    /**
+     * 记录当前调用栈，FaceLogTools 外部第一个调用帧在第一次读取位置时查找
+     * Throwable 只填充当前线程栈，比 Thread.getStackTrace() 少一次线程状态查询
+     */
+    static CallerLocation capture() {
+        return new CallerLocation(new Throwable());
+    }
+
+    String fileName() {
+        resolve();
+        return fileName;
+    }
+
+    String location() {
+        resolve();
+        return location;
+    }
+
+    // 展开调用栈，复用调用点缓存中已格式化的位置；调用方保证同一时刻只有一个线程访问
+    private void resolve() {
+        Throwable site = callSite;
+        if (site == null) {
+            return;
+        }
+        callSite = null;
+        location = UNKNOWN_LOCATION;
+        for (StackTraceElement frame : site.getStackTrace()) {
+            String className = frame.getClassName();
+            if (!className.startsWith(FACE_LOG_TOOLS) && !className.equals(CallerLocation.class.getName())) {
+                CallerLocation resolved = of(frame);
+                fileName = resolved.fileName;
+                location = resolved.location;
+                return;
+            }
+        }
+    }
+
+    static CallerLocation of(StackTraceElement frame) {
+        CallerLocation cached = CACHE.get(frame);
+        if (cached != null) {
+            return cached;
+        }
+        CallerLocation location = new CallerLocation(frame);
+        // 动态生成的调用点过多时不再缓存，避免无限增长
+        if (CACHE.size() < MAX_CACHE_SIZE) {
+            CACHE.putIfAbsent(frame, location);
+        }
+        return location;
+    }
+
+    /**
+     * 已格式化的调用位置，用于其它进程发送来的记录，不缓存
+     */
+    static CallerLocation ofLocation(String location) {
+        return new CallerLocation(null, location);
+    }
+}
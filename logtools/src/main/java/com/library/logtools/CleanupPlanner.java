@@ -0,0 +1,300 @@
+package com.library.logtools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Stack;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 清理计划：遍历一次目录，每个文件只读取一次属性，只选出达到目标所需删除的最旧文件
+ * <p>
+ * 形如 "前缀[_分组]_yyyyMMdd_N.ext" 的分段直接按文件名中的日期与序号排序，不读取修改时间；
+ * 其它文件使用修改时间。选择时用按新旧排序的有界堆代替全量排序，索引等附属文件的大小计入所属分段。
+ * 设置了 {@link RetentionRule} 时先删除超过最长保存天数和超出类别配额的文件，再按总量删除，
+ * 处于最短保存天数内的文件排在最后。各分段序列当前打开的分段只计入总量，不会被选中。
+ */
+final class CleanupPlanner {
+    private static final Pattern SEGMENT_NAME = Pattern.compile("^[A-Za-z]+(?:_[A-Za-z0-9]+)?_(\\d{8})_(\\d+)\\..+");
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    // 最不应删除的排在前面：受保护的优先，其次按新旧
+    private static final Comparator<Entry> KEEP_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            if (o1.retained != o2.retained) {
+                return o1.retained ? -1 : 1;
+            }
+            return o1.age < o2.age ? 1 : (o1.age > o2.age ? -1 : 0);
+        }
+    };
+    private static final Comparator<Entry> OLDEST_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return o1.age < o2.age ? -1 : (o1.age > o2.age ? 1 : 0);
+        }
+    };
+
+    static final class Entry {
+        final File file;
+        final long length;
+        // 越小越旧
+        final long age;
+        // 文件名可以解析出日期与序号的分段
+        final boolean segment;
+        long weight;
+        boolean hasSummary;
+        // 所属保留规则的下标，没有匹配时为 -1
+        int rule = -1;
+        // 处于最短保存天数内
+        boolean retained;
+        boolean selected;
+
+        Entry(File file, long length, long age, boolean segment) {
+            this.file = file;
+            this.length = length;
+            this.age = age;
+            this.segment = segment;
+            this.weight = length;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final HashMap<String, Long> dayStarts = new HashMap<>();
+    private final Calendar calendar = Calendar.getInstance();
+    private long totalSize;
+    private int totalCount;
+
+    private CleanupPlanner() {
+    }
+
+    /**
+     * 遍历 folder，顺便删除所属分段已不存在的附属文件
+     *
+     * @param sidecarExtensions 附属文件扩展名，只计大小、不计文件数
+     */
+    static CleanupPlanner scan(File folder, String[] sidecarExtensions) {
+        CleanupPlanner planner = new CleanupPlanner();
+        HashMap<String, Long> sidecarSizes = new HashMap<>();
+        HashSet<String> summaries = new HashSet<>();
+        Stack<File> dirStack = new Stack<File>();
+        dirStack.push(folder);
+        while (!dirStack.isEmpty()) {
+            File[] items = dirStack.pop().listFiles();
+            if (items == null) continue;
+            for (File f : items) {
+                String name = f.getName();
+                String sidecarExtension = extensionOf(name, sidecarExtensions);
+                if (sidecarExtension != null) {
+                    if (SegmentRotator.isOrphanSidecar(f, sidecarExtension)) {
+                        f.delete();
+                        continue;
+                    }
+                    long length = f.length();
+                    planner.totalSize += length;
+                    String path = f.getPath();
+                    String segmentPath = path.substring(0, path.length() - sidecarExtension.length());
+                    Long others = sidecarSizes.get(segmentPath);
+                    sidecarSizes.put(segmentPath, others == null ? length : others + length);
+                    if (SegmentSummary.EXTENSION.equals(sidecarExtension)) {
+                        summaries.add(segmentPath);
+                    }
+                    continue;
+                }
+                Matcher matcher = SEGMENT_NAME.matcher(name);
+                if (matcher.matches()) {
+                    // 分段文件名可以确定是文件，只需读取长度
+                    long age = planner.dayStart(matcher.group(1)) + parseIndex(matcher.group(2));
+                    if (SegmentRotator.isActive(f)) {
+                        // 正在写入的分段占用空间，但不参与选择
+                        planner.totalSize += f.length();
+                        planner.totalCount++;
+                    } else {
+                        planner.add(new Entry(f, f.length(), age, true));
+                    }
+                } else if (f.isDirectory()) {
+                    dirStack.push(f);
+                } else {
+                    planner.add(new Entry(f, f.length(), f.lastModified(), false));
+                }
+            }
+        }
+        // 附属文件随分段一起删除，大小计入分段
+        if (!sidecarSizes.isEmpty()) {
+            for (Entry entry : planner.entries) {
+                String path = entry.file.getPath();
+                if (SegmentRotator.isCompressed(entry.file)) {
+                    path = path.substring(0, path.length() - SegmentCompactor.EXTENSION.length());
+                }
+                Long sidecars = sidecarSizes.get(path);
+                if (sidecars != null) {
+                    entry.weight += sidecars;
+                    entry.hasSummary = summaries.contains(path);
+                }
+            }
+        }
+        return planner;
+    }
+
+    long getTotalSize() {
+        return totalSize;
+    }
+
+    int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * 按保留规则与目录上限选出需要删除的文件，按从旧到新排列
+     * <p>
+     * 先删除超过最长保存天数的文件，再把超出配额的类别删到配额的 targetRatio，
+     * 剩余文件仍超过 maxFolderSize 或 maxFileCount 时删到上限的 targetRatio。
+     */
+    List<Entry> plan(RetentionRule[] rules, long maxFolderSize, int maxFileCount, double targetRatio, long nowMillis) {
+        List<Entry> result = new ArrayList<>();
+        long remainingSize = totalSize;
+        int remainingCount = totalCount;
+        if (rules.length > 0) {
+            classify(rules, nowMillis);
+            for (Entry entry : entries) {
+                if (entry.rule >= 0 && isExpired(entry, rules[entry.rule], nowMillis)) {
+                    entry.selected = true;
+                }
+            }
+            for (int r = 0; r < rules.length; r++) {
+                long quota = (long) (maxFolderSize * rules[r].getQuotaRatio());
+                if (quota <= 0) {
+                    continue;
+                }
+                List<Entry> members = new ArrayList<>();
+                long weight = 0;
+                for (Entry entry : entries) {
+                    if (entry.rule == r && !entry.selected) {
+                        members.add(entry);
+                        weight += entry.weight;
+                    }
+                }
+                if (weight > quota) {
+                    for (Entry entry : select(members, weight - (long) (quota * targetRatio), 0)) {
+                        entry.selected = true;
+                    }
+                }
+            }
+            for (Entry entry : entries) {
+                if (entry.selected) {
+                    result.add(entry);
+                    remainingSize -= entry.weight;
+                    remainingCount--;
+                }
+            }
+        }
+        if (remainingSize > maxFolderSize || remainingCount > maxFileCount) {
+            List<Entry> candidates = entries;
+            if (!result.isEmpty()) {
+                candidates = new ArrayList<>(entries.size() - result.size());
+                for (Entry entry : entries) {
+                    if (!entry.selected) {
+                        candidates.add(entry);
+                    }
+                }
+            }
+            result.addAll(select(candidates, remainingSize - (long) (maxFolderSize * targetRatio),
+                    remainingCount - (int) (maxFileCount * targetRatio)));
+        }
+        Collections.sort(result, OLDEST_FIRST);
+        return result;
+    }
+
+    // 文件归入第一条匹配的规则，只在规则需要时读取分段摘要
+    private void classify(RetentionRule[] rules, long nowMillis) {
+        for (Entry entry : entries) {
+            String name = entry.file.getName();
+            SegmentSummary.Snapshot summary = null;
+            boolean summaryLoaded = false;
+            for (int r = 0; r < rules.length; r++) {
+                RetentionRule rule = rules[r];
+                if (rule.needsSummary() && !summaryLoaded) {
+                    summary = entry.segment && entry.hasSummary ? SegmentSummary.read(entry.file) : null;
+                    summaryLoaded = true;
+                }
+                if (rule.matches(name, summary)) {
+                    entry.rule = r;
+                    entry.retained = rule.getMinAgeDays() > 0
+                            && nowMillis - entry.age < rule.getMinAgeDays() * DAY_MILLIS;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean isExpired(Entry entry, RetentionRule rule, long nowMillis) {
+        return rule.getMaxAgeDays() > 0 && nowMillis - entry.age > rule.getMaxAgeDays() * DAY_MILLIS;
+    }
+
+    /**
+     * 从 candidates 中选出最该删除的一组文件，删除后释放至少 excessBytes 字节且至少 excessCount 个文件
+     */
+    private static List<Entry> select(List<Entry> candidates, long excessBytes, int excessCount) {
+        if (excessBytes <= 0 && excessCount <= 0) {
+            return new ArrayList<>();
+        }
+        // 堆顶是堆中最不该删除的文件，去掉它仍满足目标时就去掉
+        PriorityQueue<Entry> heap = new PriorityQueue<>(Math.max(16, excessCount + 1), KEEP_FIRST);
+        long heapWeight = 0;
+        for (Entry entry : candidates) {
+            heap.add(entry);
+            heapWeight += entry.weight;
+            while (heap.size() > excessCount && heapWeight - heap.peek().weight >= excessBytes) {
+                heapWeight -= heap.poll().weight;
+            }
+        }
+        List<Entry> selected = new ArrayList<>(heap);
+        for (Entry entry : selected) {
+            entry.selected = true;
+        }
+        return selected;
+    }
+
+    private void add(Entry entry) {
+        entries.add(entry);
+        totalSize += entry.length;
+        totalCount++;
+    }
+
+    // yyyyMMdd 当天 0 点的毫秒数，同一天只计算一次
+    private long dayStart(String stamp) {
+        Long start = dayStarts.get(stamp);
+        if (start == null) {
+            int value = Integer.parseInt(stamp);
+            calendar.clear();
+            calendar.set(value / 10000, value / 100 % 100 - 1, value % 100);
+            start = calendar.getTimeInMillis();
+            dayStarts.put(stamp, start);
+        }
+        return start;
+    }
+
+    // 序号作为当天内的毫秒偏移，只用于同一天内排序
+    private static long parseIndex(String index) {
+        try {
+            return Math.min(Long.parseLong(index), 86_399_999L);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String extensionOf(String name, String[] extensions) {
+        for (String extension : extensions) {
+            if (name.endsWith(extension)) {
+                return extension;
+            }
+        }
+        return null;
+    }
+}
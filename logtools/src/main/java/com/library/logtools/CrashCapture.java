@@ -0,0 +1,194 @@
+package com.library.logtools;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 未捕获异常时的崩溃日志
+ * <p>
+ * 崩溃时先释放预留内存，再把异常作为 {@link BufferType#CRASH} 记录提交给写日志线程，并在限定时间内等待队列中
+ * 已有的记录全部写出并同步到存储设备；写日志线程把最近写入的记录连同异常写入独立的 "crash_日期_当天毫秒数.txt"。
+ * 写日志线程无法在期限内完成时（例如崩溃的正是写日志线程），由崩溃线程直接写出崩溃分段。最后交给之前的处理器。
+ * 最近记录保存在预分配的环形字节缓冲区中，内存不足时也不需要再分配。
+ * 默认关闭，开启时才安装处理器并预留内存。多进程收集模式下非收集进程只把异常记录发送给收集进程，由收集进程写出崩溃分段。
+ */
+final class CrashCapture implements Thread.UncaughtExceptionHandler {
+    private static final String TAG = "CrashCapture";
+    static final String FILE_PREFIX = "crash_";
+    static final String FILE_EXTENSION = ".txt";
+    // 等待写日志线程写出的最长时间
+    static final long DRAIN_TIMEOUT_MS = 1500;
+    // 崩溃时释放的预留内存，保证之后的格式化与文件操作有可用空间
+    private static final int RESERVE_SIZE = 128 * 1024;
+    // 保存最近记录的环形缓冲区大小
+    private static final int TAIL_SIZE = 64 * 1024;
+    // 编码异常文本的缓冲区大小，超出部分截断
+    private static final int REPORT_SIZE = 32 * 1024;
+    private static final byte[] SEPARATOR = "\n----- crash -----\n".getBytes();
+
+    private static volatile CrashCapture installed;
+    private static volatile boolean enabled;
+    private static byte[] reserve;
+    private static final byte[] tail = new byte[TAIL_SIZE];
+    // 已写入 tail 的总字节数，只由写日志线程修改
+    private static volatile long tailPosition;
+    private static final byte[] report = new byte[REPORT_SIZE];
+    // 最近一次已写出崩溃分段的异常文本
+    private static volatile String lastWritten;
+
+    private final Thread.UncaughtExceptionHandler previous;
+    private final AtomicBoolean handling = new AtomicBoolean();
+
+    private CrashCapture(Thread.UncaughtExceptionHandler previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * 安装为默认的未捕获异常处理器，之前的处理器在崩溃日志写出后调用；重复调用无效
+     */
+    static synchronized void install() {
+        if (installed != null) {
+            return;
+        }
+        reserve = new byte[RESERVE_SIZE];
+        installed = new CrashCapture(Thread.getDefaultUncaughtExceptionHandler());
+        Thread.setDefaultUncaughtExceptionHandler(installed);
+    }
+
+    /**
+     * 开启时安装处理器；关闭后处理器保留，只把异常交给之前的处理器
+     */
+    static void setEnabled(boolean enabled) {
+        if (enabled) {
+            install();
+        }
+        CrashCapture.enabled = enabled;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void uncaughtException(Thread thread, Throwable error) {
+        // 多个线程同时崩溃时只记录第一个
+        if (enabled && handling.compareAndSet(false, true)) {
+            reserve = null;
+            try {
+                capture(thread, error);
+            } catch (Throwable e) {
+                Log.e(TAG, "crash capture failed", e);
+            }
+        }
+        if (previous != null) {
+            previous.uncaughtException(thread, error);
+        }
+    }
+
+    private static void capture(Thread thread, Throwable error) {
+        long deadline = SystemClock.uptimeMillis() + DRAIN_TIMEOUT_MS;
+        String text = "FATAL EXCEPTION: " + thread.getName() + "\n" + Log.getStackTraceString(error);
+        boolean drained = FaceLogTools.drainForCrash(text, deadline);
+        if (FaceLogTools.isCollectorClient()) {
+            // 异常记录已随批次发送给收集进程，本进程没有打开的分段，不再单独写出
+            if (!drained) {
+                Log.w(TAG, "crash record not delivered to the collector");
+            }
+            return;
+        }
+        if (drained && lastWritten == text) {
+            return;
+        }
+        File directory = FaceLogTools.getLogDirectoryFile();
+        if (directory != null && lastWritten != text) {
+            write(directory, System.currentTimeMillis(), text, true);
+        }
+    }
+
+    /**
+     * 记录一条已编码的日志，只在写日志线程调用
+     */
+    static void remember(int lineNumber, byte[] body, int length) {
+        if (!enabled) {
+            return;
+        }
+        long position = tailPosition;
+        position = put((byte) '<', position);
+        position = putNumber(lineNumber, position);
+        position = put((byte) '>', position);
+        position = put((byte) ' ', position);
+        int offset = (int) (position % TAIL_SIZE);
+        int count = Math.min(length, TAIL_SIZE);
+        int first = Math.min(count, TAIL_SIZE - offset);
+        System.arraycopy(body, length - count, tail, offset, first);
+        System.arraycopy(body, length - count + first, tail, 0, count - first);
+        tailPosition = position + count;
+    }
+
+    /**
+     * 写出崩溃分段：最近的记录，以及 appendReport 为 true 时的异常文本
+     *
+     * @return 写出的文件，失败时返回 null
+     */
+    static File write(File directory, long nowMillis, String text, boolean appendReport) {
+        LogClock.Day day = LogClock.dayOf(nowMillis);
+        File file = new File(directory, FILE_PREFIX + day.stamp + "_" + (nowMillis - day.start) + FILE_EXTENSION);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            long end = tailPosition;
+            long start = Math.max(0, end - TAIL_SIZE);
+            if (start > 0) {
+                // 环形缓冲区已回绕，跳过不完整的第一行
+                while (start < end && tail[(int) (start % TAIL_SIZE)] != '\n') {
+                    start++;
+                }
+                start++;
+            }
+            int from = (int) (start % TAIL_SIZE);
+            int count = (int) Math.max(0, end - start);
+            int first = Math.min(count, TAIL_SIZE - from);
+            out.write(tail, from, first);
+            out.write(tail, 0, count - first);
+            if (appendReport) {
+                out.write(SEPARATOR);
+                int length;
+                synchronized (report) {
+                    length = Utf8.encode(text.length() * 3 > REPORT_SIZE ? text.substring(0, REPORT_SIZE / 3) : text,
+                            report, 0);
+                    out.write(report, 0, length);
+                }
+            }
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "write crash segment failed: " + file, e);
+            return null;
+        }
+        lastWritten = text;
+        SizeLedger.record(file, file.length(), 1);
+        return file;
+    }
+
+    private static long put(byte b, long position) {
+        tail[(int) (position % TAIL_SIZE)] = b;
+        return position + 1;
+    }
+
+    private static long putNumber(int value, long position) {
+        if (value < 0) {
+            position = put((byte) '-', position);
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            position = put((byte) ('0' + value / divisor % 10), position);
+        }
+        return position;
+    }
+}
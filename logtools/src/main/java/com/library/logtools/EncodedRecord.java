@@ -0,0 +1,147 @@
+package com.library.logtools;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 只编码一次、由多个输出共享的日志记录
+ * <p>
+ * {@link #getBytes()} 的 [0, {@link #getBodyLength()}) 为 "[pid] [buffer] [level] [time] [tag] message" 加换行符，
+ * 其中 [{@link #getMessageOffset()}, bodyLength) 为消息本身。主日志与过滤日志各自只编码很短的行首，
+ * 正文通过引用计数共享同一个字节数组；需要在 {@link LogSink#write} 返回后继续使用时先 {@link #retain()}，
+ * 用完后 {@link #release()}。
+ */
+public final class EncodedRecord {
+    private static final int POOL_SIZE = 32;
+    // 超过该大小的缓冲区不放回对象池，避免长期占用内存
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    private static final ArrayDeque<EncodedRecord> pool = new ArrayDeque<>();
+
+    private final AtomicInteger refCount = new AtomicInteger();
+    private byte[] bytes = new byte[512];
+    private int bodyLength;
+    private int messageOffset;
+    int lineNumber;
+    Level level;
+    BufferType bufferType;
+    int pid;
+    String tag;
+    // 显示调用位置时的 "(File:line)#Method"，否则为 null
+    String location;
+    long timeMillis;
+
+    private EncodedRecord() {
+    }
+
+    static EncodedRecord obtain() {
+        EncodedRecord record;
+        synchronized (pool) {
+            record = pool.poll();
+        }
+        if (record == null) {
+            record = new EncodedRecord();
+        }
+        record.refCount.set(1);
+        return record;
+    }
+
+    public EncodedRecord retain() {
+        refCount.incrementAndGet();
+        return this;
+    }
+
+    public void release() {
+        if (refCount.decrementAndGet() == 0) {
+            tag = null;
+            location = null;
+            if (bytes.length <= MAX_POOLED_CAPACITY) {
+                synchronized (pool) {
+                    if (pool.size() < POOL_SIZE) {
+                        pool.push(this);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 编码头部与消息并追加换行符，只在写日志线程调用
+     */
+    void encode(CharSequence header, String message) {
+        int position = Utf8.encode(header, this, 0);
+        messageOffset = position;
+        position = Utf8.encode(message == null ? "null" : message, this, position);
+        ensureCapacity(position + LINE_SEPARATOR.length);
+        System.arraycopy(LINE_SEPARATOR, 0, bytes, position, LINE_SEPARATOR.length);
+        bodyLength = position + LINE_SEPARATOR.length;
+    }
+
+    /**
+     * 直接写入缓冲区后设置正文与消息的位置，用于从其它缓冲区复制已编码的记录
+     */
+    void setLayout(int bodyLength, int messageOffset) {
+        this.bodyLength = bodyLength;
+        this.messageOffset = messageOffset;
+    }
+
+    byte[] ensureCapacity(int capacity) {
+        if (bytes.length < capacity) {
+            byte[] grown = new byte[Math.max(capacity, bytes.length * 2)];
+            System.arraycopy(bytes, 0, grown, 0, bytes.length);
+            bytes = grown;
+        }
+        return bytes;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    public int getMessageOffset() {
+        return messageOffset;
+    }
+
+    /**
+     * 消息部分长度（含换行符）
+     */
+    public int getMessageLength() {
+        return bodyLength - messageOffset;
+    }
+
+    // 消息部分长度（不含换行符）
+    int getMessageTextLength() {
+        return bodyLength - messageOffset - LINE_SEPARATOR.length;
+    }
+
+    /**
+     * 主日志中的行号，尾部采样暂存、尚未写入主日志的记录为 0
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public BufferType getBufferType() {
+        return bufferType;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+}
@@ -1,39 +1,64 @@
 package com.library.logtools;
 
 import android.content.Context;
-import android.os.Environment;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class FaceLogTools {
     private static final String TAG=FaceLogTools.class.getSimpleName();
     private static FaceLogTools instance;
-    private static final long DEFAULT_MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
-    private static final String LOG_FILE_PREFIX = "log_";
-    private static final String LOG_FILE_EXTENSION = ".txt";
-    private static final SimpleDateFormat DATE_FLIENAME_FORMAT = new SimpleDateFormat("yyyyMMdd");
-    private static final SimpleDateFormat DATE_LOG_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    static final String LOG_FILE_PREFIX = "log_";
+    private static final String CRASH_TAG = "CRASH";
+    // 收集进程本地 socket 名称的后缀，前缀为包名
+    private static final String COLLECTOR_SUFFIX = ".facelog";
+    private static final int RING_BUFFER_SIZE = 8192;
+    private static final long COMMIT_TIMEOUT_MS = 5000;
+    // 完整遍历日志目录校正台账的间隔，超限清理由台账实时触发
+    private static final long RECONCILE_INTERVAL_HOURS = 6;
+    // 写日志线程专用的时间戳渲染
+    private static final LogClock clock = new LogClock();
     private static boolean isShowLog = true;
 
     private static File logDirectory;
-    private static File currentLogFile;
-    private static BufferedWriter writer;
-    private static ExecutorService executorService;
+    private static SegmentFormat segmentFormat = SegmentFormat.TEXT;
+    private static SegmentRotator logRotator = new SegmentRotator(LOG_FILE_PREFIX, segmentFormat.extension);
+    // 二进制格式的分段内字典与时间块状态，写日志线程专用
+    private static final BinarySegmentEncoder binaryEncoder = new BinarySegmentEncoder();
+    // 文本分段的稀疏索引，写日志线程专用
+    private static final SegmentIndex segmentIndex = new SegmentIndex();
+    // 分段单词过滤器，写日志线程专用
+    private static final SegmentBloom segmentBloom = new SegmentBloom();
+    private static FileBackend fileBackend = FileBackend.STREAM;
+    private static volatile FlushPolicy flushPolicy = FlushPolicy.DEFAULT;
+    private static LogRingBuffer ringBuffer;
+    private static final LineSequence lineSequence = new LineSequence();
+    // 额外注册的输出，与主日志共享同一份编码结果
+    private static final List<LogSink> sinks = new CopyOnWriteArrayList<>();
+    // 按 tag 的最低级别，在所有入口最先检查
+    private static final LevelThresholds levelThresholds = new LevelThresholds();
+    // 尾部采样，为 null 时所有记录都直接写入文件
+    private static volatile TailSampler tailSampler;
+    // 多进程收集模式：collectorClient 不为 null 时本进程不写文件，记录发送给收集进程
+    private static boolean collectorEnabled;
+    private static String collectorName;
+    private static volatile LogCollectorClient collectorClient;
+    // 按 tag 限流与折叠重复消息，状态只在写日志线程访问
+    private static final LogStormGuard stormGuard = new LogStormGuard();
+    // 写日志线程输出折叠与限流统计时复用的记录
+    private static final LogRecord noticeRecord = new LogRecord();
+    // 写日志线程复用的头部与行号缓冲区
+    private static final StringBuilder headerBuilder = new StringBuilder(128);
+    private static final byte[] lineHead = new byte[16];
     private static Context mContext;
-    private static final String KEY_LOG_DIR = "face_log_dir";
-    private static final String KEY_MAX_FILE_SIZE = "max_file_size";
 
 
     public static Context getmContext() {
@@ -46,48 +71,404 @@ public class FaceLogTools {
 
 
     public static void initialize(Context context, boolean showLog) {
+        initialize(context, showLog, WaitStrategy.BLOCKING, FileBackend.STREAM);
+    }
+
+    /**
+     * @param waitStrategy 写日志线程在队列为空时的等待策略
+     */
+    public static void initialize(Context context, boolean showLog, WaitStrategy waitStrategy) {
+        initialize(context, showLog, waitStrategy, FileBackend.STREAM);
+    }
+
+    /**
+     * @param fileBackend 日志分段文件的写入方式
+     */
+    public static void initialize(Context context, boolean showLog, FileBackend fileBackend) {
+        initialize(context, showLog, WaitStrategy.BLOCKING, fileBackend);
+    }
+
+    public static void initialize(final Context context, boolean showLog, WaitStrategy waitStrategy, FileBackend fileBackend) {
         if (instance == null) {
             synchronized (FaceLogTools.class) {
                 if (instance == null) {
                     instance = new FaceLogTools();
                     mContext = context;
                     isShowLog=showLog;
-                    executorService = Executors.newSingleThreadExecutor();
-                    putLogDirectory (getLogDirectory ());
-                    if (logDirectory != null && !logDirectory.exists()) {
-                        logDirectory.mkdirs();
+                    FaceLogTools.fileBackend = fileBackend == null ? FileBackend.STREAM : fileBackend;
+                    if (segmentFormat != SegmentFormat.TEXT) {
+                        logRotator = new SegmentRotator(LOG_FILE_PREFIX, segmentFormat.extension);
+                        logRotator.setReuseLastSegment(false);
                     }
-                    FileCleanWorker.start(context, logDirectory, 1);
-                    resumeOrCreateLogFile();
+                    LogConfigStore.addListener(new LogConfigStore.Listener() {
+                        @Override
+                        public void onConfigChanged(LogConfig oldConfig, LogConfig newConfig) {
+                            if (oldConfig.getMaxFileSize() != newConfig.getMaxFileSize()) {
+                                logRotator.setMaxFileSize(newConfig.getMaxFileSize());
+                                LogFilterTools.setMaxFileSize(newConfig.getMaxFileSize());
+                            }
+                        }
+                    });
+                    ringBuffer = new LogRingBuffer(RING_BUFFER_SIZE, waitStrategy);
+                    // 续写已有文件时从尾部恢复行号
+                    logRotator.addListener(new SegmentRotator.Listener() {
+                        @Override
+                        public void onSegmentOpened(File segment, boolean resumed) {
+                            lineSequence.reset(resumed ? segment : null);
+                            binaryEncoder.reset();
+                        }
+
+                        @Override
+                        public void onSegmentClosed(File segment) {
+                        }
+                    });
+                    if (segmentFormat == SegmentFormat.TEXT) {
+                        logRotator.addListener(segmentIndex);
+                    }
+                    logRotator.addListener(segmentBloom);
+                    SegmentCompactor.attach(logRotator);
+                    // 保存的配置在后台线程读取，读取完成后再打开日志目录并启动写日志线程，此前的记录在队列中等待
+                    LogConfigStore.loadAsync(new Runnable() {
+                        @Override
+                        public void run() {
+                            start(context);
+                        }
+                    });
                 }
             }
         }
     }
 
+    // 配置读取完成后打开日志目录并启动写日志线程
+    private static void start(Context context) {
+        if (collectorEnabled) {
+            collectorName = context.getPackageName() + COLLECTOR_SUFFIX;
+            if (!LogCollector.start(collectorName)) {
+                collectorClient = new LogCollectorClient(collectorName);
+            }
+        }
+        if (collectorClient == null) {
+            putLogDirectory (getLogDirectory ());
+        } else {
+            logDirectory = new File(getLogDirectory());
+        }
+        if (logDirectory != null && !logDirectory.exists()) {
+            logDirectory.mkdirs();
+        }
+        ringBuffer.start(new LogRingBuffer.RecordHandler() {
+            @Override
+            public void onRecord(LogRecord record, boolean endOfBatch) {
+                LogCollectorClient client = collectorClient;
+                if (client != null) {
+                    forwardRecord(client, record);
+                } else {
+                    handleRecord(record);
+                }
+            }
+
+            @Override
+            public long onIdle() {
+                LogCollectorClient client = collectorClient;
+                return client != null ? forwardIfDue(client)
+                        : GroupCommitWriter.earliest(reportIfDue(), commitIfDue());
+            }
+        });
+    }
+
     /**
      * 设置最大文件大小 单位：字节
      * @param size
      */
     public static void setMaxFileSize(long size){
-        // 这里可以添加逻辑来设置最大文件大小
-        SPUtils.putLong (KEY_MAX_FILE_SIZE,size);
+        LogConfigStore.update (config -> config.withMaxFileSize (size));
     }
 
     /**
      * 获取最大文件大小 单位：字节
      */
     public static long getMaxFileSize(){
-        // 这里可以添加逻辑来设置最大文件大小
-        return SPUtils.getLong (KEY_MAX_FILE_SIZE,DEFAULT_MAX_FILE_SIZE);
+        return LogConfigStore.get ().getMaxFileSize ();
+    }
+
+    /**
+     * 获取当前配置快照
+     */
+    public static LogConfig getConfig(){
+        return LogConfigStore.get ();
+    }
+
+    /**
+     * 设置批量刷盘策略
+     */
+    public static void setFlushPolicy(FlushPolicy policy) {
+        if (policy != null) {
+            flushPolicy = policy;
+        }
+    }
+
+    public static FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    /**
+     * 按 tag 限流：每个 tag 每秒最多写入 recordsPerSecond 条，允许短时间突发到 burst 条，
+     * 超出的记录在格式化之前丢弃，每 10 秒按 tag 写出一条被丢弃的数量；recordsPerSecond 不大于 0 时关闭。
+     * 限流在过滤规则之前进行，之后被 DROP 规则丢弃的记录同样占用配额
+     */
+    public static void setRateLimit(int recordsPerSecond, int burst) {
+        stormGuard.setRateLimit(recordsPerSecond, burst);
+    }
+
+    /**
+     * 单独设置某个 tag 的限流，recordsPerSecond 为 0 时该 tag 不限流，小于 0 时恢复使用 {@link #setRateLimit}
+     */
+    public static void setTagRateLimit(String tag, int recordsPerSecond, int burst) {
+        stormGuard.setTagRateLimit(tag, recordsPerSecond, burst);
+    }
+
+    /**
+     * 是否折叠重复消息：同一 tag 下级别、调用位置与内容都与上一条相同的记录不再写入，
+     * 结束时写出一条 "last message repeated N times"，默认关闭
+     */
+    public static void setRepeatCollapsing(boolean enabled) {
+        stormGuard.setCollapseRepeats(enabled);
+    }
+
+    /**
+     * 开启尾部采样：低于 persistLevel 的记录只保存在内存中最近 maxRecords 条的环形缓冲区里，
+     * 出现不低于 triggerLevel 的记录时先把缓冲区中的记录写入主日志，再写入该记录；
+     * 暂存的记录没有行号，也不写入过滤日志，写出时才按写入顺序分配行号并写入过滤日志；sink 在记录产生时收到，行号为 0。
+     * 写出的采样记录保留原时间戳，主日志中会出现早于前面记录的时间。persistLevel 为 null 时关闭，之前缓存的记录丢弃
+     */
+    public static void setTailSampling(Level persistLevel, Level triggerLevel, int maxRecords) {
+        if (persistLevel == null || persistLevel == Level.V || persistLevel == Level.UNKNOWN) {
+            tailSampler = null;
+        } else {
+            tailSampler = new TailSampler(persistLevel, triggerLevel == null ? Level.E : triggerLevel, maxRecords);
+        }
+    }
+
+    /**
+     * 持续读取系统 logcat 的 SYSTEM、RADIO、EVENTS 或 CRASH 缓冲区，按原有的级别、pid 与 tag 写入日志
+     * MAIN 缓冲区包含本库自身输出到 logcat 的日志，不支持读取
+     */
+    public static void startLogcatIngestion(BufferType... buffers) {
+        startLogcatIngestion(LogcatLauncher.DEFAULT, buffers);
+    }
+
+    /**
+     * @param launcher 启动 logcat 子进程的方式，测试时可替换为输出固定文本的实现
+     */
+    public static void startLogcatIngestion(LogcatLauncher launcher, BufferType... buffers) {
+        if (ringBuffer == null) {
+            throw new IllegalStateException("FaceLogTools is not initialized. Call initialize() first.");
+        }
+        for (BufferType buffer : buffers) {
+            if (buffer == BufferType.MAIN) {
+                throw new IllegalArgumentException("MAIN buffer already contains this library's own output");
+            }
+        }
+        for (BufferType buffer : buffers) {
+            LogcatIngester.start(buffer, launcher);
+        }
+    }
+
+    /**
+     * 停止所有 logcat 读取并结束子进程
+     */
+    public static void stopLogcatIngestion() {
+        LogcatIngester.stopAll();
+    }
+
+    /**
+     * 开启多进程收集模式，需在 initialize 之前调用，应用的各个进程需一致
+     * 第一个初始化的进程独占日志文件，其它进程把记录批量发送给它，所有进程的日志按到达顺序写入同一组分段；
+     * 收集进程退出后，下一个发送失败的进程接管。其它进程记录的时间戳为发送端写日志线程取出记录的时间，
+     * 重发或接管后写入的记录仍保留原来的时间
+     */
+    public static void setCollectorEnabled(boolean enabled) {
+        if (instance != null) {
+            throw new IllegalStateException("setCollectorEnabled() must be called before initialize()");
+        }
+        collectorEnabled = enabled;
+    }
+
+    /**
+     * 本进程是否为非收集进程，记录发送给其它进程写入
+     */
+    public static boolean isCollectorClient() {
+        return collectorClient != null;
+    }
+
+    /**
+     * 设置主日志分段格式，需在 initialize 之前调用
+     */
+    public static void setSegmentFormat(SegmentFormat format) {
+        if (instance != null) {
+            throw new IllegalStateException("setSegmentFormat() must be called before initialize()");
+        }
+        if (format != null) {
+            segmentFormat = format;
+        }
+    }
+
+    public static SegmentFormat getSegmentFormat() {
+        return segmentFormat;
+    }
+
+    static FileBackend getFileBackend() {
+        return fileBackend;
+    }
+
+    /**
+     * 等待此前提交的日志全部写出到文件
+     *
+     * @return 在超时前完成返回 true
+     */
+    public static boolean flush() {
+        return awaitCommit(false);
+    }
+
+    /**
+     * 等待此前提交的日志全部写出并同步到存储设备
+     *
+     * @return 在超时前完成返回 true
+     */
+    public static boolean sync() {
+        return awaitCommit(true);
+    }
+
+    private static boolean awaitCommit(boolean sync) {
+        if (ringBuffer == null) {
+            throw new IllegalStateException("FaceLogTools is not initialized. Call initialize() first.");
+        }
+        if (ringBuffer.isConsumerThread()) {
+            commitWriters(sync);
+            return true;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        long sequence = ringBuffer.next();
+        ringBuffer.get(sequence).setBarrier(latch, sync);
+        ringBuffer.publish(sequence);
+        try {
+            return latch.await(COMMIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 崩溃时提交异常记录，并在 deadline（SystemClock.uptimeMillis）前等待此前的记录全部写出并同步
+     *
+     * @return 写日志线程不可用或超时返回 false
+     */
+    static boolean drainForCrash(String report, long deadline) {
+        LogRingBuffer buffer = ringBuffer;
+        if (buffer == null || buffer.isConsumerThread() || !buffer.isConsumerAlive()) {
+            return false;
+        }
+        long sequence = buffer.tryNext(TimeUnit.MILLISECONDS.toNanos(deadline - SystemClock.uptimeMillis()));
+        if (sequence < 0) {
+            return false;
+        }
+        buffer.get(sequence).set(Level.F, BufferType.CRASH, android.os.Process.myPid(), CRASH_TAG, report,
+                true, false, null);
+        buffer.publish(sequence);
+        CountDownLatch latch = new CountDownLatch(1);
+        sequence = buffer.tryNext(TimeUnit.MILLISECONDS.toNanos(deadline - SystemClock.uptimeMillis()));
+        if (sequence < 0) {
+            return false;
+        }
+        buffer.get(sequence).setBarrier(latch, true);
+        buffer.publish(sequence);
+        try {
+            return latch.await(deadline - SystemClock.uptimeMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 是否在未捕获异常时写出崩溃日志，默认关闭
+     * 开启时安装未捕获异常处理器，异常连同最近的日志写入 "crash_" 开头的独立文件，之后交给原有的处理器；
+     * 多进程收集模式下由收集进程写出
+     */
+    public static void setCrashCaptureEnabled(boolean enabled) {
+        CrashCapture.setEnabled(enabled);
+    }
+
+    /**
+     * 写日志线程中（例如 sink 或过滤规则回调里）记录日志时因队列已满而丢弃的记录数
+     */
+    public static long getDroppedRecordCount() {
+        return ringBuffer == null ? 0 : ringBuffer.getDroppedCount();
+    }
+
+    /**
+     * 注册额外的日志输出，每条记录只编码一次后依次交给主日志、过滤日志与各个 sink
+     */
+    public static void addSink(LogSink sink) {
+        if (sink != null && !sinks.contains(sink)) {
+            sinks.add(sink);
+        }
+    }
+
+    public static void removeSink(LogSink sink) {
+        sinks.remove(sink);
+    }
+
+    // 写日志线程中提交主日志与过滤日志的缓冲数据
+    private static void commitWriters(boolean sync) {
+        synchronized (FaceLogTools.class) {
+            try {
+                if (sync) {
+                    logRotator.sync();
+                } else {
+                    logRotator.flush();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            LogFilterTools.commit(sync);
+            for (LogSink sink : sinks) {
+                try {
+                    sink.flush();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // 写日志线程空闲时按最大延迟刷盘，返回距离下次检查的纳秒数
+    private static long commitIfDue() {
+        synchronized (FaceLogTools.class) {
+            long now = System.nanoTime();
+            long delay = -1;
+            try {
+                delay = logRotator.commitIfDue(now);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return GroupCommitWriter.earliest(delay, LogFilterTools.commitIfDue(now));
+        }
+    }
+
+    static File getLogDirectoryFile() {
+        return logDirectory;
     }
 
     public static String getLogDirectory() {
-        return SPUtils.getString (KEY_LOG_DIR,Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM).getAbsolutePath ());
+        return LogConfigStore.get ().getLogDirectory ();
     }
 
     public static void putLogDirectory(String directoryPath) {
         if (!TextUtils.isEmpty (directoryPath)){
-            SPUtils.putString (KEY_LOG_DIR,directoryPath);
+            if (!directoryPath.equals (getLogDirectory ())){
+                LogConfigStore.update (config -> config.withLogDirectory (directoryPath));
+            }
             logDirectory= new File (directoryPath);
         }
         if (logDirectory != null && !logDirectory.exists()) {
@@ -95,37 +476,41 @@ public class FaceLogTools {
         }
         Log.d (TAG, "putLogDirectory: "+getLogDirectory ());
         FileCleanWorker.stop();
-        FileCleanWorker.start(mContext, logDirectory, 1);
-        resumeOrCreateLogFile();
-    }
-
-    // 优化后的日志文件创建与恢复逻辑
-    private static synchronized void resumeOrCreateLogFile() {
-        closeWriter();
-        String today = DATE_FLIENAME_FORMAT.format(new Date());
-        int fileIndex = 1;
-
-        // 获取当天所有日志文件
-        File[] existingFiles = logDirectory.listFiles((dir, name) -> name.startsWith(LOG_FILE_PREFIX + today + "_") && name.endsWith(LOG_FILE_EXTENSION));
-        if (existingFiles != null && existingFiles.length > 0) {
-            Arrays.sort(existingFiles, (f1, f2) -> f1.getName().compareTo(f2.getName()));
-            File lastFile = existingFiles[existingFiles.length - 1];
-            if (lastFile.length() < getMaxFileSize ()) {
-                currentLogFile = lastFile;
-                fileIndex = getFileIndexFromName(lastFile.getName());
-            } else {
-                fileIndex = getFileIndexFromName(lastFile.getName()) + 1;
-                currentLogFile = new File(logDirectory, LOG_FILE_PREFIX + today + "_" + fileIndex + LOG_FILE_EXTENSION);
-            }
-        } else {
-            currentLogFile = new File(logDirectory, LOG_FILE_PREFIX + today + "_" + fileIndex + LOG_FILE_EXTENSION);
-        }
+        FileCleanWorker.start(mContext, logDirectory, RECONCILE_INTERVAL_HOURS);
+        logRotator.setMaxFileSize (getMaxFileSize ());
+        logRotator.setDirectory (logDirectory);
+    }
 
-        try {
-            writer = new BufferedWriter(new FileWriter(currentLogFile, true));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /**
+     * 判断该级别与 tag 的日志是否会被记录，可用于避免构造不需要的日志内容
+     */
+    public static boolean isLoggable(Level level, String tag){
+        return levelThresholds.isLoggable(level, tag);
+    }
+
+    /**
+     * 设置全局最低日志级别，没有单独配置的 tag 使用该级别
+     */
+    public static void setMinLevel(Level level){
+        levelThresholds.setDefault(level);
+    }
+
+    public static Level getMinLevel(){
+        return levelThresholds.getDefault();
+    }
+
+    /**
+     * 设置某个 tag 的最低日志级别，level 为 null 时恢复使用全局级别，设为 UNKNOWN 时关闭该 tag
+     */
+    public static void setTagLevel(String tag, Level level){
+        levelThresholds.put(tag, level);
+    }
+
+    /**
+     * 清除所有 tag 的单独配置
+     */
+    public static void clearTagLevels(){
+        levelThresholds.clear();
     }
 
     public static void V(String tag, String message){
@@ -159,20 +544,16 @@ public class FaceLogTools {
         write(Level.F, BufferType.MAIN,android.os.Process.myPid(), tag, message, true, showStackTrace);
     }
 
-    private static void printLog(Level type, String tagStr, Object message,StackTraceElement stackTraceElement, boolean showStackTrace) {
+    private static void printLog(Level type, String tagStr, Object message,CallerLocation caller, boolean showStackTrace) {
         String msg;
         if (!isShowLog) {
             return;
         }
         StringBuilder stringBuilder = new StringBuilder();
         String tag=null;
-        if (showStackTrace){
-            String className = stackTraceElement.getFileName();
-            String methodName = stackTraceElement.getMethodName();
-            int lineNumber = stackTraceElement.getLineNumber();
-            tag = (tagStr == null ? className : tagStr);
-            methodName = methodName.substring(0, 1).toUpperCase() + methodName.substring(1);
-            stringBuilder.append("[ (").append(className).append(":").append(lineNumber).append(")#").append(methodName).append(" ] ");
+        if (showStackTrace && caller != null){
+            tag = (tagStr == null ? caller.fileName() : tagStr);
+            stringBuilder.append("[ ").append(caller.location()).append(" ] ");
         } else{
             tag=tagStr;
         }
@@ -208,130 +589,391 @@ public class FaceLogTools {
         return LogFilterTools.readRulesToKeywords ();
     }
 
+    /**
+     * 添加过滤规则，例如 "route net_error : level>=E and tag=Net"、"drop chatty : tag=Sensor and level<=D"
+     */
+    public static void addFilterRule(String rule){
+        LogFilterTools.addRule (rule);
+    }
+
+    /**
+     * 获取各过滤规则的求值与命中次数，只统计通过限流与重复折叠的记录
+     */
+    public static List<FilterRuleStats> getFilterRuleStats(){
+        return LogFilterTools.getRuleStats ();
+    }
+
     public static void write(Level level,BufferType bufferType,int pid,String tag, String message, boolean writeToFile, boolean showStackTrace) {
-        StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-        StackTraceElement callerStack=null;
-        if (showStackTrace&&stackTrace.length > 2) {
-            callerStack = stackTrace[3];
+        if (!levelThresholds.isLoggable(level, tag)) {
+            return;
         }
-        printLog (level, tag, message,callerStack,showStackTrace);
-        if (executorService == null) {
+        // 只有需要显示调用位置时才记录调用栈，查找调用帧推迟到第一次读取位置时
+        CallerLocation caller = showStackTrace ? CallerLocation.capture() : null;
+        printLog (level, tag, message,caller,showStackTrace);
+        if (ringBuffer == null) {
             throw new IllegalStateException("FaceLogTools is not initialized. Call initialize() first.");
         }
-        StackTraceElement finalCallerStack = callerStack;
-        executorService.execute(() -> {
-            try {
-                StringBuilder logEntryBuilder = new StringBuilder();
-                int nextLineNumber = LineNumberUtil.getNextLineNumber (currentLogFile.getAbsolutePath ());
-                Log.d (TAG, "write: nextLineNumber>>"+nextLineNumber);
-                logEntryBuilder.append ("<"+nextLineNumber+"> ");
-                logEntryBuilder.append ("["+pid+"] ");
-                logEntryBuilder.append ("["+bufferType.name ()+"] ");
-                logEntryBuilder.append ("["+level.name ()+"] ");
-                logEntryBuilder.append ("["+DATE_LOG_FORMAT.format(new Date())+"] ");
-                if (showStackTrace && finalCallerStack != null){
-                    String className = finalCallerStack.getFileName();
-                    String methodName = finalCallerStack.getMethodName();
-                    int lineNumber = finalCallerStack.getLineNumber();
-                    methodName = methodName.substring(0, 1).toUpperCase() + methodName.substring(1);
-                    logEntryBuilder.append("[ (").append(className).append(":").append(lineNumber).append(")#").append(methodName).append(" ] ");
-                }else{
-                    logEntryBuilder.append("["+tag+"] ");
-                }
-                logEntryBuilder.append (message);
+        // 写日志线程中（sink、过滤规则回调等）再次记录日志时不能等待自己，队列满时丢弃
+        long sequence = ringBuffer.nextOrDrop();
+        if (sequence < 0) {
+            return;
+        }
+        ringBuffer.get(sequence).set(level, bufferType, pid, tag, message, writeToFile, showStackTrace, caller);
+        ringBuffer.publish(sequence);
+    }
 
-                LogFilterTools.writeToFile (nextLineNumber,message);
-                // 写入文件
+    /**
+     * 收集进程收到的其它进程记录，进入本进程的写日志队列
+     */
+    static void publishRemote(LogRecord source) {
+        LogRingBuffer buffer = ringBuffer;
+        if (buffer == null) {
+            return;
+        }
+        long sequence = buffer.nextOrDrop();
+        if (sequence < 0) {
+            return;
+        }
+        LogRecord target = buffer.get(sequence);
+        target.set(source.level, source.bufferType, source.pid, source.tag, source.message,
+                source.writeToFile, source.showStackTrace, source.caller);
+        target.timeMillis = source.timeMillis;
+        buffer.publish(sequence);
+    }
+
+    /**
+     * logcat 读取线程解析出的记录，按级别阈值过滤后进入写日志队列，不再输出到 logcat
+     *
+     * @param timeMillis logcat 行内的时间，为 0 时使用写入时间
+     */
+    static void publishIngested(Level level, BufferType bufferType, int pid, String tag, String message,
+                                long timeMillis) {
+        LogRingBuffer buffer = ringBuffer;
+        if (buffer == null || !levelThresholds.isLoggable(level, tag)) {
+            return;
+        }
+        long sequence = buffer.nextOrDrop();
+        if (sequence < 0) {
+            return;
+        }
+        LogRecord record = buffer.get(sequence);
+        record.set(level, bufferType, pid, tag, message, true, false, null);
+        record.timeMillis = timeMillis;
+        buffer.publish(sequence);
+    }
+
+    // 非收集进程的写日志线程：记录加入批次，按刷盘策略发送，屏障记录先发送当前批次
+    private static void forwardRecord(LogCollectorClient client, LogRecord record) {
+        if (record.barrier != null) {
+            sendBatch(client);
+            record.barrier.countDown();
+            return;
+        }
+        try {
+            client.add(record);
+        } catch (Throwable e) {
+            e.printStackTrace();
+            return;
+        }
+        if (client.isDue(flushPolicy, record.level, System.nanoTime())) {
+            sendBatch(client);
+        }
+    }
+
+    private static long forwardIfDue(LogCollectorClient client) {
+        long delay = client.delayNanos(flushPolicy, System.nanoTime());
+        if (delay != 0) {
+            return delay;
+        }
+        sendBatch(client);
+        // 发送失败时返回重发的等待时间，已接管时由本进程的刷盘检查决定
+        return collectorClient == client ? client.delayNanos(flushPolicy, System.nanoTime()) : 0;
+    }
+
+    // 发送失败说明收集进程已退出：绑定成功的进程接管，其余进程保留批次，之后的 onIdle 中按退避间隔重发
+    private static void sendBatch(LogCollectorClient client) {
+        try {
+            client.send();
+            return;
+        } catch (IOException e) {
+            Log.w(TAG, "sendBatch: collector unavailable, " + e.getMessage());
+        }
+        if (LogCollector.start(collectorName)) {
+            becomeCollector(client);
+        }
+    }
+
+    // 在写日志线程中切换为收集进程，打开日志文件并写入尚未发送的记录
+    private static void becomeCollector(LogCollectorClient client) {
+        collectorClient = null;
+        client.close();
+        putLogDirectory (getLogDirectory ());
+        for (LogRecord record : client.takePending()) {
+            handleRecord(record);
+        }
+    }
+
+    // 写日志线程中处理一条记录
+    private static void handleRecord(LogRecord record) {
+        if (record.barrier != null) {
+            commitWriters(record.sync);
+            record.barrier.countDown();
+            return;
+        }
+        try {
+            // 先限流与折叠重复，被挡下的记录不参与规则求值，规则统计只包含放行的记录；
+            // 先写出因这条记录而结束的折叠统计
+            boolean crash = record.bufferType == BufferType.CRASH;
+            boolean admitted = crash || !stormGuard.isActive() || stormGuard.admit(record, System.nanoTime());
+            writeNotices();
+            if (!admitted) {
+                return;
+            }
+            // 再在原始字段上执行过滤规则，被丢弃的记录不做任何格式化
+            FilterRuleSet.Evaluation evaluation = LogFilterTools.evaluate(record);
+            if (evaluation != null && evaluation.drop && !crash) {
+                return;
+            }
+            writeRecord(record, evaluation);
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 写日志线程空闲时输出到期的折叠与限流统计，返回距离下次统计的纳秒数
+    private static long reportIfDue() {
+        long delay = stormGuard.reportIfDue(System.nanoTime());
+        writeNotices();
+        return delay;
+    }
+
+    private static void writeNotices() {
+        while (stormGuard.pollNotice(noticeRecord)) {
+            writeRecord(noticeRecord, null);
+            noticeRecord.clear();
+        }
+    }
+
+    // 格式化并写入主日志、过滤日志与各个 sink
+    private static void writeRecord(LogRecord record, FilterRuleSet.Evaluation evaluation) {
+        Level level = record.level;
+        String message = record.message;
+        boolean writeToFile = record.writeToFile;
+        CallerLocation caller = record.caller;
+        boolean crash = record.bufferType == BufferType.CRASH;
+        EncodedRecord encoded = null;
+        boolean sampled = false;
+        try {
+            long now = System.currentTimeMillis();
+            long time = record.timeMillis != 0 ? record.timeMillis : now;
+            encoded = EncodedRecord.obtain();
+            synchronized (logRotator) {
+                // 先完成滚动检查，保证行号属于实际写入的分段
                 if (writeToFile) {
-                    synchronized (FaceLogTools.class) {
-                        // 检查日期是否变更
-                        String today = DATE_FLIENAME_FORMAT.format(new Date());
-                        if (!currentLogFile.getName().contains(today)) {
-                            resumeOrCreateLogFile();
-                        }
-                        if (currentLogFile.length() >= getMaxFileSize ()) {
-                            createNewLogFile();
-                        }
-                        // 检查文件是否被删除
-                        if (!currentLogFile.exists()) {
-                            resumeOrCreateLogFile();
-                        }
-                        try {
-                            writer.write(logEntryBuilder.toString() + System.lineSeparator());
-                            writer.flush();
-                        } catch (IOException e) {
-                            // 文件句柄失效时尝试恢复
-                            resumeOrCreateLogFile();
-                            try {
-                                writer.write(logEntryBuilder.toString() + System.lineSeparator());
-                                writer.flush();
-                            } catch (IOException ex) {
-                                ex.printStackTrace();
-                            }
-                        }
+                    logRotator.ensureWritable(now);
+                }
+                StringBuilder header = headerBuilder;
+                header.setLength(0);
+                header.append('[').append(record.pid).append("] ");
+                header.append('[').append(record.bufferType.name()).append("] ");
+                header.append('[').append(level.name()).append("] ");
+                header.append('[');
+                clock.appendTimestamp(header, time);
+                header.append("] ");
+                if (record.showStackTrace && caller != null){
+                    header.append("[ ").append(caller.location()).append(" ] ");
+                }else{
+                    header.append('[').append(record.tag).append("] ");
+                }
+                // 只编码一次，主日志、过滤日志与 sink 共享同一个字节数组
+                encoded.encode(header, message);
+                TailSampler sampler = writeToFile ? tailSampler : null;
+                sampled = sampler != null && sampler.isSampled(level);
+                if (sampler != null && !sampled && sampler.isTrigger(level)) {
+                    appendSampled(sampler);
+                }
+                encoded.level = level;
+                encoded.bufferType = record.bufferType;
+                encoded.pid = record.pid;
+                encoded.tag = record.tag;
+                encoded.location = record.showStackTrace && caller != null ? caller.location() : null;
+                encoded.timeMillis = time;
+                if (sampled) {
+                    // 暂存的记录不分配行号、不写入过滤日志，写出时再处理
+                    encoded.lineNumber = 0;
+                    sampler.add(encoded, evaluation);
+                } else {
+                    encoded.lineNumber = lineSequence.next();
+                    CrashCapture.remember(encoded.lineNumber, encoded.getBytes(), encoded.getBodyLength());
+                    if (writeToFile) {
+                        appendEntry(encoded);
                     }
                 }
-            } catch (Throwable e) {
-                e.printStackTrace();
             }
-        });
+            if (!sampled) {
+                LogFilterTools.writeRouted(encoded, evaluation);
+            }
+            for (LogSink sink : sinks) {
+                try {
+                    sink.write(encoded);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+            if (crash && logDirectory != null) {
+                // 开启时最近的记录已包含这条崩溃记录；本进程未开启（其它进程发送来的崩溃）时只写出异常文本
+                CrashCapture.write(logDirectory, time, message, !CrashCapture.isEnabled());
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+        } finally {
+            if (encoded != null) {
+                encoded.release();
+            }
+        }
     }
 
-    public static List<String> getLogFiles() {
-        if (logDirectory == null) {
-            throw new IllegalStateException("FaceLogTools is not initialized. Call initialize() first.");
+    // 按原顺序写出采样缓冲区中的记录，按写入顺序分配行号后再写入过滤日志
+    private static void appendSampled(TailSampler sampler) {
+        EncodedRecord sampledRecord = EncodedRecord.obtain();
+        try {
+            while (sampler.poll(sampledRecord)) {
+                sampledRecord.lineNumber = lineSequence.next();
+                appendEntry(sampledRecord);
+                CrashCapture.remember(sampledRecord.lineNumber, sampledRecord.getBytes(), sampledRecord.getBodyLength());
+                FilterRule[] routes = sampler.polledRoutes();
+                if (routes != null) {
+                    LogFilterTools.writeRouted(sampledRecord, routes, routes.length);
+                }
+            }
+        } finally {
+            sampledRecord.release();
         }
-        List<String> fileList = new ArrayList<>();
-        if (logDirectory.exists()) {
-            File[] files = logDirectory.listFiles((dir, name) -> name.startsWith(LOG_FILE_PREFIX) && name.endsWith(LOG_FILE_EXTENSION));
-            if (files != null) {
-                for (File file : files) {
-                    fileList.add(file.getName());
+    }
+
+    // 写入主日志，分段写满时滚动并重新分配行号，实际使用的行号写回 record
+    private static void appendEntry(EncodedRecord record) {
+        try {
+            if (!appendLine(record)) {
+                logRotator.rotate();
+                record.lineNumber = lineSequence.next();
+                if (!appendLine(record)) {
+                    binaryEncoder.invalidate();
+                    Log.w(TAG, "appendEntry: entry larger than segment capacity, dropped");
                 }
             }
+        } catch (IOException e) {
+            // 文件句柄失效时尝试恢复，已分配的行号不再重复使用
+            logRotator.resume();
+            lineSequence.ensureAtLeast (record.lineNumber);
+            try {
+                appendLine(record);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
         }
-        return fileList;
     }
 
-    // 新建当天新的日志文件
-    private static synchronized void createNewLogFile() {
-        closeWriter();
-        String today = DATE_FLIENAME_FORMAT.format(new Date());
-        int fileIndex = 1;
+    private static boolean appendLine(EncodedRecord record) throws IOException {
+        if (segmentFormat == SegmentFormat.BINARY) {
+            // 头部帧 + 共享缓冲区中的消息（不含换行符）
+            int headLength = binaryEncoder.encodeHead(record);
+            if (!logRotator.append(binaryEncoder.buffer(), headLength, record.getBytes(), record.getMessageOffset(),
+                    record.getMessageTextLength(), record.level, record.bufferType)) {
+                return false;
+            }
+            segmentBloom.add(record.getBytes(), 0, record.getBodyLength());
+            return true;
+        }
+        int headLength = putLineHead(record.lineNumber);
+        long offset = logRotator.length();
+        if (!logRotator.append(lineHead, headLength, record.getBytes(), 0, record.getBodyLength(),
+                record.level, record.bufferType)) {
+            return false;
+        }
+        segmentIndex.onAppended(record.lineNumber, record.timeMillis, offset);
+        segmentBloom.add(record.getBytes(), 0, record.getBodyLength());
+        return true;
+    }
 
-        File[] existingFiles = logDirectory.listFiles((dir, name) -> name.startsWith(LOG_FILE_PREFIX + today + "_") && name.endsWith(LOG_FILE_EXTENSION));
-        if (existingFiles != null && existingFiles.length > 0) {
-            Arrays.sort(existingFiles, (f1, f2) -> f1.getName().compareTo(f2.getName()));
-            File lastFile = existingFiles[existingFiles.length - 1];
-            fileIndex = getFileIndexFromName(lastFile.getName()) + 1;
+    // 将 "<行号> " 写入 lineHead，返回长度
+    private static int putLineHead(int lineNumber) {
+        String digits = Integer.toString(lineNumber);
+        int position = 0;
+        lineHead[position++] = '<';
+        for (int i = 0; i < digits.length(); i++) {
+            lineHead[position++] = (byte) digits.charAt(i);
         }
+        lineHead[position++] = '>';
+        lineHead[position++] = ' ';
+        return position;
+    }
 
-        currentLogFile = new File(logDirectory, LOG_FILE_PREFIX + today + "_" + fileIndex + LOG_FILE_EXTENSION);
-        try {
-            writer = new BufferedWriter(new FileWriter(currentLogFile, true));
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * 是否在后台将滚动后的分段压缩为 .gz，默认开启
+     */
+    public static void setCompressionEnabled(boolean enabled) {
+        SegmentCompactor.setEnabled(enabled);
+    }
+
+    /**
+     * 将日志分段转换为文本导出，二进制分段逐帧解码，文本分段原样复制，.gz 分段先解压
+     */
+    public static void exportLogFile(File segment, File target) throws IOException {
+        LogExporter.exportText(segment, target);
+    }
+
+    /**
+     * 在日志目录中按子串搜索（ASCII 忽略大小写）
+     */
+    public static List<String> search(String term) throws IOException {
+        return search(term, false);
+    }
+
+    /**
+     * 在日志目录中搜索，wholeWord 为 true 时只匹配完整单词；先用各分段的 Bloom 过滤器排除不包含该词的分段
+     */
+    public static List<String> search(String term, boolean wholeWord) throws IOException {
+        if (logDirectory == null) {
+            throw new IllegalStateException("FaceLogTools is not initialized. Call initialize() first.");
         }
+        return LogSearch.search(logDirectory, term, wholeWord);
     }
 
-    // 获取文件名中的索引
-    static int getFileIndexFromName(String fileName) {
-        try {
-            String[] parts = fileName.split("_");
-            String indexPart = parts[2].replace(LOG_FILE_EXTENSION, "");
-            return Integer.parseInt(indexPart);
-        } catch (Exception e) {
-            return 1;
+    /**
+     * 在日志目录中并行搜索，结果以 (文件, 行号, 偏移) 通过 listener 流式返回，可通过返回值取消
+     *
+     * @param limit 最多返回的结果数，不大于 0 时不限制
+     */
+    public static SearchHandle searchAsync(String term, int limit, SearchListener listener) {
+        return searchAsync(term, false, limit, listener);
+    }
+
+    /**
+     * 同 {@link #searchAsync(String, int, SearchListener)}，wholeWord 为 true 时只匹配完整单词
+     */
+    public static SearchHandle searchAsync(String term, boolean wholeWord, int limit, SearchListener listener) {
+        if (logDirectory == null) {
+            throw new IllegalStateException("FaceLogTools is not initialized. Call initialize() first.");
         }
+        return LogSearch.searchAsync(logDirectory, term, wholeWord, limit, listener);
     }
 
-    private static void closeWriter() {
-        if (writer != null) {
-            try {
-                writer.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+    public static List<String> getLogFiles() {
+        if (logDirectory == null) {
+            throw new IllegalStateException("FaceLogTools is not initialized. Call initialize() first.");
+        }
+        List<String> fileList = new ArrayList<>();
+        if (logDirectory.exists()) {
+            File[] files = logDirectory.listFiles((dir, name) -> name.startsWith(LOG_FILE_PREFIX)
+                    && (name.endsWith(SegmentFormat.TEXT.extension) || name.endsWith(SegmentFormat.BINARY.extension)
+                    || name.endsWith(SegmentCompactor.EXTENSION)));
+            if (files != null) {
+                for (File file : files) {
+                    fileList.add(file.getName());
+                }
             }
         }
+        return fileList;
     }
-}
\ No newline at end of file
+}
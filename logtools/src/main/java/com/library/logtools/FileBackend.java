@@ -0,0 +1,25 @@
+package com.library.logtools;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 日志分段文件的写入方式，在 {@link FaceLogTools#initialize} 时选择
+ */
+public enum FileBackend {
+    /**
+     * 缓冲流 + 批量刷盘（默认）
+     */
+    STREAM,
+    /**
+     * 按最大文件大小预分配分段，通过 MappedByteBuffer 直接写入，写满后滚动
+     */
+    MAPPED;
+
+    SegmentAppender open(File file, long capacity) throws IOException {
+        if (this == MAPPED) {
+            return new MappedSegmentAppender(file, capacity);
+        }
+        return new GroupCommitWriter(file);
+    }
+}
@@ -8,7 +8,8 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
- * 周期性后台任务，用于自动清理指定目录
+ * 周期性后台任务，用于完整遍历并清理指定目录
+ * 超限清理由 {@link SizeLedger} 在台账越过阈值时立即触发，这里的周期遍历只用于校正台账的累计误差
  */
  class FileCleanWorker {
 
@@ -19,6 +20,7 @@ import java.util.concurrent.TimeUnit;
             return; // 已启动
         }
 
+        SizeLedger.register(folder);
         scheduler = Executors.newSingleThreadScheduledExecutor();
 
         scheduler.scheduleWithFixedDelay(new Runnable() {
@@ -0,0 +1,64 @@
+package com.library.logtools;
+
+/**
+ * 一条编译后的过滤规则及其命中统计
+ * 统计字段只由写日志线程修改，其他线程读取到的是近似值
+ */
+class FilterRule {
+    // 每 16 次求值采样一次耗时
+    private static final int SAMPLE_MASK = 15;
+
+    enum Action {
+        /**
+         * 命中的记录额外写入过滤日志
+         */
+        ROUTE,
+        /**
+         * 命中的记录直接丢弃，不格式化也不写入任何文件
+         */
+        DROP
+    }
+
+    final String name;
+    // 过滤日志分组，为 null 时写入默认的 filter_ 文件
+    final String group;
+    final Action action;
+    final String source;
+    private final RulePredicate predicate;
+    private volatile long evaluated;
+    private volatile long matched;
+    private volatile long sampledNanos;
+    private volatile long sampledCount;
+
+    FilterRule(String name, String group, Action action, String source, RulePredicate predicate) {
+        this.name = name;
+        this.group = group;
+        this.action = action;
+        this.source = source;
+        this.predicate = predicate;
+    }
+
+    boolean test(LogRecord record, boolean[] keywordHits) {
+        long count = evaluated;
+        evaluated = count + 1;
+        boolean result;
+        if ((count & SAMPLE_MASK) == 0) {
+            long start = System.nanoTime();
+            result = predicate.test(record, keywordHits);
+            sampledNanos += System.nanoTime() - start;
+            sampledCount++;
+        } else {
+            result = predicate.test(record, keywordHits);
+        }
+        if (result) {
+            matched++;
+        }
+        return result;
+    }
+
+    FilterRuleStats snapshot() {
+        long samples = sampledCount;
+        return new FilterRuleStats(name, action.name(), source, evaluated, matched,
+                samples == 0 ? 0 : sampledNanos / samples);
+    }
+}
@@ -0,0 +1,290 @@
+package com.library.logtools;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 过滤规则解析与编译
+ * <pre>
+ * # 注释
+ * [route|drop] 名称[@分组] : 表达式
+ *
+ * 表达式 := 条件 | 表达式 and/&& 表达式 | 表达式 or/|| 表达式 | not/! 表达式 | ( 表达式 )
+ * 条件   := level =|!=|>=|<=|>|< V/D/I/W/E/F
+ *         | buffer =|!= MAIN/SYSTEM/RADIO/EVENTS/CRASH
+ *         | tag =|!= 值 | tag ~ "正则"
+ *         | pid =|!= 数字
+ *         | msg ~ "正则"
+ *         | keyword = 值 | "值"            （消息包含该关键字）
+ *
+ * 例：route net_error : level>=E and (tag=Net or keyword=timeout)
+ *     drop  chatty    : tag=Sensor and level<=D
+ *     route pay@payment : tag=Pay
+ * </pre>
+ * 带分组的 ROUTE 规则写入独立的 filter_分组_yyyyMMdd_N.txt，分组名只能包含字母和数字；
+ * 不符合上述格式的行按旧格式视为一个关键字（第一个 + 之前的部分），规则名即关键字本身；
+ * 空关键字会匹配所有消息，表达式中视为语法错误，旧格式中整行忽略
+ */
+final class FilterRuleParser {
+    private static final String TAG = "FilterRuleParser";
+    private static final Pattern HEADER = Pattern.compile("^(?:(route|drop)\\s+)?([A-Za-z0-9_.\\-]+)(?:@([A-Za-z0-9]+))?\\s*:(.*)$");
+
+    private final List<String> tokens;
+    private final List<String> keywords;
+    private int position;
+
+    private FilterRuleParser(String expression, List<String> keywords) {
+        this.tokens = tokenize(expression);
+        this.keywords = keywords;
+    }
+
+    /**
+     * 编译规则文本，每个非空、非注释行为一条规则
+     */
+    static FilterRuleSet compile(List<String> lines) {
+        List<String> keywords = new ArrayList<>();
+        List<FilterRule> rules = new ArrayList<>();
+        for (String raw : lines) {
+            String line = raw == null ? "" : raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            FilterRule rule = null;
+            Matcher matcher = HEADER.matcher(line);
+            if (matcher.matches()) {
+                try {
+                    FilterRule.Action action = "drop".equals(matcher.group(1)) ? FilterRule.Action.DROP : FilterRule.Action.ROUTE;
+                    RulePredicate predicate = new FilterRuleParser(matcher.group(4), keywords).parse();
+                    rule = new FilterRule(matcher.group(2), matcher.group(3), action, line, predicate);
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "compile: treat as keyword, " + e.getMessage() + " : " + line);
+                }
+            }
+            if (rule == null) {
+                // 旧格式：一行一个关键字
+                String keyword = legacyKeyword(line);
+                if (keyword == null) {
+                    Log.w(TAG, "compile: ignore empty keyword : " + line);
+                    continue;
+                }
+                rule = new FilterRule(keyword, null, FilterRule.Action.ROUTE, line,
+                        new RulePredicate.KeywordHit(keywordIndex(keywords, keyword)));
+            }
+            rules.add(rule);
+        }
+        return new FilterRuleSet(rules, new KeywordMatcher(keywords));
+    }
+
+    /**
+     * 规则中引用到的全部关键字
+     */
+    static List<String> keywordsOf(List<String> lines) {
+        List<String> keywords = new ArrayList<>();
+        for (String raw : lines) {
+            String line = raw == null ? "" : raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            Matcher matcher = HEADER.matcher(line);
+            if (matcher.matches()) {
+                try {
+                    new FilterRuleParser(matcher.group(4), keywords).parse();
+                    continue;
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+            String keyword = legacyKeyword(line);
+            if (keyword != null) {
+                keywordIndex(keywords, keyword);
+            }
+        }
+        return keywords;
+    }
+
+    // 旧格式行中第一个 + 之前的关键字，为空白时返回 null
+    private static String legacyKeyword(String line) {
+        int plus = line.indexOf('+');
+        String keyword = plus < 0 ? line : line.substring(0, plus);
+        return keyword.trim().isEmpty() ? null : keyword;
+    }
+
+    private static int keywordIndex(List<String> keywords, String keyword) {
+        if (keyword.trim().isEmpty()) {
+            throw new IllegalArgumentException("empty keyword");
+        }
+        int index = keywords.indexOf(keyword);
+        if (index < 0) {
+            keywords.add(keyword);
+            index = keywords.size() - 1;
+        }
+        return index;
+    }
+
+    private RulePredicate parse() {
+        RulePredicate predicate = parseOr();
+        if (position < tokens.size()) {
+            throw new IllegalArgumentException("unexpected '" + tokens.get(position) + "'");
+        }
+        return predicate;
+    }
+
+    private RulePredicate parseOr() {
+        RulePredicate left = parseAnd();
+        while (accept("or") || accept("||")) {
+            left = new RulePredicate.Or(left, parseAnd());
+        }
+        return left;
+    }
+
+    private RulePredicate parseAnd() {
+        RulePredicate left = parseUnary();
+        while (accept("and") || accept("&&")) {
+            left = new RulePredicate.And(left, parseUnary());
+        }
+        return left;
+    }
+
+    private RulePredicate parseUnary() {
+        if (accept("not") || accept("!")) {
+            return new RulePredicate.Not(parseUnary());
+        }
+        if (accept("(")) {
+            RulePredicate inner = parseOr();
+            expect(")");
+            return inner;
+        }
+        return parseCondition();
+    }
+
+    private RulePredicate parseCondition() {
+        String token = next();
+        if (isQuoted(token)) {
+            return new RulePredicate.KeywordHit(keywordIndex(keywords, unquote(token)));
+        }
+        String field = token.toLowerCase(Locale.US);
+        String operator = next();
+        String value = unquote(next());
+        RulePredicate predicate;
+        switch (field) {
+            case "level":
+                return new RulePredicate.LevelCompare(operator, Level.valueOf(value.toUpperCase(Locale.US)));
+            case "buffer":
+                predicate = new RulePredicate.BufferIs(BufferType.valueOf(value.toUpperCase(Locale.US)));
+                break;
+            case "tag":
+                if ("~".equals(operator)) {
+                    return new RulePredicate.RegexFind(true, Pattern.compile(value));
+                }
+                predicate = new RulePredicate.TagEquals(value);
+                break;
+            case "pid":
+                predicate = new RulePredicate.PidEquals(Integer.parseInt(value));
+                break;
+            case "msg":
+                if (!"~".equals(operator)) {
+                    throw new IllegalArgumentException("msg only supports ~");
+                }
+                return new RulePredicate.RegexFind(false, Pattern.compile(value));
+            case "keyword":
+                predicate = new RulePredicate.KeywordHit(keywordIndex(keywords, value));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown field '" + token + "'");
+        }
+        if ("=".equals(operator)) {
+            return predicate;
+        } else if ("!=".equals(operator)) {
+            return new RulePredicate.Not(predicate);
+        }
+        throw new IllegalArgumentException("operator '" + operator + "' not supported for " + field);
+    }
+
+    private boolean accept(String expected) {
+        if (position < tokens.size() && tokens.get(position).equalsIgnoreCase(expected)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String expected) {
+        if (!accept(expected)) {
+            throw new IllegalArgumentException("expected '" + expected + "'");
+        }
+    }
+
+    private String next() {
+        if (position >= tokens.size()) {
+            throw new IllegalArgumentException("unexpected end of rule");
+        }
+        return tokens.get(position++);
+    }
+
+    private static boolean isQuoted(String token) {
+        return token.length() >= 2 && token.charAt(0) == '"';
+    }
+
+    private static String unquote(String token) {
+        return isQuoted(token) ? token.substring(1, token.length() - 1) : token;
+    }
+
+    // 拆分为括号、运算符、带引号字符串（保留引号，支持 \" 转义）与普通单词
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')' || c == '~') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                StringBuilder builder = new StringBuilder("\"");
+                i++;
+                while (i < length && text.charAt(i) != '"') {
+                    if (text.charAt(i) == '\\' && i + 1 < length && text.charAt(i + 1) == '"') {
+                        i++;
+                    }
+                    builder.append(text.charAt(i++));
+                }
+                if (i >= length) {
+                    throw new IllegalArgumentException("unterminated string");
+                }
+                i++;
+                tokens.add(builder.append('"').toString());
+            } else if (c == '&' || c == '|') {
+                if (i + 1 >= length || text.charAt(i + 1) != c) {
+                    throw new IllegalArgumentException("unexpected '" + c + "'");
+                }
+                tokens.add(text.substring(i, i + 2));
+                i += 2;
+            } else if (c == '=' || c == '!' || c == '<' || c == '>') {
+                if (i + 1 < length && text.charAt(i + 1) == '=') {
+                    tokens.add(text.substring(i, i + 2));
+                    i += 2;
+                } else {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                }
+            } else {
+                int start = i;
+                while (i < length && !isDelimiter(text.charAt(i))) {
+                    i++;
+                }
+                tokens.add(text.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isDelimiter(char c) {
+        return Character.isWhitespace(c) || "()\"~&|=!<>".indexOf(c) >= 0;
+    }
+}
@@ -0,0 +1,79 @@
+package com.library.logtools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 编译后的规则集，不可变，规则变更时整体替换
+ * 所有规则中的关键字合并到一个 {@link KeywordMatcher}，每条记录只扫描一次消息
+ */
+final class FilterRuleSet {
+    static final FilterRuleSet EMPTY = new FilterRuleSet(Collections.<FilterRule>emptyList(), KeywordMatcher.EMPTY);
+
+    /**
+     * 单条记录的求值结果，由写日志线程复用
+     */
+    static final class Evaluation {
+        boolean drop;
+        int routeCount;
+        FilterRule[] routes = new FilterRule[8];
+        private boolean[] keywordHits = new boolean[0];
+
+        private void reset(int keywordCount) {
+            drop = false;
+            routeCount = 0;
+            if (keywordHits.length != keywordCount) {
+                keywordHits = new boolean[keywordCount];
+            }
+        }
+
+        private void addRoute(FilterRule rule) {
+            if (routeCount == routes.length) {
+                FilterRule[] grown = new FilterRule[routes.length * 2];
+                System.arraycopy(routes, 0, grown, 0, routes.length);
+                routes = grown;
+            }
+            routes[routeCount++] = rule;
+        }
+    }
+
+    private final FilterRule[] rules;
+    private final KeywordMatcher keywordMatcher;
+
+    FilterRuleSet(List<FilterRule> rules, KeywordMatcher keywordMatcher) {
+        this.rules = rules.toArray(new FilterRule[0]);
+        this.keywordMatcher = keywordMatcher;
+    }
+
+    boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    /**
+     * 按顺序对记录求值，命中 DROP 规则立即停止
+     */
+    void evaluate(LogRecord record, Evaluation evaluation) {
+        evaluation.reset(keywordMatcher.size());
+        if (!keywordMatcher.isEmpty()) {
+            keywordMatcher.matchInto(record.message, evaluation.keywordHits);
+        }
+        for (FilterRule rule : rules) {
+            if (rule.test(record, evaluation.keywordHits)) {
+                if (rule.action == FilterRule.Action.DROP) {
+                    evaluation.drop = true;
+                    return;
+                }
+                evaluation.addRoute(rule);
+            }
+        }
+    }
+
+    List<FilterRuleStats> stats() {
+        List<FilterRuleStats> result = new ArrayList<>(rules.length);
+        for (FilterRule rule : rules) {
+            result.add(rule.snapshot());
+        }
+        return result;
+    }
+}
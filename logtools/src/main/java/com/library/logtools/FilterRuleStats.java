@@ -0,0 +1,60 @@
+package com.library.logtools;
+
+/**
+ * 过滤规则的命中统计，用于找出开销大的规则
+ */
+public class FilterRuleStats {
+    private final String name;
+    private final String action;
+    private final String rule;
+    private final long evaluated;
+    private final long matched;
+    private final long averageNanos;
+
+    FilterRuleStats(String name, String action, String rule, long evaluated, long matched, long averageNanos) {
+        this.name = name;
+        this.action = action;
+        this.rule = rule;
+        this.evaluated = evaluated;
+        this.matched = matched;
+        this.averageNanos = averageNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * ROUTE 或 DROP
+     */
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * 规则原文
+     */
+    public String getRule() {
+        return rule;
+    }
+
+    public long getEvaluated() {
+        return evaluated;
+    }
+
+    public long getMatched() {
+        return matched;
+    }
+
+    /**
+     * 采样得到的单次求值平均耗时 单位：纳秒
+     */
+    public long getAverageNanos() {
+        return averageNanos;
+    }
+
+    @Override
+    public String toString() {
+        return name + " [" + action + "] evaluated=" + evaluated + " matched=" + matched + " avg=" + averageNanos + "ns";
+    }
+}
@@ -0,0 +1,48 @@
+package com.library.logtools;
+
+/**
+ * 批量提交的刷盘策略：累计字节数达到阈值、最早未刷盘记录超过最大延迟、
+ * 或遇到不低于 immediateLevel 的记录时立即刷盘
+ */
+public class FlushPolicy {
+    /**
+     * 默认策略：64KB 或 50ms，E/F 级别立即刷盘
+     */
+    public static final FlushPolicy DEFAULT = new FlushPolicy(64 * 1024, 50, Level.E);
+    /**
+     * 每条记录都刷盘，与旧版本行为一致
+     */
+    public static final FlushPolicy EVERY_RECORD = new FlushPolicy(0, 0, Level.V);
+
+    private final long byteThreshold;
+    private final long maxLatencyMillis;
+    private final Level immediateLevel;
+
+    /**
+     * @param byteThreshold    累计未刷盘字节数阈值
+     * @param maxLatencyMillis 记录在缓冲区中停留的最长时间 单位：毫秒
+     * @param immediateLevel   不低于该级别的记录立即刷盘，为 null 时不按级别刷盘
+     */
+    public FlushPolicy(long byteThreshold, long maxLatencyMillis, Level immediateLevel) {
+        this.byteThreshold = Math.max(0, byteThreshold);
+        this.maxLatencyMillis = Math.max(0, maxLatencyMillis);
+        this.immediateLevel = immediateLevel;
+    }
+
+    public long getByteThreshold() {
+        return byteThreshold;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    public Level getImmediateLevel() {
+        return immediateLevel;
+    }
+
+    boolean isImmediate(Level level) {
+        return immediateLevel != null && level != null && level != Level.UNKNOWN
+                && level.ordinal() >= immediateLevel.ordinal();
+    }
+}
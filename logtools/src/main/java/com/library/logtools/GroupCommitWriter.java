@@ -0,0 +1,90 @@
+package com.library.logtools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * 按 {@link FlushPolicy} 批量提交的日志文件写入器
+ * 只在写日志线程中使用，记录先累积在缓冲区，满足策略时一次性写出
+ */
+class GroupCommitWriter implements SegmentAppender {
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final FileOutputStream outputStream;
+    private final BufferedOutputStream stream;
+    private long pendingBytes;
+    private long firstPendingNanos;
+    // 打开时的文件长度加上已追加的字节数
+    private long length;
+
+    GroupCommitWriter(File file) throws IOException {
+        outputStream = new FileOutputStream(file, true);
+        length = file.length();
+        stream = new BufferedOutputStream(outputStream, WRITE_BUFFER_SIZE);
+    }
+
+    /**
+     * 追加一行，必要时按策略立即刷盘
+     */
+    @Override
+    public boolean append(byte[] head, int headLength, byte[] body, int bodyOffset, int bodyLength, Level level) throws IOException {
+        stream.write(head, 0, headLength);
+        stream.write(body, bodyOffset, bodyLength);
+        if (pendingBytes == 0) {
+            firstPendingNanos = System.nanoTime();
+        }
+        pendingBytes += headLength + bodyLength;
+        length += headLength + bodyLength;
+        FlushPolicy policy = FaceLogTools.getFlushPolicy();
+        if (policy.isImmediate(level) || pendingBytes >= policy.getByteThreshold()) {
+            flush();
+        }
+        return true;
+    }
+
+    @Override
+    public long commitIfDue(long nowNanos) throws IOException {
+        if (pendingBytes == 0) {
+            return -1;
+        }
+        long maxLatencyNanos = FaceLogTools.getFlushPolicy().getMaxLatencyMillis() * 1_000_000L;
+        long remaining = firstPendingNanos + maxLatencyNanos - nowNanos;
+        if (remaining <= 0) {
+            flush();
+            return -1;
+        }
+        return remaining;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        stream.flush();
+        pendingBytes = 0;
+    }
+
+    @Override
+    public void sync() throws IOException {
+        flush();
+        outputStream.getFD().sync();
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pendingBytes = 0;
+        stream.close();
+    }
+
+    // 合并两个等待时间，-1 表示无需等待
+    static long earliest(long a, long b) {
+        if (a < 0) return b;
+        if (b < 0) return a;
+        return Math.min(a, b);
+    }
+}
@@ -0,0 +1,219 @@
+package com.library.logtools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho–Corasick 多关键字匹配自动机，构建后不可变，可在线程间共享
+ * 一次扫描消息即可找出全部命中的关键字，耗时与关键字数量无关；
+ * 命中结果按调用方传入的下标记录，空关键字保留下标但永远不命中
+ */
+final class KeywordMatcher {
+    static final KeywordMatcher EMPTY = new KeywordMatcher(Collections.<String>emptyList());
+
+    private final String[] keywords;
+    // 参与匹配的（非空）关键字数量，全部命中后提前结束扫描
+    private final int matchable;
+    // 每个节点的子节点按字符排序，二分查找
+    private final char[][] childChars;
+    private final int[][] childNodes;
+    private final int[] failure;
+    // 以该节点结尾的关键字下标（含失败链上的输出）
+    private final int[][] outputs;
+
+    KeywordMatcher(List<String> keywordList) {
+        keywords = new String[keywordList.size()];
+        int count = 0;
+        for (int k = 0; k < keywords.length; k++) {
+            String keyword = keywordList.get(k);
+            keywords[k] = keyword == null ? "" : keyword;
+            if (keywords[k].length() > 0) {
+                count++;
+            }
+        }
+        matchable = count;
+
+        // 构建 trie
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> terminal = new ArrayList<>();
+        trie.add(new TreeMap<Character, Integer>());
+        terminal.add(new ArrayList<Integer>());
+        for (int k = 0; k < keywords.length; k++) {
+            int node = 0;
+            String keyword = keywords[k];
+            if (keyword.length() == 0) {
+                continue;
+            }
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(node).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(node).put(keyword.charAt(i), next);
+                    trie.add(new TreeMap<Character, Integer>());
+                    terminal.add(new ArrayList<Integer>());
+                }
+                node = next;
+            }
+            terminal.get(node).add(k);
+        }
+
+        int size = trie.size();
+        childChars = new char[size][];
+        childNodes = new int[size][];
+        for (int n = 0; n < size; n++) {
+            TreeMap<Character, Integer> children = trie.get(n);
+            childChars[n] = new char[children.size()];
+            childNodes[n] = new int[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> entry : children.entrySet()) {
+                childChars[n][i] = entry.getKey();
+                childNodes[n][i] = entry.getValue();
+                i++;
+            }
+        }
+
+        // 广度优先计算失败指针，并合并失败链上的输出
+        failure = new int[size];
+        outputs = new int[size][];
+        outputs[0] = toArray(terminal.get(0));
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : childNodes[0]) {
+            failure[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            List<Integer> merged = new ArrayList<>(terminal.get(node));
+            for (int out : outputs[failure[node]]) {
+                merged.add(out);
+            }
+            outputs[node] = toArray(merged);
+            for (int i = 0; i < childChars[node].length; i++) {
+                int child = childNodes[node][i];
+                char c = childChars[node][i];
+                int f = failure[node];
+                int target;
+                while ((target = transition(f, c)) < 0 && f != 0) {
+                    f = failure[f];
+                }
+                failure[child] = target < 0 || target == child ? 0 : target;
+                queue.add(child);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return matchable == 0;
+    }
+
+    /**
+     * 返回 text 中出现的全部关键字，按添加顺序排列；没有命中时返回空列表且不分配对象
+     */
+    List<String> findAll(String text) {
+        if (matchable == 0 || text == null) {
+            return Collections.emptyList();
+        }
+        boolean[] found = null;
+        int foundCount = 0;
+        int node = 0;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            node = step(node, text.charAt(i));
+            int[] out = outputs[node];
+            if (out.length > 0) {
+                if (found == null) {
+                    found = new boolean[keywords.length];
+                }
+                for (int k : out) {
+                    if (!found[k]) {
+                        found[k] = true;
+                        foundCount++;
+                    }
+                }
+                if (foundCount == matchable) {
+                    break;
+                }
+            }
+        }
+        if (found == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(foundCount);
+        for (int k = 0; k < keywords.length; k++) {
+            if (found[k]) {
+                result.add(keywords[k]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 下标范围，即传入的关键字数量（含空关键字）
+     */
+    int size() {
+        return keywords.length;
+    }
+
+    /**
+     * 关键字第一次出现的下标，不存在时返回 -1
+     */
+    int indexOf(String keyword) {
+        for (int k = 0; k < keywords.length; k++) {
+            if (keywords[k].equals(keyword)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 将 text 中命中的关键字写入 found（按下标），不分配对象
+     *
+     * @return 命中的关键字数量
+     */
+    int matchInto(String text, boolean[] found) {
+        Arrays.fill(found, false);
+        if (matchable == 0 || text == null) {
+            return 0;
+        }
+        int foundCount = 0;
+        int node = 0;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            node = step(node, text.charAt(i));
+            for (int k : outputs[node]) {
+                if (!found[k]) {
+                    found[k] = true;
+                    if (++foundCount == matchable) {
+                        return foundCount;
+                    }
+                }
+            }
+        }
+        return foundCount;
+    }
+
+    private int step(int node, char c) {
+        int next;
+        while ((next = transition(node, c)) < 0 && node != 0) {
+            node = failure[node];
+        }
+        return next < 0 ? 0 : next;
+    }
+
+    private int transition(int node, char c) {
+        int index = Arrays.binarySearch(childChars[node], c);
+        return index < 0 ? -1 : childNodes[node][index];
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
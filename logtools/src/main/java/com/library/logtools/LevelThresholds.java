@@ -0,0 +1,111 @@
+package com.library.logtools;
+
+/**
+ * 按 tag 配置的最低日志级别，查询无锁且不分配对象
+ * <p>
+ * tag 与级别序号存放在线性探测的开放寻址表中，修改时复制出新表后整体替换，
+ * 没有单独配置的 tag 使用全局默认级别；级别设为 {@link Level#UNKNOWN} 时关闭对应日志
+ */
+final class LevelThresholds {
+    private static final int MIN_CAPACITY = 16;
+
+    private static final class Table {
+        final String[] keys;
+        final byte[] ordinals;
+        final int mask;
+        final int size;
+
+        Table(int capacity, int size) {
+            this.keys = new String[capacity];
+            this.ordinals = new byte[capacity];
+            this.mask = capacity - 1;
+            this.size = size;
+        }
+    }
+
+    private volatile Table table = new Table(MIN_CAPACITY, 0);
+    private volatile int defaultOrdinal = Level.V.ordinal();
+
+    boolean isLoggable(Level level, String tag) {
+        return level != null && level.ordinal() >= threshold(tag);
+    }
+
+    private int threshold(String tag) {
+        Table current = table;
+        if (tag != null && current.size > 0) {
+            int index = mix(tag.hashCode()) & current.mask;
+            String key;
+            while ((key = current.keys[index]) != null) {
+                if (key == tag || key.equals(tag)) {
+                    return current.ordinals[index];
+                }
+                index = (index + 1) & current.mask;
+            }
+        }
+        return defaultOrdinal;
+    }
+
+    void setDefault(Level level) {
+        defaultOrdinal = (level == null ? Level.V : level).ordinal();
+    }
+
+    Level getDefault() {
+        return Level.values()[defaultOrdinal];
+    }
+
+    /**
+     * 设置 tag 的最低级别，level 为 null 时移除该 tag 的配置
+     */
+    synchronized void put(String tag, Level level) {
+        if (tag == null) {
+            return;
+        }
+        Table current = table;
+        int size = current.size + (level == null ? 0 : 1);
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        // 先统计实际条目数，再复制到新表
+        Table next = new Table(capacity, countAfterPut(current, tag, level));
+        for (int i = 0; i < current.keys.length; i++) {
+            String key = current.keys[i];
+            if (key != null && !key.equals(tag)) {
+                insert(next, key, current.ordinals[i]);
+            }
+        }
+        if (level != null) {
+            insert(next, tag, (byte) level.ordinal());
+        }
+        table = next;
+    }
+
+    synchronized void clear() {
+        table = new Table(MIN_CAPACITY, 0);
+    }
+
+    private static int countAfterPut(Table current, String tag, Level level) {
+        int count = level == null ? 0 : 1;
+        for (String key : current.keys) {
+            if (key != null && !key.equals(tag)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void insert(Table table, String key, byte ordinal) {
+        int index = mix(key.hashCode()) & table.mask;
+        while (table.keys[index] != null) {
+            index = (index + 1) & table.mask;
+        }
+        table.keys[index] = key;
+        table.ordinals[index] = ordinal;
+    }
+
+    // 打散 String.hashCode 的低位，减少连续 tag 的聚集
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
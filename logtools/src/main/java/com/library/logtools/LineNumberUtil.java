@@ -8,28 +8,67 @@ import java.io.RandomAccessFile;
 
 public class LineNumberUtil {
     private static final String TAG=LineNumberUtil.class.getSimpleName();
+    // 从文件尾部向前读取的初始窗口大小
+    private static final int TAIL_WINDOW = 4 * 1024;
+    // 向前读取的最大窗口，超过时放弃查找，避免没有行号的文件或超长记录在启动时整个读入内存
+    private static final int MAX_TAIL_WINDOW = 256 * 1024;
 
     /**
-     * 获取文件下一行行号（取最后一行第一个方括号中的数字）
+     * 获取文件下一行行号（取最后一行第一个尖括号中的数字）
      */
     public static int getNextLineNumber(String filePath) {
-        int lastLineNumber = 0;
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
-            String line;
-            while ((line = raf.readLine()) != null) {
-                int start = line.indexOf('<');
-                int end = line.indexOf('>');
-                if (start != -1 && end != -1 && end > start + 1) {
-                    String numStr = line.substring(start + 1, end);
-                    try {
-                        lastLineNumber = Integer.parseInt(numStr);
-                    } catch (NumberFormatException ignored) {}
+        return getLastLineNumber(new File (filePath)) + 1;
+    }
+
+    /**
+     * 从文件尾部向前查找最后一个以 "<n>" 开头的行并返回 n，找不到时返回 0
+     * 窗口从 4KB 开始逐次翻倍，正常情况下只需读取文件末尾的一小段；超过 256KB 仍未找到时返回 0
+     */
+    public static int getLastLineNumber(File file) {
+        if (file == null || !file.isFile()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            long window = TAIL_WINDOW;
+            while (length > 0) {
+                long offset = Math.max(0, length - window);
+                byte[] buffer = new byte[(int) (length - offset)];
+                raf.seek(offset);
+                raf.readFully(buffer);
+                int lineNumber = findLastLineNumber(buffer, offset == 0);
+                if (lineNumber > 0 || offset == 0) {
+                    return Math.max(lineNumber, 0);
+                }
+                if (window >= MAX_TAIL_WINDOW) {
+                    Log.w(TAG, "no line number in the last " + window + " bytes of " + file.getName());
+                    return 0;
                 }
+                window = Math.min(window * 2, MAX_TAIL_WINDOW);
             }
         } catch (IOException e) {
             Log.e(TAG, "读取文件失败: " + e.getMessage());
         }
-        return lastLineNumber + 1;
+        return 0;
     }
-}
 
+    // 从缓冲区尾部向前扫描行首，startsAtFileHead 表示缓冲区第 0 个字节即文件开头
+    private static int findLastLineNumber(byte[] buffer, boolean startsAtFileHead) {
+        for (int i = buffer.length - 1; i >= 0; i--) {
+            boolean lineStart = i == 0 ? startsAtFileHead : buffer[i - 1] == '\n';
+            if (!lineStart || buffer[i] != '<') {
+                continue;
+            }
+            int value = 0;
+            int j = i + 1;
+            while (j < buffer.length && buffer[j] >= '0' && buffer[j] <= '9' && value < Integer.MAX_VALUE / 10) {
+                value = value * 10 + (buffer[j] - '0');
+                j++;
+            }
+            if (j > i + 1 && j < buffer.length && buffer[j] == '>') {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
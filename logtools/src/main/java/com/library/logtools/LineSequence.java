@@ -0,0 +1,38 @@
+package com.library.logtools;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 当前日志分段的行号计数器
+ * 行号保存在内存中，只有切换分段（启动、续写、滚动）时才从文件尾部恢复一次
+ */
+class LineSequence {
+    private final AtomicInteger lastLineNumber = new AtomicInteger();
+
+    /**
+     * 切换到新的分段，已存在的文件从尾部恢复最后一个行号，新文件从 1 开始
+     */
+    void reset(File segment) {
+        lastLineNumber.set(LineNumberUtil.getLastLineNumber(segment));
+    }
+
+    /**
+     * 分配下一个行号
+     */
+    int next() {
+        return lastLineNumber.incrementAndGet();
+    }
+
+    /**
+     * 确保后续行号不小于 lineNumber，用于句柄恢复后重写已分配行号的记录
+     */
+    void ensureAtLeast(int lineNumber) {
+        int current;
+        while ((current = lastLineNumber.get()) < lineNumber) {
+            if (lastLineNumber.compareAndSet(current, lineNumber)) {
+                return;
+            }
+        }
+    }
+}
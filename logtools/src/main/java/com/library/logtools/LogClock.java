@@ -0,0 +1,125 @@
+package com.library.logtools;
+
+import java.util.Calendar;
+
+/**
+ * 日志时间戳与日期边界
+ * 时间戳 "yyyy-MM-dd HH:mm:ss.SSS" 渲染到复用的字符缓冲区，只有秒数变化时才重新计算前缀；
+ * 当天的 "yyyyMMdd" 与下一个零点的毫秒数缓存在 {@link Day} 中，跨天判断只需比较 long
+ */
+class LogClock {
+    static final int TIMESTAMP_LENGTH = 23;
+    private static volatile Day currentDay;
+
+    // 以下字段只在持有该实例的线程中使用
+    private final char[] buffer = new char[TIMESTAMP_LENGTH];
+    private final Calendar calendar = Calendar.getInstance();
+    private long cachedSecond = Long.MIN_VALUE;
+
+    /**
+     * 一个自然日的边界，不可变，可在线程间共享
+     */
+    static final class Day {
+        final String stamp;
+        final long start;
+        final long end;
+
+        private Day(String stamp, long start, long end) {
+            this.stamp = stamp;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean contains(long millis) {
+            return millis >= start && millis < end;
+        }
+    }
+
+    /**
+     * 获取 millis 所在的自然日，同一天内只读取一次 volatile 引用
+     */
+    static Day dayOf(long millis) {
+        Day day = currentDay;
+        if (day != null && day.contains(millis)) {
+            return day;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long start = calendar.getTimeInMillis();
+        char[] stamp = new char[8];
+        putDigits(stamp, 0, calendar.get(Calendar.YEAR), 4);
+        putDigits(stamp, 4, calendar.get(Calendar.MONTH) + 1, 2);
+        putDigits(stamp, 6, calendar.get(Calendar.DAY_OF_MONTH), 2);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        day = new Day(new String(stamp), start, calendar.getTimeInMillis());
+        currentDay = day;
+        return day;
+    }
+
+    /**
+     * 当天的 "yyyyMMdd"
+     */
+    static String today() {
+        return dayOf(System.currentTimeMillis()).stamp;
+    }
+
+    /**
+     * 将 millis 按 "yyyy-MM-dd HH:mm:ss.SSS" 追加到 builder
+     */
+    void appendTimestamp(StringBuilder builder, long millis) {
+        long second = millis / 1000L;
+        if (second != cachedSecond) {
+            renderPrefix(second * 1000L);
+            cachedSecond = second;
+        }
+        putDigits(buffer, 20, (int) (millis - second * 1000L), 3);
+        builder.append(buffer, 0, TIMESTAMP_LENGTH);
+    }
+
+    /**
+     * 解析 "yyyy-MM-dd HH:mm:ss.SSS"，格式不符时返回 Long.MIN_VALUE
+     */
+    static long parseTimestamp(String text) {
+        if (text == null || text.length() != TIMESTAMP_LENGTH) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            calendar.set(Integer.parseInt(text.substring(0, 4)), Integer.parseInt(text.substring(5, 7)) - 1,
+                    Integer.parseInt(text.substring(8, 10)), Integer.parseInt(text.substring(11, 13)),
+                    Integer.parseInt(text.substring(14, 16)), Integer.parseInt(text.substring(17, 19)));
+            calendar.set(Calendar.MILLISECOND, Integer.parseInt(text.substring(20, 23)));
+            return calendar.getTimeInMillis();
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private void renderPrefix(long secondMillis) {
+        calendar.setTimeInMillis(secondMillis);
+        putDigits(buffer, 0, calendar.get(Calendar.YEAR), 4);
+        buffer[4] = '-';
+        putDigits(buffer, 5, calendar.get(Calendar.MONTH) + 1, 2);
+        buffer[7] = '-';
+        putDigits(buffer, 8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+        buffer[10] = ' ';
+        putDigits(buffer, 11, calendar.get(Calendar.HOUR_OF_DAY), 2);
+        buffer[13] = ':';
+        putDigits(buffer, 14, calendar.get(Calendar.MINUTE), 2);
+        buffer[16] = ':';
+        putDigits(buffer, 17, calendar.get(Calendar.SECOND), 2);
+        buffer[19] = '.';
+    }
+
+    private static void putDigits(char[] target, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            target[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
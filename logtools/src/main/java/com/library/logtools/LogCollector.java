@@ -0,0 +1,304 @@
+package com.library.logtools;
+
+import android.net.Credentials;
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 多进程日志收集：同一应用中先绑定本地 socket 的进程成为收集进程，独占日志文件，
+ * 其它进程通过 {@link LogCollectorClient} 把记录批量发送过来，进入收集进程的写日志队列统一分配行号。
+ * <p>
+ * 连接建立后客户端先发送 MAGIC、pid 与本次进程启动的随机会话号，之后每批为 int 字节数、int 记录数、
+ * long 首条记录序号与记录。记录序号在客户端内连续递增，发送失败的批次会在重连后重发，
+ * 收集进程按 (pid, 会话号) 记录已收到的最大序号，跳过重复的部分。每条记录为
+ * byte 级别、byte 缓冲区类型、byte 标记、int pid、long 时间、tag、message 以及可选的调用位置，
+ * 字符串为 int 字节数（null 为 -1）加 UTF-8 字节。时间在发送端编码时确定，重发不改变记录的时间。
+ * 收集进程只接受与本进程 uid 相同的连接，客户端也只向 uid 相同的收集进程发送。
+ */
+final class LogCollector {
+    private static final String TAG = "LogCollector";
+    static final byte[] MAGIC = {'F', 'L', 'C', '3'};
+    // 单批最大字节数，超过时断开连接
+    static final int MAX_BATCH_BYTES = 4 * 1024 * 1024;
+    static final int BATCH_HEADER_SIZE = 16;
+    // 记住已收到序号的客户端数量上限
+    private static final int MAX_TRACKED_CLIENTS = 64;
+    private static final int FLAG_WRITE_TO_FILE = 1;
+    private static final int FLAG_LOCATION = 2;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Level[] LEVELS = Level.values();
+    private static final BufferType[] BUFFER_TYPES = BufferType.values();
+
+    private static LocalServerSocket serverSocket;
+    // 收到的记录进入本进程的写日志队列
+    private static final Publisher REMOTE = new Publisher() {
+        @Override
+        public void publish(LogRecord record) {
+            FaceLogTools.publishRemote(record);
+        }
+    };
+    // 各客户端 "pid:会话号" 已收到的最大记录序号
+    private static final LinkedHashMap<String, Long> receivedSequences =
+            new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_TRACKED_CLIENTS;
+                }
+            };
+
+    private LogCollector() {
+    }
+
+    /**
+     * 收集进程解码出的客户端记录，record 在回调返回后被复用
+     */
+    interface Publisher {
+        void publish(LogRecord record);
+    }
+
+    /**
+     * 尝试成为收集进程，name 已被其它进程绑定时返回 false
+     */
+    static synchronized boolean start(String name) {
+        if (serverSocket != null) {
+            return true;
+        }
+        final LocalServerSocket server;
+        try {
+            server = new LocalServerSocket(name);
+        } catch (IOException e) {
+            return false;
+        }
+        serverSocket = server;
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop(server);
+            }
+        });
+        t.setName("FaceLogTools-Collector");
+        t.setDaemon(true);
+        t.start();
+        Log.d(TAG, "collecting logs on " + name);
+        return true;
+    }
+
+    private static void acceptLoop(LocalServerSocket server) {
+        while (true) {
+            final LocalSocket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                Log.w(TAG, "accept failed: " + e.getMessage());
+                return;
+            }
+            if (!isSameUid(socket)) {
+                closeQuietly(socket);
+                continue;
+            }
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    receive(socket);
+                }
+            });
+            t.setName("FaceLogTools-Collector-Client");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * 对端是否与本进程 uid 相同，收集进程检查客户端，客户端检查收集进程
+     */
+    static boolean isSameUid(LocalSocket socket) {
+        try {
+            Credentials credentials = socket.getPeerCredentials();
+            return credentials != null && credentials.getUid() == android.os.Process.myUid();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void receive(LocalSocket socket) {
+        try {
+            receive(socket.getInputStream(), REMOTE);
+        } catch (IOException e) {
+            Log.w(TAG, "client disconnected: " + e.getMessage());
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * 读取一个客户端连接的握手与全部批次直到流结束，跳过已收到的记录，其余交给 publisher
+     */
+    static void receive(InputStream input, Publisher publisher) throws IOException {
+        int pid = -1;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(input, 16 * 1024))) {
+            for (byte b : MAGIC) {
+                if (in.readByte() != b) {
+                    throw new IOException("bad handshake");
+                }
+            }
+            pid = in.readInt();
+            String client = pid + ":" + in.readLong();
+            byte[] batch = new byte[16 * 1024];
+            LogRecord record = new LogRecord();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int count = in.readInt();
+                long firstSequence = in.readLong();
+                if (length < 0 || length > MAX_BATCH_BYTES || count < 0) {
+                    throw new IOException("bad batch: " + length + " bytes, " + count + " records");
+                }
+                if (batch.length < length) {
+                    batch = new byte[Math.max(length, batch.length * 2)];
+                }
+                in.readFully(batch, 0, length);
+                // 连接断开前已收到的记录随重发的批次再次到达时跳过
+                long received = count > 0 ? advanceReceived(client, firstSequence + count - 1) : Long.MAX_VALUE;
+                int position = 0;
+                for (int i = 0; i < count; i++) {
+                    position = decode(batch, position, record);
+                    if (firstSequence + i > received) {
+                        publisher.publish(record);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("client " + pid + ": bad record", e);
+        }
+    }
+
+    // 将 client 已收到的最大序号推进到 last，返回推进前的值，没有记录时为 -1
+    private static long advanceReceived(String client, long last) {
+        synchronized (receivedSequences) {
+            Long previous = receivedSequences.get(client);
+            long received = previous == null ? -1 : previous;
+            if (last > received) {
+                receivedSequences.put(client, last);
+            }
+            return received;
+        }
+    }
+
+    /**
+     * 编码一条记录所需的最大字节数
+     */
+    static int maxEncodedLength(LogRecord record) {
+        return 3 + 4 + 8 + 12 + 3 * (length(record.tag) + length(record.message) + length(locationOf(record)));
+    }
+
+    /**
+     * 将 record 编码到 bytes 的 position 处，调用方需保证有 {@link #maxEncodedLength} 的空间；
+     * 记录没有时间时使用当前时间
+     *
+     * @return 写入后的位置
+     */
+    static int encode(LogRecord record, byte[] bytes, int position) {
+        String location = locationOf(record);
+        bytes[position++] = (byte) record.level.ordinal();
+        bytes[position++] = (byte) record.bufferType.ordinal();
+        bytes[position++] = (byte) ((record.writeToFile ? FLAG_WRITE_TO_FILE : 0) | (location != null ? FLAG_LOCATION : 0));
+        position = putInt(bytes, position, record.pid);
+        position = putLong(bytes, position, record.timeMillis != 0 ? record.timeMillis : System.currentTimeMillis());
+        position = putString(bytes, position, record.tag);
+        position = putString(bytes, position, record.message);
+        if (location != null) {
+            position = putString(bytes, position, location);
+        }
+        return position;
+    }
+
+    /**
+     * 从 bytes 的 position 处解码一条记录到 target
+     *
+     * @return 下一条记录的位置
+     */
+    static int decode(byte[] bytes, int position, LogRecord target) {
+        Level level = LEVELS[bytes[position++]];
+        BufferType bufferType = BUFFER_TYPES[bytes[position++]];
+        int flags = bytes[position++];
+        int pid = getInt(bytes, position);
+        long timeMillis = ((long) getInt(bytes, position + 4) << 32) | (getInt(bytes, position + 8) & 0xFFFFFFFFL);
+        position += 12;
+        int length = getInt(bytes, position);
+        String tag = getString(bytes, position + 4, length);
+        position += 4 + Math.max(0, length);
+        length = getInt(bytes, position);
+        String message = getString(bytes, position + 4, length);
+        position += 4 + Math.max(0, length);
+        CallerLocation caller = null;
+        if ((flags & FLAG_LOCATION) != 0) {
+            length = getInt(bytes, position);
+            caller = CallerLocation.ofLocation(getString(bytes, position + 4, length));
+            position += 4 + Math.max(0, length);
+        }
+        target.set(level, bufferType, pid, tag, message, (flags & FLAG_WRITE_TO_FILE) != 0, caller != null, caller);
+        target.timeMillis = timeMillis;
+        return position;
+    }
+
+    // 只有显示调用位置时才发送，收集进程用它代替 tag
+    private static String locationOf(LogRecord record) {
+        return record.showStackTrace && record.caller != null ? record.caller.location() : null;
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    private static int putString(byte[] bytes, int position, String text) {
+        if (text == null) {
+            return putInt(bytes, position, -1);
+        }
+        int end = Utf8.encode(text, bytes, position + 4);
+        putInt(bytes, position, end - position - 4);
+        return end;
+    }
+
+    private static String getString(byte[] bytes, int position, int length) {
+        return length < 0 ? null : new String(bytes, position, length, UTF_8);
+    }
+
+    static int putLong(byte[] bytes, int position, long value) {
+        putInt(bytes, position, (int) (value >>> 32));
+        return putInt(bytes, position + 4, (int) value);
+    }
+
+    static int putInt(byte[] bytes, int position, int value) {
+        bytes[position] = (byte) (value >>> 24);
+        bytes[position + 1] = (byte) (value >>> 16);
+        bytes[position + 2] = (byte) (value >>> 8);
+        bytes[position + 3] = (byte) value;
+        return position + 4;
+    }
+
+    private static int getInt(byte[] bytes, int position) {
+        return ((bytes[position] & 0xFF) << 24) | ((bytes[position + 1] & 0xFF) << 16)
+                | ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+    }
+
+    private static void closeQuietly(LocalSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
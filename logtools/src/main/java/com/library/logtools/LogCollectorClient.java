@@ -0,0 +1,210 @@
+package com.library.logtools;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 非收集进程的发送端，只在写日志线程使用
+ * <p>
+ * 写日志线程取出的记录编码后累积在一个批次中，按 {@link FlushPolicy} 的字节数、最大延迟与立即发送级别
+ * 一次写入 socket。发送失败时批次保留，之后的记录继续追加到同一批次，按递增的间隔在之后重发；
+ * 批次带首条记录的序号，收集进程据此跳过断开前已收到的部分。收集进程长时间不可用、批次达到上限时丢弃新记录。
+ * 记录加入批次时确定时间，重发或被接管后写入都保留这个时间。只向与本进程 uid 相同的收集进程发送。
+ */
+final class LogCollectorClient {
+    private static final String TAG = "LogCollectorClient";
+    private static final long MIN_RETRY_DELAY_NANOS = 100_000_000L;
+    private static final long MAX_RETRY_DELAY_NANOS = 5_000_000_000L;
+
+    /**
+     * 建立到收集进程的连接，返回的流关闭时断开连接
+     */
+    interface Connector {
+        OutputStream connect(String name) throws IOException;
+    }
+
+    static final Connector LOCAL_SOCKET = new Connector() {
+        @Override
+        public OutputStream connect(String name) throws IOException {
+            final LocalSocket socket = new LocalSocket();
+            try {
+                socket.connect(new LocalSocketAddress(name));
+                // 名字可能被其它应用抢先绑定，不能把日志发给它
+                if (!LogCollector.isSameUid(socket)) {
+                    throw new IOException("collector " + name + " belongs to another uid");
+                }
+                return new FilterOutputStream(socket.getOutputStream()) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        socket.close();
+                    }
+                };
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+    };
+
+    private final String name;
+    private final Connector connector;
+    // 本次进程启动的会话号，与 pid 一起标识客户端
+    private final long session = new Random().nextLong();
+    private OutputStream out;
+    private byte[] batch = new byte[16 * 1024];
+    private int position = LogCollector.BATCH_HEADER_SIZE;
+    private int count;
+    private long firstPendingNanos;
+    // 当前批次第一条记录的序号
+    private long firstSequence;
+    // 发送失败后下一次重发的时间与连续失败次数
+    private long retryAtNanos;
+    private int failures;
+    private int dropped;
+
+    LogCollectorClient(String name) {
+        this(name, LOCAL_SOCKET);
+    }
+
+    LogCollectorClient(String name, Connector connector) {
+        this.name = name;
+        this.connector = connector;
+    }
+
+    void add(LogRecord record) {
+        int required = position + LogCollector.maxEncodedLength(record);
+        if (required > LogCollector.MAX_BATCH_BYTES) {
+            // 只有收集进程持续不可用时才会积累到上限
+            dropped++;
+            return;
+        }
+        if (batch.length < required) {
+            byte[] grown = new byte[Math.max(required, batch.length * 2)];
+            System.arraycopy(batch, 0, grown, 0, position);
+            batch = grown;
+        }
+        if (count == 0) {
+            firstPendingNanos = System.nanoTime();
+        }
+        // 没有时间的记录在编码时取当前时间，之后重发不再改变
+        position = LogCollector.encode(record, batch, position);
+        count++;
+    }
+
+    /**
+     * 是否需要立即发送当前批次
+     */
+    boolean isDue(FlushPolicy policy, Level lastLevel, long nowNanos) {
+        if (count == 0 || (failures > 0 && nowNanos - retryAtNanos < 0)) {
+            return false;
+        }
+        return failures > 0 || policy.isImmediate(lastLevel)
+                || position - LogCollector.BATCH_HEADER_SIZE >= policy.getByteThreshold()
+                || position >= LogCollector.MAX_BATCH_BYTES / 2
+                || nowNanos - firstPendingNanos >= policy.getMaxLatencyMillis() * 1_000_000L;
+    }
+
+    /**
+     * 距离当前批次达到最大延迟的纳秒数，没有待发送记录时返回 -1
+     */
+    long delayNanos(FlushPolicy policy, long nowNanos) {
+        if (count == 0) {
+            return -1;
+        }
+        if (failures > 0) {
+            return Math.max(0, retryAtNanos - nowNanos);
+        }
+        return Math.max(0, firstPendingNanos + policy.getMaxLatencyMillis() * 1_000_000L - nowNanos);
+    }
+
+    /**
+     * 发送当前批次，未连接时先连接；失败时关闭连接并保留批次，按递增的间隔在之后重发
+     */
+    void send() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        try {
+            if (out == null) {
+                connect();
+            }
+            LogCollector.putInt(batch, 0, position - LogCollector.BATCH_HEADER_SIZE);
+            LogCollector.putInt(batch, 4, count);
+            LogCollector.putLong(batch, 8, firstSequence);
+            out.write(batch, 0, position);
+            out.flush();
+        } catch (IOException e) {
+            close();
+            long delay = Math.min(MAX_RETRY_DELAY_NANOS, MIN_RETRY_DELAY_NANOS << Math.min(failures, 6));
+            failures++;
+            retryAtNanos = System.nanoTime() + delay;
+            throw e;
+        }
+        if (dropped > 0) {
+            Log.w(TAG, "dropped " + dropped + " records while the collector was unavailable");
+            dropped = 0;
+        }
+        failures = 0;
+        firstSequence += count;
+        clear();
+    }
+
+    private void clear() {
+        position = LogCollector.BATCH_HEADER_SIZE;
+        count = 0;
+    }
+
+    /**
+     * 解码当前批次中尚未发送的记录并清空批次，用于接管收集进程后在本进程写入
+     */
+    List<LogRecord> takePending() {
+        List<LogRecord> records = new ArrayList<>(count);
+        int offset = LogCollector.BATCH_HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            LogRecord record = new LogRecord();
+            offset = LogCollector.decode(batch, offset, record);
+            records.add(record);
+        }
+        firstSequence += count;
+        clear();
+        return records;
+    }
+
+    void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            out = null;
+        }
+    }
+
+    private void connect() throws IOException {
+        OutputStream stream = connector.connect(name);
+        try {
+            byte[] handshake = new byte[LogCollector.MAGIC.length + 12];
+            System.arraycopy(LogCollector.MAGIC, 0, handshake, 0, LogCollector.MAGIC.length);
+            LogCollector.putInt(handshake, LogCollector.MAGIC.length, android.os.Process.myPid());
+            LogCollector.putLong(handshake, LogCollector.MAGIC.length + 4, session);
+            stream.write(handshake);
+            out = stream;
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+}
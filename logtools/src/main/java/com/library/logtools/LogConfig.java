@@ -0,0 +1,105 @@
+package com.library.logtools;
+
+import android.os.Environment;
+
+/**
+ * 日志配置的不可变快照，写日志路径通过 volatile 引用读取，修改时整体替换
+ */
+public final class LogConfig {
+    static final long DEFAULT_MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
+    static final long DEFAULT_MAX_FOLDER_SIZE = 500L * 1024 * 1024; // 500MB
+    static final int DEFAULT_MAX_FILE_COUNT = 10000; // 10k 文件
+    static final double DEFAULT_CLEAN_TARGET_RATIO = 0.8; // 清理到 80%
+
+    static final LogConfig DEFAULT = new LogConfig(
+            Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM).getAbsolutePath(),
+            DEFAULT_MAX_FILE_SIZE,
+            Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM).getAbsolutePath() + "/filter/",
+            DEFAULT_MAX_FOLDER_SIZE,
+            DEFAULT_MAX_FILE_COUNT,
+            DEFAULT_CLEAN_TARGET_RATIO);
+
+    private final String logDirectory;
+    private final long maxFileSize;
+    private final String filterDirectory;
+    private final long maxFolderSize;
+    private final int maxFileCount;
+    private final double cleanTargetRatio;
+
+    LogConfig(String logDirectory, long maxFileSize, String filterDirectory,
+              long maxFolderSize, int maxFileCount, double cleanTargetRatio) {
+        this.logDirectory = logDirectory;
+        this.maxFileSize = maxFileSize;
+        this.filterDirectory = filterDirectory;
+        this.maxFolderSize = maxFolderSize;
+        this.maxFileCount = maxFileCount;
+        this.cleanTargetRatio = cleanTargetRatio;
+    }
+
+    public String getLogDirectory() {
+        return logDirectory;
+    }
+
+    /**
+     * 单个日志分段的最大大小 单位：字节
+     */
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public String getFilterDirectory() {
+        return filterDirectory;
+    }
+
+    /**
+     * 日志目录允许占用的最大空间 单位：字节
+     */
+    public long getMaxFolderSize() {
+        return maxFolderSize;
+    }
+
+    public int getMaxFileCount() {
+        return maxFileCount;
+    }
+
+    /**
+     * 超出上限后清理到上限的比例
+     */
+    public double getCleanTargetRatio() {
+        return cleanTargetRatio;
+    }
+
+    LogConfig withLogDirectory(String logDirectory) {
+        return new LogConfig(logDirectory, maxFileSize, filterDirectory, maxFolderSize, maxFileCount, cleanTargetRatio);
+    }
+
+    LogConfig withMaxFileSize(long maxFileSize) {
+        return new LogConfig(logDirectory, maxFileSize, filterDirectory, maxFolderSize, maxFileCount, cleanTargetRatio);
+    }
+
+    LogConfig withFilterDirectory(String filterDirectory) {
+        return new LogConfig(logDirectory, maxFileSize, filterDirectory, maxFolderSize, maxFileCount, cleanTargetRatio);
+    }
+
+    LogConfig withMaxFolderSize(long maxFolderSize) {
+        return new LogConfig(logDirectory, maxFileSize, filterDirectory, maxFolderSize, maxFileCount, cleanTargetRatio);
+    }
+
+    LogConfig withMaxFileCount(int maxFileCount) {
+        return new LogConfig(logDirectory, maxFileSize, filterDirectory, maxFolderSize, maxFileCount, cleanTargetRatio);
+    }
+
+    LogConfig withCleanTargetRatio(double cleanTargetRatio) {
+        return new LogConfig(logDirectory, maxFileSize, filterDirectory, maxFolderSize, maxFileCount, cleanTargetRatio);
+    }
+
+    @Override
+    public String toString() {
+        return "LogConfig{logDirectory=" + logDirectory
+                + ", maxFileSize=" + maxFileSize
+                + ", filterDirectory=" + filterDirectory
+                + ", maxFolderSize=" + maxFolderSize
+                + ", maxFileCount=" + maxFileCount
+                + ", cleanTargetRatio=" + cleanTargetRatio + "}";
+    }
+}
@@ -0,0 +1,175 @@
+package com.library.logtools;
+
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 持有当前 {@link LogConfig} 快照
+ * 读取只是一次 volatile 读；修改时替换快照、通知监听者，并在后台线程写回 SharedPreferences。
+ * 保存的配置在后台线程读取，读取完成前的修改先作用于内存快照，读取后在保存的配置之上重新应用
+ */
+class LogConfigStore {
+    static final String KEY_LOG_DIR = "face_log_dir";
+    static final String KEY_MAX_FILE_SIZE = "max_file_size";
+    static final String KEY_LOG_FILTER_PATH = "log_filter_path";
+    static final String KEY_MAX_FOLDER_SIZE = "max_folder_size";
+    static final String KEY_MAX_FILE_COUNT = "max_file_count";
+    static final String KEY_CLEAN_TARGET_RATIO = "clean_target_ratio";
+
+    interface Listener {
+        void onConfigChanged(LogConfig oldConfig, LogConfig newConfig);
+    }
+
+    interface Mutator {
+        LogConfig apply(LogConfig config);
+    }
+
+    private static volatile LogConfig current = LogConfig.DEFAULT;
+    private static volatile boolean loaded;
+    // 读取保存的配置之前的修改，读取后按顺序重新应用
+    private static final List<Mutator> pendingMutators = new ArrayList<>();
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static final ExecutorService persistExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setName("LogConfigStore-Persist");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    static LogConfig get() {
+        return current;
+    }
+
+    static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 初始化时在后台线程从 SharedPreferences 读取一次配置，完成后（包括读取失败）在同一线程调用 onLoaded
+     */
+    static void loadAsync(final Runnable onLoaded) {
+        persistExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    onLoaded.run();
+                }
+            }
+        });
+    }
+
+    private static void load() {
+        if (loaded) {
+            return;
+        }
+        SharedPreferences sp = SPUtils.getPreferences();
+        LogConfig defaults = LogConfig.DEFAULT;
+        LogConfig persisted = new LogConfig(
+                sp.getString(KEY_LOG_DIR, defaults.getLogDirectory()),
+                sp.getLong(KEY_MAX_FILE_SIZE, defaults.getMaxFileSize()),
+                sp.getString(KEY_LOG_FILTER_PATH, defaults.getFilterDirectory()),
+                sp.getLong(KEY_MAX_FOLDER_SIZE, defaults.getMaxFolderSize()),
+                sp.getInt(KEY_MAX_FILE_COUNT, defaults.getMaxFileCount()),
+                sp.getFloat(KEY_CLEAN_TARGET_RATIO, (float) defaults.getCleanTargetRatio()));
+        LogConfig oldConfig;
+        LogConfig newConfig;
+        boolean modified;
+        synchronized (LogConfigStore.class) {
+            // 读取期间的修改同样在 pendingMutators 中，在保存的配置之上重新应用
+            newConfig = persisted;
+            for (Mutator mutator : pendingMutators) {
+                LogConfig applied = mutator.apply(newConfig);
+                if (applied != null) {
+                    newConfig = applied;
+                }
+            }
+            modified = !pendingMutators.isEmpty();
+            pendingMutators.clear();
+            oldConfig = current;
+            current = newConfig;
+            loaded = true;
+        }
+        notifyListeners(oldConfig, newConfig);
+        if (modified) {
+            persistAsync();
+        }
+    }
+
+    /**
+     * 基于当前快照生成新快照并替换，读取保存的配置之前只更新内存
+     */
+    static void update(Mutator mutator) {
+        LogConfig oldConfig;
+        LogConfig newConfig;
+        boolean persist;
+        synchronized (LogConfigStore.class) {
+            if (!loaded) {
+                pendingMutators.add(mutator);
+            }
+            oldConfig = current;
+            newConfig = mutator.apply(oldConfig);
+            if (newConfig == null || newConfig == oldConfig) {
+                return;
+            }
+            current = newConfig;
+            persist = loaded;
+        }
+        notifyListeners(oldConfig, newConfig);
+        if (persist) {
+            persistAsync();
+        }
+    }
+
+    private static void notifyListeners(LogConfig oldConfig, LogConfig newConfig) {
+        if (oldConfig == newConfig) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            listener.onConfigChanged(oldConfig, newConfig);
+        }
+    }
+
+    /**
+     * 在后台线程写入单个字符串配置
+     */
+    static void putStringAsync(final String key, final String value) {
+        persistExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SPUtils.putString(key, value);
+            }
+        });
+    }
+
+    // 写回时读取最新快照，连续修改只会产生最新值
+    private static void persistAsync() {
+        persistExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                LogConfig config = current;
+                SPUtils.getPreferences().edit()
+                        .putString(KEY_LOG_DIR, config.getLogDirectory())
+                        .putLong(KEY_MAX_FILE_SIZE, config.getMaxFileSize())
+                        .putString(KEY_LOG_FILTER_PATH, config.getFilterDirectory())
+                        .putLong(KEY_MAX_FOLDER_SIZE, config.getMaxFolderSize())
+                        .putInt(KEY_MAX_FILE_COUNT, config.getMaxFileCount())
+                        .putFloat(KEY_CLEAN_TARGET_RATIO, (float) config.getCleanTargetRatio())
+                        .commit();
+            }
+        });
+    }
+}
@@ -0,0 +1,293 @@
+package com.library.logtools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将日志分段流式转换为文本格式，每行与 {@link SegmentFormat#TEXT} 完全一致
+ * 二进制分段逐帧解码，不会整体读入内存；文本分段原样复制；.gz 分段边读边解压
+ */
+public final class LogExporter {
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    private static final Level[] LEVELS = Level.values();
+    private static final BufferType[] BUFFER_TYPES = BufferType.values();
+
+    private LogExporter() {
+    }
+
+    /**
+     * 导出到 target，返回导出的记录数，文本分段返回 -1
+     */
+    public static int exportText(File segment, File target) throws IOException {
+        try (OutputStream out = new FileOutputStream(target)) {
+            return exportText(segment, out);
+        }
+    }
+
+    /**
+     * 导出到 out，不关闭 out，返回导出的记录数，文本分段返回 -1
+     */
+    public static int exportText(File segment, OutputStream out) throws IOException {
+        try (InputStream in = SegmentCompactor.open(segment)) {
+            OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+            int count;
+            if (isBinary(in)) {
+                count = new Decoder(in, buffered).run();
+            } else {
+                copy(in, buffered);
+                count = -1;
+            }
+            buffered.flush();
+            return count;
+        }
+    }
+
+    /**
+     * 以文本格式读取分段，二进制分段在读取时逐帧解码
+     */
+    static InputStream openText(File segment) throws IOException {
+        InputStream in = SegmentCompactor.open(segment);
+        if (!isBinary(in)) {
+            return in;
+        }
+        return new TextStream(in);
+    }
+
+    // 读取并校验 MAGIC，不是二进制分段时回退到起始位置
+    private static boolean isBinary(InputStream in) throws IOException {
+        byte[] magic = BinarySegmentEncoder.MAGIC;
+        in.mark(magic.length);
+        for (byte b : magic) {
+            if (in.read() != b) {
+                in.reset();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static final class Decoder {
+        private final InputStream in;
+        private final OutputStream out;
+        private final List<String> tags = new ArrayList<>();
+        private final List<String> sites = new ArrayList<>();
+        private final LogClock clock = new LogClock();
+        private final StringBuilder line = new StringBuilder(128);
+        private byte[] message = new byte[256];
+        private long time;
+        private long lineNumber;
+        private int count;
+
+        Decoder(InputStream in, OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        int run() throws IOException {
+            try {
+                while (step()) {
+                    // 逐帧解码直到结束
+                }
+            } catch (EOFException e) {
+                // 异常退出时最后一帧可能不完整，保留已解码的部分
+            }
+            return count;
+        }
+
+        /**
+         * 解码下一帧，返回 false 表示分段结束
+         */
+        boolean step() throws IOException {
+            int frame = in.read();
+            if (frame <= 0) {
+                return false;
+            }
+            switch (frame) {
+                case BinarySegmentEncoder.FRAME_TAG:
+                    define(tags);
+                    break;
+                case BinarySegmentEncoder.FRAME_SITE:
+                    define(sites);
+                    break;
+                case BinarySegmentEncoder.FRAME_BLOCK:
+                    time = readVarLong();
+                    lineNumber = readVarLong();
+                    break;
+                case BinarySegmentEncoder.FRAME_RECORD:
+                    writeRecord();
+                    count++;
+                    break;
+                default:
+                    throw new IOException("unknown frame " + frame + " after " + count + " records");
+            }
+            return true;
+        }
+
+        private void writeRecord() throws IOException {
+            int flags = readByte();
+            lineNumber += unzigzag(readVarLong());
+            time += unzigzag(readVarLong());
+            long pid = readVarLong();
+            int ref = (int) readVarLong();
+            int length = (int) readVarLong();
+            if (message.length < length) {
+                message = new byte[Math.max(length, message.length * 2)];
+            }
+            readFully(message, length);
+
+            boolean site = (flags & BinarySegmentEncoder.FLAG_SITE) != 0;
+            line.setLength(0);
+            line.append('<').append(lineNumber).append("> ");
+            line.append('[').append(pid).append("] ");
+            line.append('[').append(BUFFER_TYPES[(flags >>> 4) & 0x0F].name()).append("] ");
+            line.append('[').append(LEVELS[flags & 0x07].name()).append("] ");
+            line.append('[');
+            clock.appendTimestamp(line, time);
+            line.append("] ");
+            if (site) {
+                line.append("[ ").append(lookup(sites, ref)).append(" ] ");
+            } else {
+                line.append('[').append(lookup(tags, ref)).append("] ");
+            }
+            out.write(line.toString().getBytes("UTF-8"));
+            out.write(message, 0, length);
+            out.write(LINE_SEPARATOR);
+        }
+
+        private void define(List<String> dictionary) throws IOException {
+            int id = (int) readVarLong();
+            int length = (int) readVarLong();
+            byte[] bytes = new byte[length];
+            readFully(bytes, length);
+            while (dictionary.size() < id) {
+                dictionary.add(null);
+            }
+            // 写入失败后编码端会重新编号，后定义的覆盖先定义的
+            dictionary.set(id - 1, new String(bytes, "UTF-8"));
+        }
+
+        private static String lookup(List<String> dictionary, int ref) throws IOException {
+            if (ref == 0) {
+                return "null";
+            }
+            if (ref > dictionary.size()) {
+                throw new IOException("undefined dictionary id " + ref);
+            }
+            return dictionary.get(ref - 1);
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            return b;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("malformed varint");
+        }
+
+        private void readFully(byte[] bytes, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(bytes, offset, length - offset);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                offset += read;
+            }
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    // 按需解码的文本流，内存中只保留当前一条记录
+    private static final class TextStream extends InputStream {
+        private final InputStream source;
+        private final PendingBuffer pending = new PendingBuffer();
+        private final Decoder decoder;
+        private int position;
+        private boolean finished;
+
+        TextStream(InputStream source) {
+            this.source = source;
+            this.decoder = new Decoder(source, pending);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return pending.array()[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, pending.size() - position);
+            System.arraycopy(pending.array(), position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            while (position >= pending.size()) {
+                if (finished) {
+                    return false;
+                }
+                pending.reset();
+                position = 0;
+                try {
+                    finished = !decoder.step();
+                } catch (EOFException e) {
+                    finished = true;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    private static final class PendingBuffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -10,28 +10,34 @@ import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 class LogFilterTools {
-    private List<String> rulesKeywords = new ArrayList<>();
+    private final List<String> ruleLines = new CopyOnWriteArrayList<>();
+    // 编译后的规则集，规则变更后在后台重建并整体替换
+    private volatile FilterRuleSet ruleSet = FilterRuleSet.EMPTY;
+    // 写日志线程复用的求值结果
+    private final FilterRuleSet.Evaluation evaluation = new FilterRuleSet.Evaluation ();
+    private static final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor ( );
     private static volatile LogFilterTools instance;
     private static final String FILTER_FILE_PREFIX = "filter_";
     private static final String FILTER_FILE_EXTENSION = ".txt";
-    private static final SimpleDateFormat DATE_FLIENAME_FORMAT = new SimpleDateFormat("yyyyMMdd");
-    private static final String KEY_LOG_FILTER_PATH = "log_filter_path";
     private static final String KEY_CONFIG_PATH = "key_log_filter_config_path";
     private static final String DEFAULT_CONFIG_FILE= "log_filter.config";
     private static final String DEFAULT_FILETER_DIR= Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM).getAbsolutePath ()+"/filter/";
     private File configFile;
     private File logParentDirectory;
-    private File currentLogFile;
-    private static BufferedWriter writer;
+    private static final SegmentRotator rotator = new SegmentRotator (FILTER_FILE_PREFIX, FILTER_FILE_EXTENSION);
+    // 带分组规则对应的过滤日志，按需创建
+    private static final ConcurrentHashMap<String, SegmentRotator> groupRotators = new ConcurrentHashMap<> ( );
+    // 写日志线程复用的行首缓冲区
+    private final StringBuilder headBuilder = new StringBuilder ( );
+    private byte[] headBytes = new byte[128];
 
     private static LogFilterTools getInstance() {
         if (instance == null) {
@@ -46,149 +52,254 @@ class LogFilterTools {
     }
 
     private static void init() {
-        getInstance ().rulesKeywords.addAll (readRulesToKeywords ());
-        getInstance ().logParentDirectory= new File (SPUtils.getString (KEY_LOG_FILTER_PATH,DEFAULT_FILETER_DIR));
-        SPUtils.putString (KEY_LOG_FILTER_PATH,getInstance ().logParentDirectory.getAbsolutePath ());
-        getInstance ().configFile=new File (DEFAULT_FILETER_DIR,DEFAULT_CONFIG_FILE);
-        SPUtils.putString (KEY_CONFIG_PATH,getInstance ().configFile.getAbsolutePath ());
-        resumeOrCreateLogFile ();
-    }
-
-    private static synchronized void resumeOrCreateLogFile() {
-        closeWriter();
-        String today = DATE_FLIENAME_FORMAT.format(new Date ());
-        int fileIndex = 1;
-
-        // 获取当天所有日志文件
-        File[] existingFiles = getInstance ().logParentDirectory.listFiles((dir, name) -> name.startsWith(FILTER_FILE_PREFIX + today + "_") && name.endsWith(FILTER_FILE_EXTENSION));
-        if (existingFiles != null && existingFiles.length > 0) {
-            Arrays.sort(existingFiles, (f1, f2) -> f1.getName().compareTo(f2.getName()));
-            File lastFile = existingFiles[existingFiles.length - 1];
-            if (lastFile.length() < FaceLogTools.getMaxFileSize ()) {
-                getInstance ().currentLogFile = lastFile;
-                fileIndex = FaceLogTools.getFileIndexFromName(lastFile.getName());
+        getInstance ().configFile=getConfigFile ();
+        getInstance ().ruleLines.addAll (readRuleLines ());
+        rebuildRuleSet ();
+        getInstance ().logParentDirectory= new File (LogConfigStore.get ().getFilterDirectory ());
+        LogConfigStore.putStringAsync (KEY_CONFIG_PATH,getInstance ().configFile.getAbsolutePath ());
+        rotator.setMaxFileSize (FaceLogTools.getMaxFileSize ());
+        SegmentCompactor.attach (rotator);
+        rotator.setDirectory (getInstance ().logParentDirectory);
+    }
+
+    static void setMaxFileSize(long size) {
+        rotator.setMaxFileSize (size);
+        for (SegmentRotator groupRotator : groupRotators.values ( )) {
+            groupRotator.setMaxFileSize (size);
+        }
+    }
+
+    private static SegmentRotator rotatorOf(String group) {
+        if (group == null) {
+            return rotator;
+        }
+        SegmentRotator groupRotator = groupRotators.get (group);
+        if (groupRotator == null) {
+            groupRotator = new SegmentRotator (FILTER_FILE_PREFIX + group + "_", FILTER_FILE_EXTENSION);
+            groupRotator.setMaxFileSize (FaceLogTools.getMaxFileSize ());
+            SegmentRotator existing = groupRotators.putIfAbsent (group, groupRotator);
+            if (existing != null) {
+                groupRotator = existing;
             } else {
-                fileIndex = FaceLogTools.getFileIndexFromName(lastFile.getName()) + 1;
-                getInstance ().currentLogFile = new File(getInstance ().logParentDirectory, FILTER_FILE_PREFIX + today + "_" + fileIndex + FILTER_FILE_EXTENSION);
+                SegmentCompactor.attach (groupRotator);
+                groupRotator.setDirectory (getInstance ().logParentDirectory);
             }
-        } else {
-            getInstance ().currentLogFile = new File(getInstance ().logParentDirectory, FILTER_FILE_PREFIX + today + "_" + fileIndex + FILTER_FILE_EXTENSION);
         }
+        return groupRotator;
+    }
+
+    private static File getConfigFile() {
+        return new File (DEFAULT_FILETER_DIR,DEFAULT_CONFIG_FILE);
+    }
+
+    /**
+     * 添加一个关键字，等同于一条只包含该关键字的规则
+     */
+    public static void addKeyword(String keyword) {
+        addRule (keyword);
+    }
 
+    /**
+     * 添加一条过滤规则并写入配置文件，语法见 {@link FilterRuleParser}
+     */
+    public static void addRule(String rule) {
+        if (TextUtils.isEmpty (rule) || getInstance ( ).ruleLines.contains (rule)) {
+            return;
+        }
+        getInstance ( ).ruleLines.add (rule);
+        rebuildRuleSet ();
+        StringBuffer stringBuffer = new StringBuffer ( );
+        List<String> lines = getInstance ( ).ruleLines;
+        for (int i = 0; i < lines.size ( ); i++) {
+            if (i > 0) {
+                stringBuffer.append ("\n");
+            }
+            stringBuffer.append (lines.get (i));
+        }
         try {
-            writer = new BufferedWriter (new FileWriter (getInstance ().currentLogFile, true));
+            if (!getInstance ().configFile.getParentFile().exists ()){
+                getInstance ().configFile.getParentFile().mkdirs ();
+            }
+            if (!getInstance ().configFile.exists ()){
+                getInstance ().configFile.createNewFile ();
+            }
+            BufferedWriter bw = new BufferedWriter (new FileWriter (getInstance ().configFile,false));
+            bw.write (stringBuffer.toString ());
+            bw.close ();
         } catch (IOException e) {
-            e.printStackTrace();
+            e.printStackTrace ( );
         }
     }
 
-    public static void addKeyword(String keyword) {
-        if (TextUtils.isEmpty (keyword) && getInstance ( ).rulesKeywords.contains (keyword)) {
+    // 在后台线程编译当前规则，完成后原子替换
+    private static void rebuildRuleSet() {
+        rebuildExecutor.execute (new Runnable ( ) {
+            @Override
+            public void run() {
+                getInstance ( ).ruleSet = FilterRuleParser.compile (new ArrayList<> (getInstance ( ).ruleLines));
+            }
+        });
+    }
+
+    /**
+     * 在格式化之前对原始记录求值，没有规则时返回 null，只在写日志线程调用
+     */
+    static FilterRuleSet.Evaluation evaluate(LogRecord record) {
+        LogFilterTools tools = getInstance ( );
+        FilterRuleSet rules = tools.ruleSet;
+        if (rules.isEmpty ( )) {
+            return null;
+        }
+        rules.evaluate (record, tools.evaluation);
+        return tools.evaluation;
+    }
+
+    /**
+     * 将命中 ROUTE 规则的记录按分组写入过滤日志，行首标注命中的规则名，正文与主日志共享同一份编码结果
+     */
+    static void writeRouted(EncodedRecord record, FilterRuleSet.Evaluation evaluation) {
+        if (evaluation != null) {
+            writeRouted (record, evaluation.routes, evaluation.routeCount);
+        }
+    }
+
+    /**
+     * 按 routes 的前 routeCount 条规则写入过滤日志，用于尾部采样写出时使用暂存的命中结果
+     */
+    static void writeRouted(EncodedRecord record, FilterRule[] routes, int routeCount) {
+        if (routeCount == 0) {
             return;
         }
-        List<String> readRules = readRulesToKeywords ();
-        if (!getInstance ( ).rulesKeywords.contains (keyword)) {
-            getInstance ( ).rulesKeywords.add (keyword);
-            readRules.add (keyword);
-            StringBuffer stringBuffer = new StringBuffer ( );
-            boolean isLast = readRules.size ( ) == 1;
-            for (String item : readRules) {
-                if (isLast) {
-                    stringBuffer.append (item);
-                } else {
-                    stringBuffer.append (item).append ("\n");
+        LogFilterTools tools = getInstance ( );
+        for (int i = 0; i < routeCount; i++) {
+            String group = routes[i].group;
+            if (!isFirstOfGroup (routes, i)) {
+                continue;
+            }
+            StringBuilder head = tools.headBuilder;
+            head.setLength (0);
+            head.append ('<').append (record.lineNumber).append ("> [");
+            boolean first = true;
+            for (int j = i; j < routeCount; j++) {
+                if (TextUtils.equals (group, routes[j].group)) {
+                    if (!first) {
+                        head.append (',');
+                    }
+                    head.append (routes[j].name);
+                    first = false;
                 }
             }
+            head.append ("] ");
+            if (tools.headBytes.length < head.length ( ) * 3) {
+                tools.headBytes = new byte[head.length ( ) * 3];
+            }
+            int headLength = Utf8.encode (head, tools.headBytes, 0);
+            SegmentRotator target = rotatorOf (group);
             try {
-                if (!getInstance ().configFile.getParentFile().exists ()){
-                    getInstance ().configFile.getParentFile().mkdirs ();
-                }
-                if (!getInstance ().configFile.exists ()){
-                    getInstance ().configFile.createNewFile ();
+                target.ensureWritable (record.timeMillis);
+                if (!target.append (tools.headBytes, headLength, record.getBytes ( ), record.getMessageOffset ( ),
+                        record.getMessageLength ( ), record.level, record.bufferType)) {
+                    // 映射分段写满，滚动后重试
+                    target.rotate ( );
+                    target.append (tools.headBytes, headLength, record.getBytes ( ), record.getMessageOffset ( ),
+                            record.getMessageLength ( ), record.level, record.bufferType);
                 }
-                BufferedWriter bw = new BufferedWriter (new FileWriter (getInstance ().configFile,false));
-                bw.write (stringBuffer.toString ());
-                bw.close ();
             } catch (IOException e) {
                 e.printStackTrace ( );
             }
         }
     }
 
-    public static void writeToFile(int currentLine, String content) {
-        if (getInstance ( ).rulesKeywords.size ( ) == 0) {
+    private static boolean isFirstOfGroup(FilterRule[] routes, int index) {
+        for (int i = 0; i < index; i++) {
+            if (TextUtils.equals (routes[i].group, routes[index].group)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static List<FilterRuleStats> getRuleStats() {
+        return getInstance ( ).ruleSet.stats ( );
+    }
+
+    /**
+     * 提交过滤日志的缓冲数据，sync 为 true 时同步到存储设备
+     */
+    static void commit(boolean sync) {
+        if (instance == null) {
             return;
         }
-        String keywordStr = "";
-        boolean isMatch = false;
-        for (String keyword : getInstance ( ).rulesKeywords) {
-            if (content.contains (keyword)) {
-                isMatch = true;
-                keywordStr = keyword;
-                break;
-            }
+        commit (rotator, sync);
+        for (SegmentRotator groupRotator : groupRotators.values ( )) {
+            commit (groupRotator, sync);
         }
-        if (isMatch) {
-            if (!getInstance ( ).logParentDirectory.exists ( )) {
-                getInstance ( ).logParentDirectory.mkdirs ( );
-            }
-            if (getInstance ( ).currentLogFile == null || !getInstance ( ).currentLogFile.exists ( )) {
-                resumeOrCreateLogFile ( );
+    }
+
+    private static void commit(SegmentRotator target, boolean sync) {
+        try {
+            if (sync) {
+                target.sync ( );
             } else {
-                if (getInstance ( ).currentLogFile.length ( ) >= FaceLogTools.getMaxFileSize ( )) {
-                    resumeOrCreateLogFile ( );
-                }
-            }
-            try {
-                writer.write ("<" + currentLine + "> [" + keywordStr + "] " + content);
-                writer.newLine ( );
-                writer.flush ( );
-            } catch (IOException e) {
-                e.printStackTrace ( );
+                target.flush ( );
             }
+        } catch (IOException e) {
+            e.printStackTrace ( );
+        }
+    }
+
+    /**
+     * 超过最大延迟时刷盘，返回距离下次需要刷盘的纳秒数，-1 表示无待刷盘数据
+     */
+    static long commitIfDue(long nowNanos) {
+        if (instance == null) {
+            return -1;
+        }
+        long next = commitIfDue (rotator, nowNanos);
+        for (SegmentRotator groupRotator : groupRotators.values ( )) {
+            next = GroupCommitWriter.earliest (next, commitIfDue (groupRotator, nowNanos));
         }
+        return next;
     }
 
+    private static long commitIfDue(SegmentRotator target, long nowNanos) {
+        try {
+            return target.commitIfDue (nowNanos);
+        } catch (IOException e) {
+            e.printStackTrace ( );
+            return -1;
+        }
+    }
 
     /**
-     * 读取文件中的每一行内容到集合中去
-     *
-     * @return 返回读取到的所有包名list集合
+     * 读取规则中引用的全部关键字
      */
     public static List<String> readRulesToKeywords() {
-        String filePath=SPUtils.getString (KEY_LOG_FILTER_PATH,DEFAULT_FILETER_DIR);
-        //将读出来的一行行数据使用Map存储
-        List<String> bmdList = new ArrayList<String> ();
+        return FilterRuleParser.keywordsOf (readRuleLines ());
+    }
+
+    /**
+     * 读取规则配置文件中的每一行内容到集合中去
+     */
+    static List<String> readRuleLines() {
+        List<String> lines = new ArrayList<String> ();
         try {
-            File file = new File(filePath);
+            File file = getConfigFile ();
             if (file.isFile() && file.exists()) {  //文件存在的前提
                 InputStreamReader isr = new InputStreamReader(new FileInputStream (file));
                 BufferedReader br = new BufferedReader(isr);
                 String lineTxt = null;
-                while ((lineTxt = br.readLine()) != null) {  //
-                    if (!"".equals(lineTxt)) {
-                        String reds = lineTxt.split("\\+")[0];  //java 正则表达式
-                        bmdList.add(reds);//依次放到集合中去
+                while ((lineTxt = br.readLine()) != null) {
+                    if (!"".equals(lineTxt.trim ())) {
+                        lines.add(lineTxt.trim ());
                     }
                 }
                 isr.close();
                 br.close();
-            } else {
-                System.out.println("can not find file");//找不到文件情况下
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return bmdList;
-    }
-
-    private static void closeWriter() {
-        if (writer != null) {
-            try {
-                writer.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+        return lines;
     }
 }
@@ -0,0 +1,49 @@
+package com.library.logtools;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 环形队列中的可复用日志槽位，由生产者填充、写日志线程消费后清空
+ */
+class LogRecord {
+    Level level;
+    BufferType bufferType;
+    int pid;
+    String tag;
+    String message;
+    boolean writeToFile;
+    boolean showStackTrace;
+    CallerLocation caller;
+    // 记录产生的时间，为 0 时写入时取当前时间；其它进程发送来的记录保留发送端的时间
+    long timeMillis;
+    // 不为 null 时表示 flush()/sync() 屏障，写日志线程提交后 countDown
+    CountDownLatch barrier;
+    boolean sync;
+
+    void set(Level level, BufferType bufferType, int pid, String tag, String message,
+             boolean writeToFile, boolean showStackTrace, CallerLocation caller) {
+        this.level = level;
+        this.bufferType = bufferType;
+        this.pid = pid;
+        this.tag = tag;
+        this.message = message;
+        this.writeToFile = writeToFile;
+        this.showStackTrace = showStackTrace;
+        this.caller = caller;
+        this.timeMillis = 0;
+        this.barrier = null;
+    }
+
+    void setBarrier(CountDownLatch barrier, boolean sync) {
+        this.barrier = barrier;
+        this.sync = sync;
+    }
+
+    // 释放引用，避免槽位长期持有已写出的消息
+    void clear() {
+        tag = null;
+        message = null;
+        caller = null;
+        barrier = null;
+    }
+}
@@ -0,0 +1,276 @@
+package com.library.logtools;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 预分配槽位的多生产者/单消费者环形队列
+ * 生产者通过 CAS 抢占序号后填充槽位并发布，队列满时自旋等待写日志线程腾出空间，内存占用恒定
+ */
+class LogRingBuffer {
+
+    interface RecordHandler {
+        /**
+         * @param endOfBatch 当前已发布的记录是否已全部处理
+         */
+        void onRecord(LogRecord record, boolean endOfBatch);
+
+        /**
+         * 队列为空时调用
+         *
+         * @return 最多等待多少纳秒后需要再次调用，-1 表示可以一直等待新记录
+         */
+        long onIdle();
+    }
+
+    private static final int SPIN_TRIES = 100;
+
+    private final LogRecord[] entries;
+    private final int mask;
+    private final int indexShift;
+    // 每个槽位已发布的轮次，用于判断多生产者乱序发布时槽位是否可读
+    private final AtomicIntegerArray availableBuffer;
+    // 已被生产者抢占的最大序号
+    private final AtomicLong cursor = new AtomicLong(-1);
+    // 写日志线程已处理完成的最大序号
+    private final AtomicLong consumerSequence = new AtomicLong(-1);
+    private final WaitStrategy waitStrategy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private volatile boolean consumerWaiting;
+    private volatile boolean running;
+    private Thread consumerThread;
+    // 仅生产者读写的消费进度缓存，减少对 consumerSequence 的读取
+    private volatile long cachedConsumerSequence = -1;
+    // 写日志线程自身提交记录时因队列已满而丢弃的数量
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    LogRingBuffer(int bufferSize, WaitStrategy waitStrategy) {
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+        this.entries = new LogRecord[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            entries[i] = new LogRecord();
+        }
+        this.mask = bufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+        this.availableBuffer = new AtomicIntegerArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            availableBuffer.set(i, -1);
+        }
+        this.waitStrategy = waitStrategy == null ? WaitStrategy.BLOCKING : waitStrategy;
+    }
+
+    /**
+     * 抢占下一个序号，队列满时等待写日志线程消费
+     */
+    long next() {
+        return claim(false, 0);
+    }
+
+    /**
+     * 与 {@link #next()} 相同，但队列满时最多等待 timeoutNanos，超时返回 -1
+     */
+    long tryNext(long timeoutNanos) {
+        return claim(true, System.nanoTime() + timeoutNanos);
+    }
+
+    /**
+     * 供可能在写日志线程中调用的入口使用：写日志线程不能等待自己腾出空间，队列满时丢弃并计数，返回 -1；
+     * 其它线程与 {@link #next()} 相同
+     */
+    long nextOrDrop() {
+        if (!isConsumerThread()) {
+            return next();
+        }
+        long sequence = tryNext(0);
+        if (sequence < 0) {
+            droppedCount.incrementAndGet();
+        }
+        return sequence;
+    }
+
+    /**
+     * 写日志线程自身提交记录时因队列已满而丢弃的数量
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private long claim(boolean timed, long deadlineNanos) {
+        int capacity = entries.length;
+        while (true) {
+            long current = cursor.get();
+            long next = current + 1;
+            long wrapPoint = next - capacity;
+            if (wrapPoint > cachedConsumerSequence) {
+                long gating = consumerSequence.get();
+                if (wrapPoint > gating) {
+                    if (timed && System.nanoTime() - deadlineNanos >= 0) {
+                        return -1;
+                    }
+                    signalConsumer();
+                    LockSupport.parkNanos(1);
+                    continue;
+                }
+                cachedConsumerSequence = gating;
+            }
+            if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    LogRecord get(long sequence) {
+        return entries[(int) sequence & mask];
+    }
+
+    /**
+     * 发布已填充的槽位，对写日志线程可见
+     */
+    void publish(long sequence) {
+        // 使用 volatile 写，与消费者的 consumerWaiting 标记构成先写后读，避免丢失唤醒
+        availableBuffer.set((int) sequence & mask, (int) (sequence >>> indexShift));
+        if (consumerWaiting) {
+            signalConsumer();
+        }
+    }
+
+    private boolean isAvailable(long sequence) {
+        return availableBuffer.get((int) sequence & mask) == (int) (sequence >>> indexShift);
+    }
+
+    private void signalConsumer() {
+        if (waitStrategy == WaitStrategy.BLOCKING) {
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 当前线程是否为写日志线程
+     */
+    boolean isConsumerThread() {
+        return Thread.currentThread() == consumerThread;
+    }
+
+    /**
+     * 写日志线程是否仍在运行
+     */
+    boolean isConsumerAlive() {
+        Thread thread = consumerThread;
+        return running && thread != null && thread.isAlive();
+    }
+
+    /**
+     * 启动写日志线程
+     */
+    synchronized void start(final RecordHandler handler) {
+        if (running) {
+            return;
+        }
+        running = true;
+        consumerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consumeLoop(handler);
+            }
+        });
+        consumerThread.setName("FaceLogTools-Writer");
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+    }
+
+    private void consumeLoop(RecordHandler handler) {
+        long nextSequence = consumerSequence.get() + 1;
+        int idleCounter = 0;
+        while (running) {
+            long available = highestPublished(nextSequence, cursor.get());
+            if (available < nextSequence) {
+                long timeoutNanos;
+                try {
+                    timeoutNanos = handler.onIdle();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    timeoutNanos = -1;
+                }
+                idleCounter = waitForData(nextSequence, idleCounter, timeoutNanos);
+                continue;
+            }
+            idleCounter = 0;
+            while (nextSequence <= available) {
+                LogRecord record = get(nextSequence);
+                try {
+                    handler.onRecord(record, nextSequence == available);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                } finally {
+                    record.clear();
+                }
+                nextSequence++;
+            }
+            consumerSequence.lazySet(available);
+        }
+    }
+
+    // 返回从 lowerBound 开始连续可读的最大序号
+    private long highestPublished(long lowerBound, long upperBound) {
+        for (long sequence = lowerBound; sequence <= upperBound; sequence++) {
+            if (!isAvailable(sequence)) {
+                return sequence - 1;
+            }
+        }
+        return upperBound;
+    }
+
+    private int waitForData(long sequence, int counter, long timeoutNanos) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                return counter;
+            case YIELDING:
+                if (counter < SPIN_TRIES) {
+                    return counter + 1;
+                }
+                Thread.yield();
+                return counter;
+            case SLEEPING:
+                if (counter < SPIN_TRIES) {
+                    return counter + 1;
+                } else if (counter < SPIN_TRIES * 2) {
+                    Thread.yield();
+                    return counter + 1;
+                }
+                LockSupport.parkNanos(100_000L);
+                return counter;
+            case BLOCKING:
+            default:
+                lock.lock();
+                try {
+                    consumerWaiting = true;
+                    // 设置标记后再次确认，避免错过生产者的唤醒
+                    if (running && !isAvailable(sequence)) {
+                        if (timeoutNanos < 0) {
+                            notEmpty.await();
+                        } else if (timeoutNanos > 0) {
+                            notEmpty.awaitNanos(timeoutNanos);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                } finally {
+                    consumerWaiting = false;
+                    lock.unlock();
+                }
+                return counter;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.library.logtools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 在日志目录中按子串搜索
+ * <p>
+ * term 按字节子串匹配，ASCII 字母忽略大小写，例如 "timeout" 匹配 "ConnectTimeoutException"，行首的 "&lt;n&gt; " 不参与匹配；
+ * wholeWord 时只匹配完整单词，例如 "req42" 不会匹配 "req421"。只搜索 log_ 开头的日志分段。
+ * 先用各分段的 {@link SegmentBloom} 排除不可能包含 term 的分段（只使用 term 中一定是完整单词的部分），
+ * 剩余分段分配到与 CPU 核数相同的搜索线程中：
+ * 未压缩的文本分段通过 MappedByteBuffer 逐字节查找，压缩与二进制分段边解码边逐行查找。
+ */
+public final class LogSearch {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // 从匹配位置向前查找记录首行的最大距离
+    private static final int MAX_RECORD_LOOKBACK = 64 * 1024;
+    // 每扫描这么多字节检查一次取消
+    private static final int CANCEL_CHECK_BYTES = 64 * 1024;
+    // 两种格式的日志分段文件名，格式切换后旧格式的分段仍可搜索
+    private static final Pattern[] SEGMENT_NAMES = {
+            SegmentRotator.segmentPattern(FaceLogTools.LOG_FILE_PREFIX, SegmentFormat.TEXT.extension),
+            SegmentRotator.segmentPattern(FaceLogTools.LOG_FILE_PREFIX, SegmentFormat.BINARY.extension)};
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setName("FaceLogTools-Search-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private LogSearch() {
+    }
+
+    /**
+     * 目录中可能包含子串 term 的分段，按修改时间从旧到新排列
+     */
+    public static List<File> candidates(File directory, String term) {
+        return candidates(directory, term, false);
+    }
+
+    /**
+     * 目录中可能包含 term 的分段，按修改时间从旧到新排列
+     *
+     * @param wholeWord 为 true 时只匹配完整单词
+     */
+    public static List<File> candidates(File directory, String term, boolean wholeWord) {
+        long[] tokens = SegmentBloom.hashTokens(term, wholeWord);
+        List<File> result = new ArrayList<>();
+        for (File segment : listSegments(directory)) {
+            if (SegmentBloom.mightContain(segment, tokens)) {
+                result.add(segment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 并行按子串搜索，结果通过 listener 回调
+     *
+     * @param limit 最多返回的结果数，不大于 0 时不限制
+     */
+    public static SearchHandle searchAsync(File directory, String term, int limit, SearchListener listener) {
+        return searchAsync(directory, term, false, limit, listener);
+    }
+
+    /**
+     * 并行搜索，结果通过 listener 回调
+     *
+     * @param wholeWord 为 true 时只匹配完整单词
+     * @param limit     最多返回的结果数，不大于 0 时不限制
+     */
+    public static SearchHandle searchAsync(File directory, String term, boolean wholeWord, int limit,
+                                           SearchListener listener) {
+        SearchHandle handle = new SearchHandle();
+        if (term == null || term.isEmpty()) {
+            listener.onComplete(0, false);
+            handle.finish();
+            return handle;
+        }
+        List<File> segments = candidates(directory, term, wholeWord);
+        Search search = new Search(handle, new ByteMatcher(term, wholeWord), limit <= 0 ? Integer.MAX_VALUE : limit,
+                listener, segments.size());
+        if (segments.isEmpty()) {
+            search.complete();
+        }
+        for (final File segment : segments) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    search.run(segment);
+                }
+            });
+        }
+        return handle;
+    }
+
+    /**
+     * 返回目录下所有分段中包含子串 term 的行，按分段新旧与文件内位置排序
+     */
+    public static List<String> search(File directory, String term) throws IOException {
+        return search(directory, term, false);
+    }
+
+    /**
+     * 返回目录下所有分段中包含 term 的行，按分段新旧与文件内位置排序
+     *
+     * @param wholeWord 为 true 时只匹配完整单词
+     */
+    public static List<String> search(File directory, String term, boolean wholeWord) throws IOException {
+        List<File> order = listSegments(directory);
+        // 排序时按分段查表，避免在比较中逐个查找
+        final Map<File, Integer> ranks = new HashMap<>(order.size() * 2);
+        for (int i = 0; i < order.size(); i++) {
+            ranks.put(order.get(i), i);
+        }
+        final List<SearchMatch> matches = new ArrayList<>();
+        SearchHandle handle = searchAsync(directory, term, wholeWord, 0, new SearchListener() {
+            @Override
+            public void onMatch(SearchMatch match) {
+                matches.add(match);
+            }
+
+            @Override
+            public void onComplete(int matchCount, boolean cancelled) {
+            }
+        });
+        try {
+            while (!handle.await(1, TimeUnit.SECONDS)) {
+                // 等待全部分段搜索完成
+            }
+        } catch (InterruptedException e) {
+            handle.cancel();
+            Thread.currentThread().interrupt();
+            throw new IOException("search interrupted");
+        }
+        Collections.sort(matches, new Comparator<SearchMatch>() {
+            @Override
+            public int compare(SearchMatch o1, SearchMatch o2) {
+                int d = rankOf(ranks, o1.getFile()) - rankOf(ranks, o2.getFile());
+                if (d != 0) {
+                    return d;
+                }
+                return o1.getOffset() < o2.getOffset() ? -1 : (o1.getOffset() > o2.getOffset() ? 1 : 0);
+            }
+        });
+        List<String> result = new ArrayList<>(matches.size());
+        for (SearchMatch match : matches) {
+            result.add(match.getLine());
+        }
+        return result;
+    }
+
+    private static int rankOf(Map<File, Integer> ranks, File file) {
+        Integer rank = ranks.get(file);
+        return rank == null ? -1 : rank;
+    }
+
+    /**
+     * 目录下的日志分段（文本、二进制及其压缩文件），不包括索引等附属文件与其它分段序列
+     */
+    static List<File> listSegments(File directory) {
+        File[] files = directory == null ? null : directory.listFiles((dir, name) -> isLogSegment(name));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        List<File> segments = new ArrayList<>(Arrays.asList(files));
+        // 排序前读取一次修改时间，避免每次比较都访问文件系统
+        final Map<File, Long> modified = new HashMap<>(files.length * 2);
+        for (File file : files) {
+            modified.put(file, file.lastModified());
+        }
+        Collections.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                long d = modified.get(o1) - modified.get(o2);
+                return d < 0 ? -1 : (d > 0 ? 1 : 0);
+            }
+        });
+        return segments;
+    }
+
+    private static boolean isLogSegment(String name) {
+        for (Pattern pattern : SEGMENT_NAMES) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 一次搜索在各分段任务之间共享的状态
+    private static final class Search {
+        private final SearchHandle handle;
+        private final ByteMatcher matcher;
+        private final int limit;
+        private final SearchListener listener;
+        private final AtomicInteger remaining;
+        private int matchCount;
+        private boolean completed;
+
+        Search(SearchHandle handle, ByteMatcher matcher, int limit, SearchListener listener, int segments) {
+            this.handle = handle;
+            this.matcher = matcher;
+            this.limit = limit;
+            this.listener = listener;
+            this.remaining = new AtomicInteger(segments);
+        }
+
+        void run(File segment) {
+            try {
+                if (!handle.isCancelled()) {
+                    if (isPlainText(segment)) {
+                        scanMapped(segment);
+                    } else {
+                        scanStream(segment);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                if (remaining.decrementAndGet() == 0) {
+                    complete();
+                }
+            }
+        }
+
+        private void scanMapped(File segment) throws IOException {
+            MappedByteBuffer buffer;
+            int size;
+            try (RandomAccessFile file = new RandomAccessFile(segment, "r");
+                 FileChannel channel = file.getChannel()) {
+                size = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+                if (size == 0) {
+                    return;
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            int position = 0;
+            int nextCancelCheck = CANCEL_CHECK_BYTES;
+            while (position < size) {
+                if (position >= nextCancelCheck) {
+                    if (handle.isCancelled()) {
+                        return;
+                    }
+                    nextCancelCheck = position + CANCEL_CHECK_BYTES;
+                }
+                int found = matcher.indexOf(buffer, position, size);
+                if (found < 0) {
+                    return;
+                }
+                int lineStart = lastIndexOf(buffer, (byte) '\n', found - 1, 0) + 1;
+                int lineEnd = indexOf(buffer, (byte) '\n', found, size);
+                int prefixEnd = prefixEnd(buffer, lineStart, lineEnd);
+                if (found < prefixEnd) {
+                    // 命中行号部分，继续在同一行中查找
+                    position = found + 1;
+                    continue;
+                }
+                int lineNumber = prefixEnd > lineStart ? parseLineNumber(buffer, lineStart) : findRecordLineNumber(buffer, lineStart);
+                if (!emit(new SearchMatch(segment, lineNumber, lineStart, decode(buffer, lineStart, lineEnd)))) {
+                    return;
+                }
+                position = lineEnd + 1;
+            }
+        }
+
+        private void scanStream(File segment) throws IOException {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(LogExporter.openText(segment), UTF_8), 16 * 1024)) {
+                long offset = 0;
+                int lineNumber = -1;
+                String line;
+                while ((line = reader.readLine()) != null && !handle.isCancelled()) {
+                    byte[] bytes = line.getBytes(UTF_8);
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    int prefixEnd = prefixEnd(buffer, 0, bytes.length);
+                    if (prefixEnd > 0) {
+                        lineNumber = parseLineNumber(buffer, 0);
+                    }
+                    if (matcher.indexOf(buffer, prefixEnd, bytes.length) >= 0
+                            && !emit(new SearchMatch(segment, lineNumber, offset, line))) {
+                        return;
+                    }
+                    offset += bytes.length + 1;
+                }
+            }
+        }
+
+        // 串行回调，达到上限时取消其余任务
+        private synchronized boolean emit(SearchMatch match) {
+            if (handle.isCancelled() || matchCount >= limit) {
+                return false;
+            }
+            matchCount++;
+            listener.onMatch(match);
+            if (matchCount >= limit) {
+                handle.cancel();
+                return false;
+            }
+            return true;
+        }
+
+        synchronized void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            listener.onComplete(matchCount, handle.isCancelled() && matchCount < limit);
+            handle.finish();
+        }
+
+        // 当前行不是记录首行时向前查找所属记录的行号
+        private static int findRecordLineNumber(ByteBuffer buffer, int lineStart) {
+            int floor = Math.max(0, lineStart - MAX_RECORD_LOOKBACK);
+            int end = lineStart - 1;
+            while (end > floor) {
+                int start = lastIndexOf(buffer, (byte) '\n', end - 1, floor) + 1;
+                if (prefixEnd(buffer, start, end) > start) {
+                    return parseLineNumber(buffer, start);
+                }
+                end = start - 1;
+            }
+            return -1;
+        }
+    }
+
+    private static boolean isPlainText(File segment) {
+        return segment.getName().endsWith(SegmentFormat.TEXT.extension);
+    }
+
+    // "<n> " 之后的位置，不是记录首行时返回 start
+    private static int prefixEnd(ByteBuffer buffer, int start, int end) {
+        if (start >= end || buffer.get(start) != '<') {
+            return start;
+        }
+        int i = start + 1;
+        while (i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9') {
+            i++;
+        }
+        if (i == start + 1 || i + 1 >= end || buffer.get(i) != '>' || buffer.get(i + 1) != ' ') {
+            return start;
+        }
+        return i + 2;
+    }
+
+    private static int parseLineNumber(ByteBuffer buffer, int start) {
+        int value = 0;
+        for (int i = start + 1; buffer.get(i) != '>' && value < Integer.MAX_VALUE / 10; i++) {
+            value = value * 10 + (buffer.get(i) - '0');
+        }
+        return value;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, byte b, int from, int floor) {
+        for (int i = from; i >= floor; i--) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return floor - 1;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,18 @@
+package com.library.logtools;
+
+/**
+ * 额外的日志输出，通过 {@link FaceLogTools#addSink(LogSink)} 注册
+ * 所有方法都在写日志线程中调用，实现中不应阻塞
+ */
+public interface LogSink {
+
+    /**
+     * 接收一条已编码的记录，返回后记录会被回收；需要异步使用时先 {@link EncodedRecord#retain()}
+     */
+    void write(EncodedRecord record);
+
+    /**
+     * 调用 {@link FaceLogTools#flush()} / {@link FaceLogTools#sync()} 时触发
+     */
+    void flush();
+}
@@ -0,0 +1,248 @@
+package com.library.logtools;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 日志风暴保护：按 tag 的令牌桶限流，以及同一调用位置连续相同消息的折叠
+ * <p>
+ * 在写日志线程中、格式化之前判断。同一 tag 下级别、调用位置与消息都与上一条相同的记录只计数不写入，
+ * 出现不同的记录或到达统计间隔时写出一条 "last message repeated N times"；
+ * 超出令牌桶的记录直接丢弃，每个统计间隔按 tag 写出一条被丢弃的数量。配置可在任意线程修改，状态只在写日志线程访问。
+ */
+final class LogStormGuard {
+    // 折叠与限流统计的输出间隔
+    static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+    // 最多跟踪的 tag 数，超出时清理没有待输出统计的 tag，仍然超出时写出统计后全部清理
+    static final int MAX_TRACKED_TAGS = 1024;
+    private static final String NULL_TAG = "";
+
+    private static final class TagState {
+        final String tag;
+        double tokens;
+        long refillNanos;
+        // 上一条放行的记录
+        Level lastLevel;
+        BufferType lastBufferType;
+        int lastPid;
+        CallerLocation lastCaller;
+        String lastMessage;
+        int repeats;
+        int suppressed;
+        long lastSeenNanos;
+
+        TagState(String tag, double tokens, long nowNanos) {
+            this.tag = tag;
+            this.tokens = tokens;
+            this.refillNanos = nowNanos;
+        }
+    }
+
+    // 待写出的统计记录
+    private static final class Notice {
+        final Level level;
+        final BufferType bufferType;
+        final int pid;
+        final String tag;
+        final CallerLocation caller;
+        final String message;
+
+        Notice(Level level, BufferType bufferType, int pid, String tag, CallerLocation caller, String message) {
+            this.level = level;
+            this.bufferType = bufferType;
+            this.pid = pid;
+            this.tag = tag;
+            this.caller = caller;
+            this.message = message;
+        }
+    }
+
+    private volatile boolean collapseRepeats;
+    // 默认的 {每秒记录数, 突发上限}，为 null 时不限流
+    private volatile int[] defaultRate;
+    private final ConcurrentHashMap<String, int[]> tagRates = new ConcurrentHashMap<>();
+
+    private final HashMap<String, TagState> states = new HashMap<>();
+    private final ArrayDeque<Notice> notices = new ArrayDeque<>();
+    private long lastReportNanos = System.nanoTime();
+
+    void setCollapseRepeats(boolean collapseRepeats) {
+        this.collapseRepeats = collapseRepeats;
+    }
+
+    void setRateLimit(int recordsPerSecond, int burst) {
+        defaultRate = recordsPerSecond > 0 ? new int[]{recordsPerSecond, Math.max(1, burst)} : null;
+    }
+
+    /**
+     * recordsPerSecond 小于 0 时恢复使用默认限流，等于 0 时该 tag 不限流
+     */
+    void setTagRateLimit(String tag, int recordsPerSecond, int burst) {
+        String key = tag == null ? NULL_TAG : tag;
+        if (recordsPerSecond < 0) {
+            tagRates.remove(key);
+        } else {
+            tagRates.put(key, new int[]{recordsPerSecond, Math.max(1, burst)});
+        }
+    }
+
+    boolean isActive() {
+        return collapseRepeats || defaultRate != null || !tagRates.isEmpty() || !states.isEmpty();
+    }
+
+    /**
+     * 判断记录是否写入，被折叠或限流时返回 false；之前需要写出的统计通过 {@link #pollNotice} 取出
+     */
+    boolean admit(LogRecord record, long nowNanos) {
+        String key = record.tag == null ? NULL_TAG : record.tag;
+        TagState state = states.get(key);
+        int[] rate = rateOf(key);
+        if (state == null) {
+            if (!collapseRepeats && rate == null) {
+                return true;
+            }
+            if (states.size() >= MAX_TRACKED_TAGS) {
+                trim();
+            }
+            state = new TagState(record.tag, rate == null ? 0 : rate[1], nowNanos);
+            states.put(key, state);
+        }
+        state.lastSeenNanos = nowNanos;
+        if (collapseRepeats && isRepeat(state, record)) {
+            state.repeats++;
+            return false;
+        }
+        if (state.repeats > 0) {
+            addRepeatNotice(state);
+        }
+        if (rate != null && !take(state, rate, nowNanos)) {
+            state.suppressed++;
+            return false;
+        }
+        state.lastLevel = record.level;
+        state.lastBufferType = record.bufferType;
+        state.lastPid = record.pid;
+        state.lastCaller = record.caller;
+        state.lastMessage = record.message;
+        return true;
+    }
+
+    /**
+     * 到达统计间隔时生成各 tag 的折叠与限流统计，返回距离下次统计的纳秒数，没有跟踪的 tag 时返回 -1
+     */
+    long reportIfDue(long nowNanos) {
+        if (states.isEmpty()) {
+            return -1;
+        }
+        long elapsed = nowNanos - lastReportNanos;
+        if (elapsed < REPORT_INTERVAL_NANOS) {
+            return REPORT_INTERVAL_NANOS - elapsed;
+        }
+        lastReportNanos = nowNanos;
+        for (Iterator<TagState> it = states.values().iterator(); it.hasNext(); ) {
+            TagState state = it.next();
+            boolean suppressed = state.suppressed > 0;
+            addNotices(state);
+            if (!suppressed && nowNanos - state.lastSeenNanos >= REPORT_INTERVAL_NANOS) {
+                // 一个间隔内没有新记录，不再跟踪
+                it.remove();
+            }
+        }
+        return REPORT_INTERVAL_NANOS;
+    }
+
+    /**
+     * 当前跟踪的 tag 数
+     */
+    int trackedTags() {
+        return states.size();
+    }
+
+    /**
+     * 取出一条待写出的统计记录填入 target，没有时返回 false
+     */
+    boolean pollNotice(LogRecord target) {
+        Notice notice = notices.poll();
+        if (notice == null) {
+            return false;
+        }
+        target.set(notice.level, notice.bufferType, notice.pid, notice.tag, notice.message,
+                true, notice.caller != null, notice.caller);
+        return true;
+    }
+
+    private int[] rateOf(String key) {
+        int[] rate = tagRates.isEmpty() ? null : tagRates.get(key);
+        if (rate != null) {
+            return rate[0] > 0 ? rate : null;
+        }
+        return defaultRate;
+    }
+
+    private static boolean isRepeat(TagState state, LogRecord record) {
+        String last = state.lastMessage;
+        return last != null && state.lastLevel == record.level && state.lastPid == record.pid
+                && last.equals(record.message) && sameCaller(state.lastCaller, record.caller);
+    }
+
+    // 每次调用都会捕获新的 CallerLocation，按位置比较；放在最后，只有消息相同时才解析调用栈
+    private static boolean sameCaller(CallerLocation a, CallerLocation b) {
+        if (a == b) {
+            return true;
+        }
+        return a != null && b != null && a.location().equals(b.location());
+    }
+
+    // 写出 state 待输出的折叠与限流统计
+    private void addNotices(TagState state) {
+        if (state.repeats > 0) {
+            addRepeatNotice(state);
+        }
+        if (state.suppressed > 0) {
+            notices.add(new Notice(Level.W, state.lastBufferType == null ? BufferType.MAIN : state.lastBufferType,
+                    state.lastPid, state.tag, null,
+                    state.suppressed + " records suppressed by rate limit in the last "
+                            + REPORT_INTERVAL_NANOS / 1_000_000_000L + "s"));
+            state.suppressed = 0;
+        }
+    }
+
+    private void addRepeatNotice(TagState state) {
+        notices.add(new Notice(state.lastLevel, state.lastBufferType, state.lastPid, state.tag, state.lastCaller,
+                "last message repeated " + state.repeats + " times"));
+        state.repeats = 0;
+    }
+
+    // 令牌桶：按经过的时间补充令牌，不超过突发上限
+    private static boolean take(TagState state, int[] rate, long nowNanos) {
+        long elapsed = nowNanos - state.refillNanos;
+        if (elapsed > 0) {
+            state.tokens = Math.min(rate[1], state.tokens + elapsed * (double) rate[0] / 1_000_000_000L);
+            state.refillNanos = nowNanos;
+        }
+        if (state.tokens >= 1) {
+            state.tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    private void trim() {
+        for (Iterator<Map.Entry<String, TagState>> it = states.entrySet().iterator(); it.hasNext(); ) {
+            TagState state = it.next().getValue();
+            if (state.repeats == 0 && state.suppressed == 0) {
+                it.remove();
+            }
+        }
+        if (states.size() >= MAX_TRACKED_TAGS) {
+            // 每个 tag 都有待输出的统计：提前写出后全部清理，限流从突发上限重新开始
+            for (TagState state : states.values()) {
+                addNotices(state);
+            }
+            states.clear();
+        }
+    }
+}
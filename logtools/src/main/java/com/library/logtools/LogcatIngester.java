@@ -0,0 +1,406 @@
+package com.library.logtools;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Locale;
+
+/**
+ * 读取 logcat 子进程输出并写入日志队列
+ * <p>
+ * 每个缓冲区一个读取线程，按块读入固定的字节数组后逐行解析 threadtime 格式
+ * "MM-DD HH:MM:SS.mmm  PID  TID L TAG: message"：pid、级别与 tag 直接在字节上解析，
+ * tag 通过按哈希索引的缓存复用，每行只为消息创建一个 String。子进程意外退出时按递增间隔重启。
+ * 时间戳取 logcat 行内的时间（年份按当前时间推断），重启后补上的日志也保持原来的时间。
+ * <p>
+ * 首次启动从当前时间开始读取；重启时从最后一条已写入记录的时间继续，补上子进程退出期间的日志，
+ * 并跳过该毫秒内已经写入过的行。超过缓冲区的单行截断写入，其余部分丢弃到下一个换行。
+ */
+final class LogcatIngester {
+    private static final String TAG = "LogcatIngester";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TAG_CACHE_SIZE = 512;
+    private static final long MIN_RESTART_DELAY_MS = 1000;
+    private static final long MAX_RESTART_DELAY_MS = 30_000;
+    private static final int TIME_LENGTH = "MM-DD HH:MM:SS.mmm".length();
+    private static final int MINUTE_LENGTH = "MM-DD HH:MM".length();
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final EnumMap<BufferType, LogcatIngester> running = new EnumMap<>(BufferType.class);
+
+    private final BufferType bufferType;
+    private final LogcatLauncher launcher;
+    private final String[] tagCache = new String[TAG_CACHE_SIZE];
+    private volatile boolean stopped;
+    private InputStream input;
+    private Thread thread;
+    // 最后一条已写入记录的 "MM-DD HH:MM:SS.mmm"，以及该时间已写入的行数
+    private final byte[] lastTime = new byte[TIME_LENGTH];
+    private boolean hasLastTime;
+    private int lastTimeCount;
+    // 重启后仍需跳过的、与 lastTime 相同时间的行数
+    private int replaySkip;
+    // 最近解析的 "MM-DD HH:MM" 及其毫秒数，同一分钟内的行只需加上秒与毫秒
+    private final byte[] minuteKey = new byte[MINUTE_LENGTH];
+    private long minuteMillis = -1;
+    private final Calendar calendar = Calendar.getInstance();
+
+    // 最近一次 parseLine 的结果，时间为行内 [timeStart, timeStart + TIME_LENGTH)，解析为 timeMillis（失败时为 0）
+    int timeStart;
+    long timeMillis;
+    Level level;
+    int pid;
+    String tag;
+    String message;
+
+    LogcatIngester(BufferType bufferType, LogcatLauncher launcher) {
+        this.bufferType = bufferType;
+        this.launcher = launcher;
+    }
+
+    /**
+     * 开始读取 bufferType，已在读取时不重复启动
+     */
+    static synchronized void start(BufferType bufferType, LogcatLauncher launcher) {
+        if (running.containsKey(bufferType)) {
+            return;
+        }
+        LogcatIngester ingester = new LogcatIngester(bufferType, launcher);
+        running.put(bufferType, ingester);
+        ingester.startThread();
+    }
+
+    static synchronized void stopAll() {
+        for (LogcatIngester ingester : running.values()) {
+            ingester.stop();
+        }
+        running.clear();
+    }
+
+    private void startThread() {
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        });
+        thread.setName("FaceLogTools-Logcat-" + bufferType.name());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void stop() {
+        stopped = true;
+        closeInput();
+        thread.interrupt();
+    }
+
+    private void runLoop() {
+        long restartDelay = MIN_RESTART_DELAY_MS;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (!stopped) {
+            long lines = 0;
+            try {
+                String since = since();
+                synchronized (this) {
+                    input = launcher.launch(bufferType, since);
+                }
+                lines = pump(input, buffer);
+            } catch (IOException e) {
+                if (!stopped) {
+                    Log.w(TAG, "logcat " + bufferType + " failed: " + e.getMessage());
+                }
+            } finally {
+                closeInput();
+            }
+            if (stopped) {
+                return;
+            }
+            // 正常读取过一段时间后退出的，从最短间隔重新开始
+            restartDelay = lines > 0 ? MIN_RESTART_DELAY_MS : Math.min(restartDelay * 2, MAX_RESTART_DELAY_MS);
+            try {
+                Thread.sleep(restartDelay);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // logcat -T 的起始时间，同时设置重启后需要跳过的行数
+    private String since() {
+        if (!hasLastTime) {
+            return new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US).format(new Date());
+        }
+        replaySkip = lastTimeCount;
+        return new String(lastTime, UTF_8);
+    }
+
+    // 读到流结束，返回处理的行数
+    private long pump(InputStream in, byte[] buffer) throws IOException {
+        long lines = 0;
+        int start = 0;
+        int end = 0;
+        // 正在丢弃被截断行的剩余部分
+        boolean truncated = false;
+        while (!stopped) {
+            if (end == buffer.length) {
+                if (start == 0) {
+                    // 单行超过缓冲区，截断处理
+                    if (!truncated) {
+                        lines += publish(buffer, 0, end);
+                        truncated = true;
+                    }
+                    end = 0;
+                } else {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+            }
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                break;
+            }
+            int scan = end;
+            end += read;
+            for (int i = scan; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    if (truncated) {
+                        truncated = false;
+                    } else {
+                        lines += publish(buffer, start, i);
+                    }
+                    start = i + 1;
+                }
+            }
+            if (start == end) {
+                start = 0;
+                end = 0;
+            }
+        }
+        return lines;
+    }
+
+    private int publish(byte[] bytes, int start, int end) {
+        if (!parseLine(bytes, start, end) || isReplayed(bytes)) {
+            return 0;
+        }
+        FaceLogTools.publishIngested(level, bufferType, pid, tag, message, timeMillis);
+        return 1;
+    }
+
+    // 重启后 logcat 从 lastTime 开始输出（包含该毫秒），跳过已经写入过的行，并记录本行的时间
+    private boolean isReplayed(byte[] bytes) {
+        if (timeStart < 0) {
+            return false;
+        }
+        int order = hasLastTime ? compare(bytes, timeStart, lastTime) : 1;
+        if (replaySkip > 0) {
+            if (order < 0 || (order == 0 && replaySkip-- > 0)) {
+                return true;
+            }
+            replaySkip = 0;
+        }
+        if (order == 0) {
+            lastTimeCount++;
+        } else {
+            System.arraycopy(bytes, timeStart, lastTime, 0, TIME_LENGTH);
+            hasLastTime = true;
+            lastTimeCount = 1;
+        }
+        return false;
+    }
+
+    private static int compare(byte[] bytes, int start, byte[] time) {
+        for (int i = 0; i < TIME_LENGTH; i++) {
+            if (bytes[start + i] != time[i]) {
+                return bytes[start + i] < time[i] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 解析 [start, end) 的一行，成功时结果保存在 timeStart、timeMillis、level、pid、tag、message 中
+     */
+    boolean parseLine(byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        // 日期、时间
+        int dateStart = skipSpaces(bytes, start, end);
+        int i = skipToken(bytes, dateStart, end);
+        i = skipToken(bytes, skipSpaces(bytes, i, end), end);
+        int parsedTimeStart = i - dateStart == TIME_LENGTH ? dateStart : -1;
+        // pid
+        i = skipSpaces(bytes, i, end);
+        int value = 0;
+        int digits = 0;
+        while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+            value = value * 10 + (bytes[i++] - '0');
+            digits++;
+        }
+        if (digits == 0) {
+            return false;
+        }
+        // tid
+        int tidStart = skipSpaces(bytes, i, end);
+        i = skipToken(bytes, tidStart, end);
+        if (i == tidStart) {
+            return false;
+        }
+        // 级别为单个字符
+        i = skipSpaces(bytes, i, end);
+        if (i + 1 >= end || bytes[i + 1] != ' ') {
+            return false;
+        }
+        Level parsedLevel = levelOf(bytes[i]);
+        // tag 到第一个 ": " 为止，去掉补齐用的空格
+        int tagStart = skipSpaces(bytes, i + 2, end);
+        int colon = tagStart;
+        while (colon < end && !(bytes[colon] == ':' && (colon + 1 == end || bytes[colon + 1] == ' '))) {
+            colon++;
+        }
+        if (colon >= end) {
+            return false;
+        }
+        int tagEnd = colon;
+        while (tagEnd > tagStart && bytes[tagEnd - 1] == ' ') {
+            tagEnd--;
+        }
+        int messageStart = Math.min(end, colon + 2);
+        timeStart = parsedTimeStart;
+        timeMillis = parsedTimeStart < 0 ? 0 : timeOf(bytes, parsedTimeStart);
+        level = parsedLevel;
+        pid = value;
+        tag = tagOf(bytes, tagStart, tagEnd);
+        message = new String(bytes, messageStart, end - messageStart, UTF_8);
+        return true;
+    }
+
+    // "MM-DD HH:MM:SS.mmm" 对应的毫秒数，格式不对时返回 0
+    private long timeOf(byte[] bytes, int start) {
+        int second = twoDigits(bytes, start + 12);
+        int millis = twoDigits(bytes, start + 15) * 10 + digit(bytes[start + 17]);
+        if (second < 0 || millis < 0 || bytes[start + 14] != '.') {
+            return 0;
+        }
+        if (minuteMillis < 0 || !sameBytes(bytes, start, minuteKey)) {
+            int month = twoDigits(bytes, start);
+            int day = twoDigits(bytes, start + 3);
+            int hour = twoDigits(bytes, start + 6);
+            int minute = twoDigits(bytes, start + 9);
+            if (month < 1 || day < 1 || hour < 0 || minute < 0) {
+                return 0;
+            }
+            // logcat 不输出年份：取当前年份，跨年时超前当前时间的属于上一年
+            long now = System.currentTimeMillis();
+            calendar.setTimeInMillis(now);
+            calendar.set(calendar.get(Calendar.YEAR), month - 1, day, hour, minute, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            if (calendar.getTimeInMillis() > now + DAY_MS) {
+                calendar.add(Calendar.YEAR, -1);
+            }
+            System.arraycopy(bytes, start, minuteKey, 0, MINUTE_LENGTH);
+            minuteMillis = calendar.getTimeInMillis();
+        }
+        return minuteMillis + second * 1000L + millis;
+    }
+
+    private static boolean sameBytes(byte[] bytes, int start, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (bytes[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int twoDigits(byte[] bytes, int i) {
+        int high = digit(bytes[i]);
+        int low = digit(bytes[i + 1]);
+        return high < 0 || low < 0 ? -1 : high * 10 + low;
+    }
+
+    private static int digit(byte b) {
+        return b >= '0' && b <= '9' ? b - '0' : -1;
+    }
+
+    // 相同的 tag 复用同一个 String
+    private String tagOf(byte[] bytes, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (TAG_CACHE_SIZE - 1);
+        String cached = tagCache[slot];
+        if (cached != null && sameAscii(cached, bytes, start, end)) {
+            return cached;
+        }
+        String tag = new String(bytes, start, end - start, UTF_8);
+        tagCache[slot] = tag;
+        return tag;
+    }
+
+    private static boolean sameAscii(String text, byte[] bytes, int start, int end) {
+        if (text.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < 0 || text.charAt(i - start) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Level levelOf(byte b) {
+        switch (b) {
+            case 'V':
+                return Level.V;
+            case 'D':
+                return Level.D;
+            case 'I':
+                return Level.I;
+            case 'W':
+                return Level.W;
+            case 'E':
+                return Level.E;
+            case 'F':
+            case 'A':
+                return Level.F;
+            default:
+                return Level.UNKNOWN;
+        }
+    }
+
+    private static int skipSpaces(byte[] bytes, int i, int end) {
+        while (i < end && bytes[i] == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipToken(byte[] bytes, int i, int end) {
+        while (i < end && bytes[i] != ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private synchronized void closeInput() {
+        if (input != null) {
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+            input = null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.library.logtools;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * 启动读取某个 logcat 缓冲区的子进程，测试时可替换为输出固定文本的实现
+ */
+public interface LogcatLauncher {
+
+    /**
+     * 启动 "logcat -b buffer -v threadtime -T since" 并返回其标准输出，关闭返回的流时结束子进程
+     *
+     * @param since threadtime 格式的时间 "MM-DD HH:MM:SS.mmm"，只输出不早于该时间的日志
+     */
+    InputStream launch(BufferType buffer, String since) throws IOException;
+
+    /**
+     * 通过 ProcessBuilder 启动系统 logcat
+     */
+    LogcatLauncher DEFAULT = new LogcatLauncher() {
+        @Override
+        public InputStream launch(BufferType buffer, String since) throws IOException {
+            final Process process = new ProcessBuilder("logcat", "-b", buffer.name().toLowerCase(Locale.US),
+                    "-v", "threadtime", "-T", since)
+                    .redirectErrorStream(true)
+                    .start();
+            process.getOutputStream().close();
+            return new FilterInputStream(process.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        process.destroy();
+                    }
+                }
+            };
+        }
+    };
+}
@@ -0,0 +1,100 @@
+package com.library.logtools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 基于内存映射的分段写入器
+ * 打开时把文件预分配到分段上限并整体映射，编码好的字节直接复制进映射区，关闭时截断到实际长度
+ */
+class MappedSegmentAppender implements SegmentAppender {
+    private static final int SCAN_CHUNK = 8 * 1024;
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    MappedSegmentAppender(File file, long capacity) throws IOException {
+        long contentLength = recoverLength(file);
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        long mapSize = Math.min(Integer.MAX_VALUE, Math.max(capacity, contentLength));
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mapSize);
+        buffer.position((int) contentLength);
+    }
+
+    @Override
+    public boolean append(byte[] head, int headLength, byte[] body, int bodyOffset, int bodyLength, Level level) {
+        if (buffer.remaining() < headLength + bodyLength) {
+            // 由调用方滚动到新分段
+            return false;
+        }
+        buffer.put(head, 0, headLength);
+        buffer.put(body, bodyOffset, bodyLength);
+        return true;
+    }
+
+    @Override
+    public long commitIfDue(long nowNanos) {
+        // 写入映射区即进入页缓存，无需按延迟刷盘
+        return -1;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void sync() {
+        buffer.force();
+    }
+
+    @Override
+    public long length() {
+        return buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.truncate(buffer.position());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * 去掉预分配后未写入的尾部空字节，返回文件实际内容长度
+     * 用于进程异常退出后恢复映射分段，普通文本文件只需读取末尾一块
+     */
+    static long recoverLength(File file) throws IOException {
+        if (!file.isFile()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            long end = length;
+            byte[] chunk = new byte[SCAN_CHUNK];
+            scan:
+            while (end > 0) {
+                int size = (int) Math.min(SCAN_CHUNK, end);
+                raf.seek(end - size);
+                raf.readFully(chunk, 0, size);
+                for (int i = size - 1; i >= 0; i--) {
+                    if (chunk[i] != 0) {
+                        end = end - size + i + 1;
+                        break scan;
+                    }
+                }
+                end -= size;
+            }
+            if (end < length) {
+                raf.setLength(end);
+            }
+            return end;
+        }
+    }
+}
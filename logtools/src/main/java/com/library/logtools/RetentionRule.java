@@ -0,0 +1,160 @@
+package com.library.logtools;
+
+/**
+ * 一类日志文件的保留规则，不可变，修改时返回新对象
+ * <p>
+ * 按文件名前缀、分段最高级别和缓冲区类型匹配文件，级别与缓冲区类型来自写入时生成的分段摘要，
+ * 没有摘要的文件只能按前缀匹配；续写前没有摘要的分段（例如升级前写入的分段）摘要不完整，不按级别匹配。文件归入第一条匹配的规则，没有匹配的文件只受目录总量限制。
+ * 例如保留过滤日志 30 天：new RetentionRule("filter").withPrefix("filter_").withMinAgeDays(30).withMaxAgeDays(30)
+ */
+public final class RetentionRule {
+    private final String name;
+    private final String prefix;
+    private final Level minLevel;
+    private final Level maxLevel;
+    private final BufferType bufferType;
+    private final int minAgeDays;
+    private final int maxAgeDays;
+    private final double quotaRatio;
+
+    /**
+     * @param name 规则名，只用于日志输出；新规则匹配所有文件且没有任何限制
+     */
+    public RetentionRule(String name) {
+        this(name, null, null, null, null, 0, 0, 0);
+    }
+
+    private RetentionRule(String name, String prefix, Level minLevel, Level maxLevel, BufferType bufferType,
+                          int minAgeDays, int maxAgeDays, double quotaRatio) {
+        this.name = name;
+        this.prefix = prefix;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        this.bufferType = bufferType;
+        this.minAgeDays = minAgeDays;
+        this.maxAgeDays = maxAgeDays;
+        this.quotaRatio = quotaRatio;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public Level getMinLevel() {
+        return minLevel;
+    }
+
+    public Level getMaxLevel() {
+        return maxLevel;
+    }
+
+    public BufferType getBufferType() {
+        return bufferType;
+    }
+
+    /**
+     * 最短保存天数，未满的文件只在其它文件都删完仍超出上限时才删除，0 表示不保护
+     */
+    public int getMinAgeDays() {
+        return minAgeDays;
+    }
+
+    /**
+     * 最长保存天数，超过后无论目录是否超限都删除，0 表示不限制
+     */
+    public int getMaxAgeDays() {
+        return maxAgeDays;
+    }
+
+    /**
+     * 该类文件最多占用 maxFolderSize 的比例，超出时从最旧的开始删除，0 表示不限制
+     */
+    public double getQuotaRatio() {
+        return quotaRatio;
+    }
+
+    /**
+     * 只匹配以 prefix 开头的文件，例如 "filter_"
+     */
+    public RetentionRule withPrefix(String prefix) {
+        return new RetentionRule(name, prefix, minLevel, maxLevel, bufferType, minAgeDays, maxAgeDays, quotaRatio);
+    }
+
+    /**
+     * 只匹配含有不低于 level 的记录的分段，例如 Level.E 匹配含有 E/F 的分段
+     */
+    public RetentionRule withMinLevel(Level level) {
+        return new RetentionRule(name, prefix, level, maxLevel, bufferType, minAgeDays, maxAgeDays, quotaRatio);
+    }
+
+    /**
+     * 只匹配记录级别都不高于 level 的分段，例如 Level.V 匹配只有 V 级别记录的分段
+     */
+    public RetentionRule withMaxLevel(Level level) {
+        return new RetentionRule(name, prefix, minLevel, level, bufferType, minAgeDays, maxAgeDays, quotaRatio);
+    }
+
+    /**
+     * 只匹配含有该缓冲区类型记录的分段
+     */
+    public RetentionRule withBufferType(BufferType bufferType) {
+        return new RetentionRule(name, prefix, minLevel, maxLevel, bufferType, minAgeDays, maxAgeDays, quotaRatio);
+    }
+
+    public RetentionRule withMinAgeDays(int days) {
+        return new RetentionRule(name, prefix, minLevel, maxLevel, bufferType, Math.max(0, days), maxAgeDays, quotaRatio);
+    }
+
+    public RetentionRule withMaxAgeDays(int days) {
+        return new RetentionRule(name, prefix, minLevel, maxLevel, bufferType, minAgeDays, Math.max(0, days), quotaRatio);
+    }
+
+    public RetentionRule withQuotaRatio(double ratio) {
+        double quota = ratio > 0 && ratio < 1 ? ratio : 0;
+        return new RetentionRule(name, prefix, minLevel, maxLevel, bufferType, minAgeDays, maxAgeDays, quota);
+    }
+
+    // 是否需要读取分段摘要才能判断
+    boolean needsSummary() {
+        return minLevel != null || maxLevel != null || bufferType != null;
+    }
+
+    boolean matches(String fileName, SegmentSummary.Snapshot summary) {
+        if (prefix != null && !fileName.startsWith(prefix)) {
+            return false;
+        }
+        if (!needsSummary()) {
+            return true;
+        }
+        if (summary == null) {
+            return false;
+        }
+        // 不完整的摘要缺少续写前的记录，最高级别不可信
+        if (summary.partial && (minLevel != null || maxLevel != null)) {
+            return false;
+        }
+        if (minLevel != null && summary.maxLevel < minLevel.ordinal()) {
+            return false;
+        }
+        if (maxLevel != null && summary.maxLevel > maxLevel.ordinal()) {
+            return false;
+        }
+        return bufferType == null || summary.contains(bufferType);
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionRule{name=" + name
+                + ", prefix=" + prefix
+                + ", minLevel=" + minLevel
+                + ", maxLevel=" + maxLevel
+                + ", bufferType=" + bufferType
+                + ", minAgeDays=" + minAgeDays
+                + ", maxAgeDays=" + maxAgeDays
+                + ", quotaRatio=" + quotaRatio + "}";
+    }
+}
@@ -0,0 +1,168 @@
+package com.library.logtools;
+
+import java.util.regex.Pattern;
+
+/**
+ * 过滤规则编译后的谓词树节点，直接在原始记录字段上求值，不做任何格式化
+ */
+interface RulePredicate {
+
+    /**
+     * @param keywordHits 本条记录命中的关键字，按 {@link FilterRuleSet} 的关键字下标索引
+     */
+    boolean test(LogRecord record, boolean[] keywordHits);
+
+    final class And implements RulePredicate {
+        private final RulePredicate left;
+        private final RulePredicate right;
+
+        And(RulePredicate left, RulePredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean test(LogRecord record, boolean[] keywordHits) {
+            return left.test(record, keywordHits) && right.test(record, keywordHits);
+        }
+    }
+
+    final class Or implements RulePredicate {
+        private final RulePredicate left;
+        private final RulePredicate right;
+
+        Or(RulePredicate left, RulePredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean test(LogRecord record, boolean[] keywordHits) {
+            return left.test(record, keywordHits) || right.test(record, keywordHits);
+        }
+    }
+
+    final class Not implements RulePredicate {
+        private final RulePredicate inner;
+
+        Not(RulePredicate inner) {
+            this.inner = inner;
+        }
+
+        @Override
+        public boolean test(LogRecord record, boolean[] keywordHits) {
+            return !inner.test(record, keywordHits);
+        }
+    }
+
+    /**
+     * level 比较，按 V < D < I < W < E < F 的顺序
+     */
+    final class LevelCompare implements RulePredicate {
+        private final String operator;
+        private final int ordinal;
+
+        LevelCompare(String operator, Level level) {
+            this.operator = operator;
+            this.ordinal = level.ordinal();
+        }
+
+        @Override
+        public boolean test(LogRecord record, boolean[] keywordHits) {
+            if (record.level == null) {
+                return false;
+            }
+            int value = record.level.ordinal();
+            switch (operator) {
+                case "=":
+                    return value == ordinal;
+                case "!=":
+                    return value != ordinal;
+                case ">=":
+                    return value >= ordinal;
+                case "<=":
+                    return value <= ordinal;
+                case ">":
+                    return value > ordinal;
+                case "<":
+                    return value < ordinal;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    final class BufferIs implements RulePredicate {
+        private final BufferType bufferType;
+
+        BufferIs(BufferType bufferType) {
+            this.bufferType = bufferType;
+        }
+
+        @Override
+        public boolean test(LogRecord record, boolean[] keywordHits) {
+            return record.bufferType == bufferType;
+        }
+    }
+
+    final class TagEquals implements RulePredicate {
+        private final String tag;
+
+        TagEquals(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public boolean test(LogRecord record, boolean[] keywordHits) {
+            return tag.equals(record.tag);
+        }
+    }
+
+    final class PidEquals implements RulePredicate {
+        private final int pid;
+
+        PidEquals(int pid) {
+            this.pid = pid;
+        }
+
+        @Override
+        public boolean test(LogRecord record, boolean[] keywordHits) {
+            return record.pid == pid;
+        }
+    }
+
+    /**
+     * tag~"正则" 或 msg~"正则"
+     */
+    final class RegexFind implements RulePredicate {
+        private final boolean onTag;
+        private final Pattern pattern;
+
+        RegexFind(boolean onTag, Pattern pattern) {
+            this.onTag = onTag;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean test(LogRecord record, boolean[] keywordHits) {
+            String value = onTag ? record.tag : record.message;
+            return value != null && pattern.matcher(value).find();
+        }
+    }
+
+    /**
+     * 消息包含关键字，由规则集统一的 Aho–Corasick 扫描预先计算
+     */
+    final class KeywordHit implements RulePredicate {
+        private final int index;
+
+        KeywordHit(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean test(LogRecord record, boolean[] keywordHits) {
+            return keywordHits[index];
+        }
+    }
+}
@@ -4,6 +4,19 @@ import android.content.Context;
 import android.content.SharedPreferences;
 public class SPUtils {
     private static final String NAME = "config";
+    private static volatile SharedPreferences preferences;
+
+    /**
+     * 获取并缓存 SharedPreferences 实例
+     */
+    static SharedPreferences getPreferences() {
+        SharedPreferences sp = preferences;
+        if (sp == null) {
+            sp = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+            preferences = sp;
+        }
+        return sp;
+    }
 
     /**
      * 存储String类型的值
@@ -12,7 +25,7 @@ public class SPUtils {
      * @param value 要存储的String值
      */
     public static void putString(String key, String value) {
-        SharedPreferences sharedPreferences = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getPreferences();
         sharedPreferences.edit().putString(key, value).commit();
     }
 
@@ -24,7 +37,7 @@ public class SPUtils {
      * @return
      */
     public static String getString(String key, String defValue) {
-        SharedPreferences sharedPreferences = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getPreferences();
         return sharedPreferences.getString(key, defValue);
     }
 
@@ -36,7 +49,7 @@ public class SPUtils {
      * @param value 要存储的Int值
      */
     public static void putInt(String key, int value) {
-        SharedPreferences sharedPreferences = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getPreferences();
         sharedPreferences.edit().putInt(key, value).commit();
     }
 
@@ -48,7 +61,7 @@ public class SPUtils {
      * @return
      */
     public static int getInt(String key, int defValue) {
-        SharedPreferences sharedPreferences = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getPreferences();
         return sharedPreferences.getInt(key, defValue);
     }
 
@@ -59,7 +72,7 @@ public class SPUtils {
      * @param value 要存储的long值
      */
     public static void putLong(String key, long value) {
-        SharedPreferences sharedPreferences = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getPreferences();
         sharedPreferences.edit().putLong(key, value).commit();
     }
 
@@ -72,7 +85,7 @@ public class SPUtils {
      * @return
      */
     public static long getLong(String key, long defValue) {
-        SharedPreferences sharedPreferences = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getPreferences();
         return sharedPreferences.getLong(key, defValue);
     }
 
@@ -84,7 +97,7 @@ public class SPUtils {
      * @param value 要存储Boolean值
      */
     public static void putBoolean(String key, boolean value) {
-        SharedPreferences sharedPreferences = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getPreferences();
         sharedPreferences.edit().putBoolean(key, value).commit();
     }
 
@@ -96,7 +109,7 @@ public class SPUtils {
      * @return
      */
     public static boolean getBoolean(String key, Boolean defValue) {
-        SharedPreferences sharedPreferences = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getPreferences();
         return sharedPreferences.getBoolean(key, defValue);
     }
 
@@ -106,7 +119,7 @@ public class SPUtils {
      * @param key key值
      */
     public static void deleShare(String key) {
-        SharedPreferences sharedPreferences = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getPreferences();
         sharedPreferences.edit().remove(key).commit();
     }
 
@@ -114,7 +127,7 @@ public class SPUtils {
      * 删除全部 key
      */
     public static void deleAll() {
-        SharedPreferences sharedPreferences = FaceLogTools.getmContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getPreferences();
         sharedPreferences.edit().clear().commit();
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.library.logtools;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进行中的异步搜索
+ */
+public final class SearchHandle {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile boolean cancelled;
+
+    SearchHandle() {
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * 等待搜索结束，超时返回 false
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    void finish() {
+        done.countDown();
+    }
+}
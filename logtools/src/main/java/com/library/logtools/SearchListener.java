@@ -0,0 +1,14 @@
+package com.library.logtools;
+
+/**
+ * 异步搜索的结果回调，在搜索线程中依次调用（不会并发），实现中不应长时间阻塞
+ */
+public interface SearchListener {
+
+    void onMatch(SearchMatch match);
+
+    /**
+     * 搜索结束、达到结果上限或被取消后调用一次
+     */
+    void onComplete(int matchCount, boolean cancelled);
+}
@@ -0,0 +1,47 @@
+package com.library.logtools;
+
+import java.io.File;
+
+/**
+ * 一条搜索结果
+ */
+public final class SearchMatch {
+    private final File file;
+    private final int lineNumber;
+    private final long offset;
+    private final String line;
+
+    SearchMatch(File file, int lineNumber, long offset, String line) {
+        this.file = file;
+        this.lineNumber = lineNumber;
+        this.offset = offset;
+        this.line = line;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 所在记录的行号，无法确定时为 -1
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * 匹配行在分段文本中的字节偏移；压缩或二进制分段为解码后文本中的偏移
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + ":" + lineNumber + "@" + offset + " " + line;
+    }
+}
@@ -0,0 +1,36 @@
+package com.library.logtools;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 日志分段文件的写入后端，只在写日志线程中使用
+ */
+interface SegmentAppender extends Closeable {
+
+    /**
+     * 追加一行：head 的前 headLength 个字节加上 body 中的一段（已包含换行符）
+     *
+     * @return false 表示分段已写满，需要滚动到新分段后重试
+     */
+    boolean append(byte[] head, int headLength, byte[] body, int bodyOffset, int bodyLength, Level level) throws IOException;
+
+    /**
+     * 超过最大延迟时刷盘
+     *
+     * @return 距离下次需要刷盘的纳秒数，没有待刷盘数据时返回 -1
+     */
+    long commitIfDue(long nowNanos) throws IOException;
+
+    void flush() throws IOException;
+
+    /**
+     * 刷盘并等待数据落到存储设备
+     */
+    void sync() throws IOException;
+
+    /**
+     * 分段中已写入的字节数（含尚未刷盘的部分）
+     */
+    long length();
+}
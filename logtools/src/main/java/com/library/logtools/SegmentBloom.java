@@ -0,0 +1,202 @@
+package com.library.logtools;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 分段的 Bloom 过滤器，记录消息中出现过的单词，分段关闭时写入 "分段名.bloom"
+ * <p>
+ * 单词为连续的 ASCII 字母数字（忽略大小写），长度小于 {@link #MIN_TOKEN_LENGTH} 的不记录。
+ * 续写已有内容的分段时前面的内容没有经过分词，该分段不生成过滤器，搜索时总是扫描。
+ * 文件为 MAGIC、int 位数、long[] 位图；查询只读取需要的几个 long，不整体加载。
+ */
+final class SegmentBloom implements SegmentRotator.Listener {
+    private static final String TAG = "SegmentBloom";
+    static final String EXTENSION = ".bloom";
+    static final int MIN_TOKEN_LENGTH = 3;
+    private static final int HASH_COUNT = 4;
+    private static final int HEADER_SIZE = 8;
+    private static final byte[] MAGIC = {'F', 'L', 'B', 'F'};
+    private static final int MIN_BITS = 1 << 16;
+    private static final int MAX_BITS = 1 << 22;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long[] bits;
+    private boolean complete;
+
+    static File sidecarOf(File segment) {
+        return SegmentRotator.sidecarOf(segment, EXTENSION);
+    }
+
+    @Override
+    public void onSegmentOpened(File segment, boolean resumed) {
+        File sidecar = sidecarOf(segment);
+        long oldLength = sidecar.length();
+        if (sidecar.exists() && sidecar.delete()) {
+            // 继续写入后旧的过滤器不再完整
+            SizeLedger.record(sidecar, -oldLength, 0);
+        }
+        complete = !resumed;
+        if (complete) {
+            bits = new long[bitCountFor(FaceLogTools.getMaxFileSize()) / 64];
+        }
+    }
+
+    @Override
+    public void onSegmentClosed(File segment) {
+        if (!complete || bits == null) {
+            return;
+        }
+        File sidecar = sidecarOf(segment);
+        File temp = new File(sidecar.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.write(MAGIC);
+            out.writeInt(bits.length * 64);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "seal failed: " + sidecar + ", " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        if (temp.renameTo(sidecar)) {
+            SizeLedger.record(sidecar, sidecar.length(), 0);
+        } else {
+            temp.delete();
+        }
+        complete = false;
+    }
+
+    /**
+     * 记录 bytes[offset, offset + length) 中的单词，只在写日志线程调用
+     */
+    void add(byte[] bytes, int offset, int length) {
+        if (!complete) {
+            return;
+        }
+        long[] target = bits;
+        int mask = target.length * 64 - 1;
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            while (i < end && !isTokenByte(bytes[i])) {
+                i++;
+            }
+            int start = i;
+            long hash = FNV_OFFSET;
+            while (i < end && isTokenByte(bytes[i])) {
+                hash = (hash ^ lower(bytes[i])) * FNV_PRIME;
+                i++;
+            }
+            if (i - start >= MIN_TOKEN_LENGTH) {
+                int h1 = (int) hash;
+                int h2 = (int) (hash >>> 32) | 1;
+                for (int k = 0; k < HASH_COUNT; k++) {
+                    int bit = (h1 + k * h2) & mask;
+                    target[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+    }
+
+    /**
+     * 分段可能包含全部 tokens 时返回 true；没有过滤器或过滤器无法读取时也返回 true
+     */
+    static boolean mightContain(File segment, long[] tokenHashes) {
+        File sidecar = sidecarOf(segment);
+        if (tokenHashes.length == 0 || !sidecar.isFile()) {
+            return true;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(sidecar, "r")) {
+            for (byte b : MAGIC) {
+                if (file.readByte() != b) {
+                    return true;
+                }
+            }
+            int bitCount = file.readInt();
+            if (bitCount <= 0 || Integer.bitCount(bitCount) != 1) {
+                return true;
+            }
+            int mask = bitCount - 1;
+            for (long hash : tokenHashes) {
+                int h1 = (int) hash;
+                int h2 = (int) (hash >>> 32) | 1;
+                for (int k = 0; k < HASH_COUNT; k++) {
+                    int bit = (h1 + k * h2) & mask;
+                    file.seek(HEADER_SIZE + (long) (bit >>> 6) * 8);
+                    if ((file.readLong() & (1L << bit)) == 0) {
+                        return false;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return true;
+        }
+        return true;
+    }
+
+    /**
+     * 按写入时相同的规则对查询词分词并计算哈希，过短的单词不参与过滤
+     */
+    static long[] hashTokens(String term) {
+        return hashTokens(term, true);
+    }
+
+    /**
+     * 同 {@link #hashTokens(String)}；wholeWord 为 false 时按子串查找，
+     * 紧贴 term 首尾的单词在日志中可能只是更长单词的一部分，不参与过滤
+     */
+    static long[] hashTokens(String term, boolean wholeWord) {
+        long[] hashes = new long[term.length()];
+        int count = 0;
+        int i = 0;
+        int end = term.length();
+        while (i < end) {
+            while (i < end && !isTokenChar(term.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            long hash = FNV_OFFSET;
+            while (i < end && isTokenChar(term.charAt(i))) {
+                hash = (hash ^ lower((byte) term.charAt(i))) * FNV_PRIME;
+                i++;
+            }
+            boolean partial = !wholeWord && (start == 0 || i == end);
+            if (i - start >= MIN_TOKEN_LENGTH && !partial) {
+                hashes[count++] = hash;
+            }
+        }
+        long[] result = new long[count];
+        System.arraycopy(hashes, 0, result, 0, count);
+        return result;
+    }
+
+    static boolean isTokenChar(char c) {
+        return c < 0x80 && isTokenByte((byte) c);
+    }
+
+    private static boolean isTokenByte(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static int lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    // 按最大文件大小估算位图大小：约每 8 字节日志 1 位，取 2 的幂
+    private static int bitCountFor(long maxFileSize) {
+        int bits = MIN_BITS;
+        while (bits < MAX_BITS && bits < maxFileSize / 8) {
+            bits <<= 1;
+        }
+        return bits;
+    }
+}
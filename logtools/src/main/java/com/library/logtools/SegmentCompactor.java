@@ -0,0 +1,153 @@
+package com.library.logtools;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 已关闭分段的后台 GZIP 压缩
+ * <p>
+ * 每当分段序列打开新分段时，扫描同目录下除当前分段外尚未压缩的分段，逐个流式压缩为 "原文件名.gz"，
+ * 完成后保留原文件的修改时间并删除原文件。压缩在单个低优先级线程中进行，内存占用固定为两个缓冲区。
+ */
+final class SegmentCompactor implements SegmentRotator.Listener {
+    private static final String TAG = "SegmentCompactor";
+    static final String EXTENSION = ".gz";
+    private static final String TEMP_EXTENSION = ".gz.tmp";
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static volatile boolean enabled = true;
+
+    private static final ExecutorService executor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    });
+                    t.setName("FaceLogTools-Compactor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private final SegmentRotator rotator;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private SegmentCompactor(SegmentRotator rotator) {
+        this.rotator = rotator;
+    }
+
+    /**
+     * 为分段序列注册后台压缩
+     */
+    static void attach(SegmentRotator rotator) {
+        rotator.addListener(new SegmentCompactor(rotator));
+    }
+
+    static void setEnabled(boolean enabled) {
+        SegmentCompactor.enabled = enabled;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 打开分段用于读取，压缩分段自动解压
+     */
+    static InputStream open(File segment) throws IOException {
+        InputStream in = new FileInputStream(segment);
+        if (SegmentRotator.isCompressed(segment)) {
+            in = new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return new BufferedInputStream(in, BUFFER_SIZE);
+    }
+
+    @Override
+    public void onSegmentOpened(File segment, boolean resumed) {
+        if (!enabled) {
+            return;
+        }
+        final File directory = segment.getParentFile();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sweep(directory);
+            }
+        });
+    }
+
+    @Override
+    public void onSegmentClosed(File segment) {
+    }
+
+    private void sweep(File directory) {
+        File[] files = directory == null ? null : directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_EXTENSION)) {
+                // 上次压缩中断留下的临时文件
+                file.delete();
+            } else if (enabled && rotator.isSegmentName(name) && !SegmentRotator.isCompressed(file)
+                    && !file.equals(rotator.getCurrentFile())) {
+                compress(file);
+            }
+        }
+    }
+
+    private void compress(File segment) {
+        long length = segment.length();
+        long lastModified = segment.lastModified();
+        File temp = new File(segment.getPath() + TEMP_EXTENSION);
+        File target = new File(segment.getPath() + EXTENSION);
+        try (InputStream in = new FileInputStream(segment);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(temp), BUFFER_SIZE)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "compress failed: " + segment + ", " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        synchronized (rotator) {
+            // 压缩期间分段被重新打开或改写时放弃本次结果
+            if (segment.equals(rotator.getCurrentFile()) || segment.length() != length
+                    || segment.lastModified() != lastModified) {
+                temp.delete();
+                return;
+            }
+            temp.setLastModified(lastModified);
+            if (!temp.renameTo(target)) {
+                Log.w(TAG, "rename failed: " + temp);
+                temp.delete();
+                return;
+            }
+            SizeLedger.record(target, target.length(), 1);
+            if (segment.delete()) {
+                SizeLedger.record(segment, -length, -1);
+            } else {
+                Log.w(TAG, "delete failed: " + segment);
+            }
+        }
+    }
+}
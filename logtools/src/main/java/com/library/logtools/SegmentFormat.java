@@ -0,0 +1,21 @@
+package com.library.logtools;
+
+/**
+ * 主日志分段的存储格式，通过 {@link FaceLogTools#setSegmentFormat(SegmentFormat)} 在 initialize 之前选择
+ */
+public enum SegmentFormat {
+    /**
+     * 每行 "&lt;n&gt; [pid] [buffer] [level] [time] [tag] message" 文本（默认）
+     */
+    TEXT(".txt"),
+    /**
+     * 紧凑二进制格式，见 {@link BinarySegmentEncoder}，可通过 {@link LogExporter} 转换回文本
+     */
+    BINARY(".blog");
+
+    final String extension;
+
+    SegmentFormat(String extension) {
+        this.extension = extension;
+    }
+}
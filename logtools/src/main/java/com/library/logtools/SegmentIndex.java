@@ -0,0 +1,184 @@
+package com.library.logtools;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * 文本分段的稀疏索引，与分段同目录的 "分段名.idx"（压缩后分段名不含 .gz）
+ * <p>
+ * 文件为 MAGIC 加若干 20 字节条目 (int 行号, long 时间, long 字节偏移)，
+ * 每个分段的第一条记录、之后每 {@link #RECORD_INTERVAL} 条或每 {@link #BYTE_INTERVAL} 字节写一个条目。
+ * 尾部采样写出的记录保留原时间，早于之前的记录；这类记录的第一条处写两个条目，先是此前的最大时间，再是它自己的时间，
+ * 读取时由时间的回退判断之后可能还有较早的记录。
+ * 写入在写日志线程中进行，通过 {@link SegmentRotator.Listener} 跟随分段切换。
+ */
+final class SegmentIndex implements SegmentRotator.Listener {
+    private static final String TAG = "SegmentIndex";
+    static final String EXTENSION = ".idx";
+    static final int ENTRY_SIZE = 20;
+    private static final byte[] MAGIC = {'F', 'L', 'I', '1'};
+    private static final int RECORD_INTERVAL = 256;
+    private static final long BYTE_INTERVAL = 64 * 1024;
+
+    private final byte[] entry = new byte[ENTRY_SIZE];
+    private FileOutputStream out;
+    private SizeLedger ledger;
+    private int recordsSinceEntry;
+    private long lastEntryOffset;
+    // 已写入记录的最大时间，以及当前是否处于早于该时间的一段记录中
+    private long maxTime;
+    private boolean late;
+
+    static File sidecarOf(File segment) {
+        return SegmentRotator.sidecarOf(segment, EXTENSION);
+    }
+
+    @Override
+    public void onSegmentOpened(File segment, boolean resumed) {
+        close();
+        File sidecar = sidecarOf(segment);
+        try {
+            boolean fresh = !resumed || sidecar.length() < MAGIC.length;
+            long oldLength = sidecar.length();
+            out = new FileOutputStream(sidecar, !fresh);
+            ledger = SizeLedger.of(sidecar);
+            if (fresh) {
+                out.write(MAGIC);
+                if (ledger != null) {
+                    ledger.add(MAGIC.length - oldLength, 0);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "open failed: " + sidecar + ", " + e.getMessage());
+            out = null;
+        }
+        // 续写已有分段时下一条记录立即建立条目
+        recordsSinceEntry = RECORD_INTERVAL;
+        lastEntryOffset = 0;
+        maxTime = Long.MIN_VALUE;
+        late = false;
+        if (resumed) {
+            // 条目是稀疏的，最后一个条目之后的记录需要从分段中读取
+            long[] entries = read(segment);
+            long lastOffset = 0;
+            for (int i = 0; i < entries.length; i += 3) {
+                maxTime = Math.max(maxTime, entries[i + 1]);
+                lastOffset = entries[i + 2];
+            }
+            try {
+                maxTime = Math.max(maxTime, SegmentReader.latestTime(segment, lastOffset));
+            } catch (IOException e) {
+                Log.w(TAG, "resume scan failed: " + segment + ", " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void onSegmentClosed(File segment) {
+        close();
+    }
+
+    /**
+     * 一条记录已从 offset 处写入分段
+     */
+    void onAppended(int lineNumber, long timeMillis, long offset) {
+        if (out == null) {
+            return;
+        }
+        boolean startsLate = false;
+        if (timeMillis < maxTime) {
+            startsLate = !late;
+            late = true;
+        } else {
+            late = false;
+            maxTime = timeMillis;
+        }
+        if (startsLate) {
+            // 此前的记录都不晚于 maxTime，之后的记录可能早于它
+            if (!writeEntry(lineNumber, maxTime, offset) || !writeEntry(lineNumber, timeMillis, offset)) {
+                return;
+            }
+        } else if (recordsSinceEntry < RECORD_INTERVAL && offset - lastEntryOffset < BYTE_INTERVAL) {
+            recordsSinceEntry++;
+            return;
+        } else if (!writeEntry(lineNumber, timeMillis, offset)) {
+            return;
+        }
+        recordsSinceEntry = 1;
+        lastEntryOffset = offset;
+    }
+
+    private boolean writeEntry(int lineNumber, long timeMillis, long offset) {
+        putInt(entry, 0, lineNumber);
+        putLong(entry, 4, timeMillis);
+        putLong(entry, 12, offset);
+        try {
+            out.write(entry);
+        } catch (IOException e) {
+            Log.w(TAG, "write failed: " + e.getMessage());
+            close();
+            return false;
+        }
+        if (ledger != null) {
+            ledger.add(ENTRY_SIZE, 0);
+        }
+        return true;
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * 读取分段的全部索引条目，按 [行号, 时间, 偏移] 顺序存放在 long 数组中；没有索引时返回空数组
+     */
+    static long[] read(File segment) {
+        File sidecar = sidecarOf(segment);
+        int count = (int) ((sidecar.length() - MAGIC.length) / ENTRY_SIZE);
+        if (count <= 0) {
+            return new long[0];
+        }
+        long[] entries = new long[count * 3];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+            for (byte b : MAGIC) {
+                if (in.readByte() != b) {
+                    return new long[0];
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                entries[i * 3] = in.readInt();
+                entries[i * 3 + 1] = in.readLong();
+                entries[i * 3 + 2] = in.readLong();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "read failed: " + sidecar + ", " + e.getMessage());
+            return new long[0];
+        }
+        return entries;
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    private static void putLong(byte[] target, int offset, long value) {
+        putInt(target, offset, (int) (value >>> 32));
+        putInt(target, offset + 4, (int) value);
+    }
+}
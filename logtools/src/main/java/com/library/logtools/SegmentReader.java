@@ -0,0 +1,219 @@
+package com.library.logtools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按行号或时间读取日志分段
+ * <p>
+ * 文本分段通过 {@link SegmentIndex} 直接跳到最近的索引点，只读取目标范围附近的数据；
+ * 没有索引的分段（二进制分段、旧版本写入的分段）从头读取。.gz 分段边读边解压，跳过的部分不做行解析。
+ * 一条记录的消息包含换行时，后续行随该记录一起返回。
+ */
+public final class SegmentReader {
+    private static final int LINE = 0;
+    private static final int TIME = 1;
+    private static final int OFFSET = 2;
+
+    private SegmentReader() {
+    }
+
+    /**
+     * 读取行号从 fromLine 开始的 count 条记录
+     */
+    public static List<String> readLines(File segment, int fromLine, int count) throws IOException {
+        List<String> result = new ArrayList<>();
+        if (count <= 0) {
+            return result;
+        }
+        long lastLine = (long) fromLine + count - 1;
+        long[] entries = SegmentIndex.read(segment);
+        long start = 0;
+        long end = Long.MAX_VALUE;
+        for (int i = 0; i < entries.length; i += 3) {
+            if (entries[i + LINE] <= fromLine) {
+                start = entries[i + OFFSET];
+            } else if (entries[i + LINE] > lastLine) {
+                end = entries[i + OFFSET];
+                break;
+            }
+        }
+        try (BufferedReader reader = open(segment, start)) {
+            // 按字符数估算位置，多字节字符只会让读取略多于 end，结果仍按行号过滤
+            long position = start;
+            boolean include = false;
+            String line;
+            while (position < end && (line = reader.readLine()) != null) {
+                position += line.length() + 1;
+                int number = lineNumberOf(line);
+                if (number >= 0) {
+                    if (number > lastLine) {
+                        break;
+                    }
+                    include = number >= fromLine;
+                }
+                if (include) {
+                    result.add(line);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读取时间在 [fromMillis, toMillis] 之间的记录
+     */
+    public static List<String> readTimeRange(File segment, long fromMillis, long toMillis) throws IOException {
+        List<String> result = new ArrayList<>();
+        readTimeRange(segment, fromMillis, toMillis, result);
+        return result;
+    }
+
+    /**
+     * 依次读取多个分段中时间在 [fromMillis, toMillis] 之间的记录，
+     * 按索引的最早时间与文件修改时间跳过不相交的分段
+     */
+    public static List<String> readTimeRange(List<File> segments, long fromMillis, long toMillis) throws IOException {
+        List<String> result = new ArrayList<>();
+        for (File segment : segments) {
+            if (segment.lastModified() < fromMillis) {
+                continue;
+            }
+            if (earliestTime(SegmentIndex.read(segment)) > toMillis) {
+                continue;
+            }
+            readTimeRange(segment, fromMillis, toMillis, result);
+        }
+        return result;
+    }
+
+    private static void readTimeRange(File segment, long fromMillis, long toMillis, List<String> result) throws IOException {
+        if (fromMillis > toMillis) {
+            return;
+        }
+        long[] entries = SegmentIndex.read(segment);
+        long start = 0;
+        long end = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (int i = 0; i < entries.length; i += 3) {
+            long time = entries[i + TIME];
+            if (time < maxTime) {
+                // 尾部采样写出的较早记录，之后仍可能有范围内的记录，之前找到的终点不再可用
+                end = Long.MAX_VALUE;
+            } else {
+                maxTime = time;
+            }
+            // 起点之前的记录都不晚于到此为止的最大时间；同一毫秒可能跨越索引点，取严格早于 fromMillis 的条目
+            if (maxTime < fromMillis) {
+                start = entries[i + OFFSET];
+            } else if (time > toMillis && end == Long.MAX_VALUE) {
+                end = entries[i + OFFSET];
+            }
+        }
+        // 时间戳文本按字典序即按时间排序，直接比较字符串
+        LogClock clock = new LogClock();
+        String from = timestamp(clock, fromMillis);
+        String to = timestamp(clock, toMillis);
+        try (BufferedReader reader = open(segment, start)) {
+            long position = start;
+            boolean include = false;
+            String line;
+            while (position < end && (line = reader.readLine()) != null) {
+                position += line.length() + 1;
+                String time = timestampOf(line);
+                if (time != null) {
+                    include = time.compareTo(from) >= 0 && time.compareTo(to) <= 0;
+                }
+                if (include) {
+                    result.add(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * 从 offset 开始到分段结尾的记录中最晚的时间，没有记录时返回 Long.MIN_VALUE
+     */
+    static long latestTime(File segment, long offset) throws IOException {
+        String latest = null;
+        try (BufferedReader reader = open(segment, offset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String time = timestampOf(line);
+                if (time != null && (latest == null || time.compareTo(latest) > 0)) {
+                    latest = time;
+                }
+            }
+        }
+        return LogClock.parseTimestamp(latest);
+    }
+
+    // 索引中的最早时间，尾部采样写出的记录可能早于分段的第一条记录；没有索引时返回 Long.MIN_VALUE
+    private static long earliestTime(long[] entries) {
+        if (entries.length == 0) {
+            return Long.MIN_VALUE;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (int i = TIME; i < entries.length; i += 3) {
+            earliest = Math.min(earliest, entries[i]);
+        }
+        return earliest;
+    }
+
+    private static BufferedReader open(File segment, long offset) throws IOException {
+        InputStream in = LogExporter.openText(segment);
+        long remaining = offset;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    break;
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        return new BufferedReader(new InputStreamReader(in, "UTF-8"), 16 * 1024);
+    }
+
+    private static String timestamp(LogClock clock, long millis) {
+        StringBuilder builder = new StringBuilder(LogClock.TIMESTAMP_LENGTH);
+        clock.appendTimestamp(builder, millis);
+        return builder.toString();
+    }
+
+    // 解析行首 "<n>"，不是记录首行时返回 -1
+    static int lineNumberOf(String line) {
+        if (line.length() < 3 || line.charAt(0) != '<') {
+            return -1;
+        }
+        int value = 0;
+        int i = 1;
+        while (i < line.length() && line.charAt(i) >= '0' && line.charAt(i) <= '9' && value < Integer.MAX_VALUE / 10) {
+            value = value * 10 + (line.charAt(i) - '0');
+            i++;
+        }
+        return i > 1 && i < line.length() && line.charAt(i) == '>' ? value : -1;
+    }
+
+    // 取 "<n> [pid] [buffer] [level] [time] ..." 中的 time，不是记录首行时返回 null
+    static String timestampOf(String line) {
+        if (lineNumberOf(line) < 0) {
+            return null;
+        }
+        int index = line.indexOf("> ");
+        for (int i = 0; i < 3 && index >= 0; i++) {
+            index = line.indexOf("] ", index + 2);
+        }
+        int start = index + 3;
+        if (index < 0 || start + LogClock.TIMESTAMP_LENGTH > line.length() || line.charAt(start - 1) != '[') {
+            return null;
+        }
+        return line.substring(start, start + LogClock.TIMESTAMP_LENGTH);
+    }
+}
@@ -0,0 +1,352 @@
+package com.library.logtools;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.FileObserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * 按 "前缀yyyyMMdd_N扩展名" 命名的分段滚动管理，主日志与过滤日志共用
+ * 已写字节数在内存中累计，日期边界按毫秒比较，当前文件被外部删除由 FileObserver 异步通知，
+ * 写入路径上不再有 length()/exists() 等文件状态查询
+ */
+class SegmentRotator {
+
+    interface Listener {
+        /**
+         * @param resumed 为 true 表示续写已有内容的分段，为 false 表示新分段
+         */
+        void onSegmentOpened(File segment, boolean resumed);
+
+        /**
+         * 分段已关闭并截断到实际长度
+         */
+        void onSegmentClosed(File segment);
+    }
+
+    private final String prefix;
+    private final String extension;
+    // 只匹配本前缀的分段，"filter_" 不会匹配到 "filter_分组_" 的文件
+    private final Pattern segmentName;
+    // 所有分段序列当前打开的分段（绝对路径），清理时跳过
+    private static final Set<String> activePaths =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // 每个分段的级别与缓冲区类型摘要，供清理策略使用
+    private final SegmentSummary summary = new SegmentSummary();
+    private File directory;
+    private volatile long maxFileSize;
+    // 为 false 时每次打开都新建分段，用于带分段内状态的二进制格式
+    private volatile boolean reuseLastSegment = true;
+    private File currentFile;
+    private SegmentAppender appender;
+    private LogClock.Day segmentDay;
+    private volatile boolean segmentDeleted;
+    private FileObserver observer;
+    // 当前分段所在受管理目录的台账，以及已计入台账的磁盘长度
+    private SizeLedger ledger;
+    private long accountedLength;
+
+    SegmentRotator(String prefix, String extension) {
+        this.prefix = prefix;
+        this.extension = extension;
+        this.segmentName = segmentPattern(prefix, extension);
+        listeners.add(summary);
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    void setReuseLastSegment(boolean reuseLastSegment) {
+        this.reuseLastSegment = reuseLastSegment;
+    }
+
+    /**
+     * 切换分段目录并续写该目录下当天最后一个分段
+     */
+    synchronized void setDirectory(File directory) {
+        this.directory = directory;
+        open(false);
+    }
+
+    synchronized File getDirectory() {
+        return directory;
+    }
+
+    synchronized File getCurrentFile() {
+        return currentFile;
+    }
+
+    /**
+     * 分段文件名 prefix + yyyyMMdd_N + extension，包含已压缩的分段
+     */
+    static Pattern segmentPattern(String prefix, String extension) {
+        return Pattern.compile(Pattern.quote(prefix) + "\\d{8}_\\d+" + Pattern.quote(extension)
+                + "(" + Pattern.quote(SegmentCompactor.EXTENSION) + ")?");
+    }
+
+    /**
+     * 是否为本分段序列的文件名，包含已压缩的分段
+     */
+    boolean isSegmentName(String name) {
+        return segmentName.matcher(name).matches();
+    }
+
+    /**
+     * file 是否为某个分段序列当前打开（正在写入或映射）的分段
+     */
+    static boolean isActive(File file) {
+        return !activePaths.isEmpty() && activePaths.contains(file.getAbsolutePath());
+    }
+
+    static boolean isCompressed(File file) {
+        return file.getName().endsWith(SegmentCompactor.EXTENSION);
+    }
+
+    /**
+     * 写入前检查日期、大小以及文件是否被删除，需要时滚动
+     */
+    synchronized void ensureWritable(long nowMillis) {
+        if (appender == null || segmentDeleted || !segmentDay.contains(nowMillis)) {
+            open(false);
+        } else if (appender.length() >= maxFileSize) {
+            open(true);
+        }
+    }
+
+    /**
+     * @return false 表示分段已写满，需要 {@link #rotate()} 后重试
+     */
+    synchronized boolean append(byte[] head, int headLength, byte[] body, int bodyOffset, int bodyLength,
+                                Level level, BufferType bufferType) throws IOException {
+        if (appender == null) {
+            throw new IOException("no writable segment for " + prefix);
+        }
+        if (!appender.append(head, headLength, body, bodyOffset, bodyLength, level)) {
+            return false;
+        }
+        // 映射分段已按容量预分配，写入不改变磁盘长度
+        long length = appender.length();
+        if (length > accountedLength) {
+            if (ledger != null) {
+                ledger.add(length - accountedLength, 0);
+            }
+            accountedLength = length;
+        }
+        summary.onAppended(level, bufferType);
+        return true;
+    }
+
+    /**
+     * 当前分段已写入的字节数，即下一条记录的起始偏移
+     */
+    synchronized long length() {
+        return appender == null ? 0 : appender.length();
+    }
+
+    /**
+     * 关闭当前分段并新建下一个序号的分段
+     */
+    synchronized void rotate() {
+        open(true);
+    }
+
+    /**
+     * 重新打开当天最后一个分段，用于文件句柄失效后的恢复
+     */
+    synchronized void resume() {
+        open(false);
+    }
+
+    synchronized long commitIfDue(long nowNanos) throws IOException {
+        return appender == null ? -1 : appender.commitIfDue(nowNanos);
+    }
+
+    synchronized void flush() throws IOException {
+        if (appender != null) {
+            appender.flush();
+        }
+    }
+
+    synchronized void sync() throws IOException {
+        if (appender != null) {
+            appender.sync();
+        }
+    }
+
+    synchronized void close() {
+        closeCurrent();
+    }
+
+    private void open(boolean forceNew) {
+        closeCurrent();
+        if (directory == null) {
+            return;
+        }
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        segmentDay = LogClock.dayOf(System.currentTimeMillis());
+        final String dayPrefix = prefix + segmentDay.stamp + "_";
+
+        // 获取当天序号最大的分段，已压缩的分段只占用序号，不再续写
+        File lastFile = null;
+        int lastIndex = 0;
+        File[] existingFiles = directory.listFiles((dir, name) -> name.startsWith(dayPrefix) && isSegmentName(name));
+        if (existingFiles != null) {
+            for (File file : existingFiles) {
+                int index = getFileIndexFromName(file.getName());
+                if (index > lastIndex) {
+                    lastIndex = index;
+                    lastFile = isCompressed(file) ? null : file;
+                } else if (index == lastIndex && !isCompressed(file)) {
+                    lastFile = file;
+                }
+            }
+        }
+        if (lastFile != null && reuseLastSegment) {
+            // 去掉映射分段异常退出后残留的预分配空间
+            long before = lastFile.length();
+            recoverLength(lastFile);
+            SizeLedger.record(lastFile, lastFile.length() - before, 0);
+        }
+        boolean resumed = false;
+        if (lastFile != null && !forceNew && reuseLastSegment && lastFile.length() < maxFileSize) {
+            currentFile = lastFile;
+            resumed = lastFile.length() > 0;
+        } else {
+            currentFile = new File(directory, dayPrefix + (lastIndex + 1) + extension);
+        }
+
+        boolean existed = currentFile.exists();
+        long lengthBeforeOpen = currentFile.length();
+        // 先登记再打开，清理线程不会删除正在打开的分段
+        activePaths.add(currentFile.getAbsolutePath());
+        try {
+            appender = FaceLogTools.getFileBackend().open(currentFile, maxFileSize);
+        } catch (IOException e) {
+            e.printStackTrace();
+            activePaths.remove(currentFile.getAbsolutePath());
+            appender = null;
+            return;
+        }
+        ledger = SizeLedger.of(currentFile);
+        accountedLength = currentFile.length();
+        if (ledger != null) {
+            ledger.add(accountedLength - lengthBeforeOpen, existed ? 0 : 1);
+        }
+        segmentDeleted = false;
+        watch(currentFile);
+        for (Listener listener : listeners) {
+            listener.onSegmentOpened(currentFile, resumed);
+        }
+    }
+
+    private void closeCurrent() {
+        if (observer != null) {
+            observer.stopWatching();
+            observer = null;
+        }
+        if (appender == null) {
+            return;
+        }
+        try {
+            appender.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        appender = null;
+        activePaths.remove(currentFile.getAbsolutePath());
+        if (ledger != null) {
+            // 映射分段关闭时截断到实际长度，分段被外部删除时整体移出台账
+            if (currentFile.exists()) {
+                ledger.add(currentFile.length() - accountedLength, 0);
+            } else {
+                ledger.add(-accountedLength, -1);
+            }
+            ledger = null;
+        }
+        for (Listener listener : listeners) {
+            listener.onSegmentClosed(currentFile);
+        }
+    }
+
+    // 监听当前分段被删除或移走，下次写入时重新打开
+    private void watch(File file) {
+        int mask = FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+        observer = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? new DeletionObserver(file, mask) : new DeletionObserver(file.getAbsolutePath(), mask);
+        observer.startWatching();
+    }
+
+    private final class DeletionObserver extends FileObserver {
+
+        @TargetApi(Build.VERSION_CODES.Q)
+        DeletionObserver(File file, int mask) {
+            super(file, mask);
+        }
+
+        // API 29 以下只有按路径的构造函数
+        @SuppressWarnings("deprecation")
+        DeletionObserver(String path, int mask) {
+            super(path, mask);
+        }
+
+        @Override
+        public void onEvent(int event, String path) {
+            segmentDeleted = true;
+        }
+    }
+
+    /**
+     * 分段对应的附属文件，压缩后的分段去掉 .gz 后再加扩展名
+     */
+    static File sidecarOf(File segment, String sidecarExtension) {
+        String path = segment.getPath();
+        if (isCompressed(segment)) {
+            path = path.substring(0, path.length() - SegmentCompactor.EXTENSION.length());
+        }
+        return new File(path + sidecarExtension);
+    }
+
+    /**
+     * 附属文件对应的分段（包括压缩后的分段）是否已不存在
+     */
+    static boolean isOrphanSidecar(File sidecar, String sidecarExtension) {
+        String path = sidecar.getPath();
+        String segment = path.substring(0, path.length() - sidecarExtension.length());
+        return !new File(segment).exists() && !new File(segment + SegmentCompactor.EXTENSION).exists();
+    }
+
+    private static void recoverLength(File file) {
+        try {
+            MappedSegmentAppender.recoverLength(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 获取文件名中的索引（最后一个下划线之后、扩展名之前）
+    static int getFileIndexFromName(String fileName) {
+        try {
+            int start = fileName.lastIndexOf('_') + 1;
+            int end = fileName.indexOf('.', start);
+            return Integer.parseInt(fileName.substring(start, end < 0 ? fileName.length() : end));
+        } catch (Exception e) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.library.logtools;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * 分段摘要：最高级别、各级别记录数与出现过的缓冲区类型，写入 "分段名.sum"
+ * <p>
+ * 由 {@link SegmentRotator} 在写入时累计，最高级别或缓冲区类型变化时以及分段关闭时落盘，
+ * 进程异常退出也不会丢失 E/F 或崩溃记录的标记。清理时只读取摘要，不读取分段内容。
+ * 续写没有摘要的旧分段时，前面的内容无法统计，摘要标记为不完整。
+ */
+final class SegmentSummary implements SegmentRotator.Listener {
+    private static final String TAG = "SegmentSummary";
+    static final String EXTENSION = ".sum";
+    private static final byte[] MAGIC = {'F', 'L', 'B', 'S'};
+    private static final int FLAG_PARTIAL = 1;
+    private static final int NO_LEVEL = -1;
+    private static final int LEVEL_COUNT = Level.values().length;
+
+    private File sidecar;
+    private int maxLevel = NO_LEVEL;
+    private int bufferMask;
+    private final long[] counts = new long[LEVEL_COUNT];
+    private boolean partial;
+    private boolean dirty;
+
+    static File sidecarOf(File segment) {
+        return SegmentRotator.sidecarOf(segment, EXTENSION);
+    }
+
+    /**
+     * 读取分段的摘要，没有摘要或无法读取时返回 null
+     */
+    static Snapshot read(File segment) {
+        File file = sidecarOf(segment);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return readSnapshot(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void onSegmentOpened(File segment, boolean resumed) {
+        sidecar = sidecarOf(segment);
+        Snapshot previous = resumed ? read(segment) : null;
+        maxLevel = previous == null ? NO_LEVEL : previous.maxLevel;
+        bufferMask = previous == null ? 0 : previous.bufferMask;
+        for (int i = 0; i < LEVEL_COUNT; i++) {
+            counts[i] = previous == null ? 0 : previous.counts[i];
+        }
+        partial = resumed && (previous == null || previous.partial);
+        dirty = false;
+        if (!resumed && sidecar.exists()) {
+            // 同名的新分段，旧摘要不再对应
+            long oldLength = sidecar.length();
+            if (sidecar.delete()) {
+                SizeLedger.record(sidecar, -oldLength, 0);
+            }
+        }
+    }
+
+    @Override
+    public void onSegmentClosed(File segment) {
+        if (dirty) {
+            write();
+        }
+        sidecar = null;
+    }
+
+    /**
+     * 记录一条已写入当前分段的记录，只在持有分段序列锁时调用
+     */
+    void onAppended(Level level, BufferType bufferType) {
+        if (sidecar == null) {
+            return;
+        }
+        boolean changed = false;
+        if (level != null) {
+            int ordinal = level.ordinal();
+            counts[ordinal]++;
+            if (level != Level.UNKNOWN && ordinal > maxLevel) {
+                maxLevel = ordinal;
+                changed = true;
+            }
+        }
+        if (bufferType != null && (bufferMask & (1 << bufferType.ordinal())) == 0) {
+            bufferMask |= 1 << bufferType.ordinal();
+            changed = true;
+        }
+        dirty = true;
+        if (changed) {
+            write();
+        }
+    }
+
+    private void write() {
+        File temp = new File(sidecar.getPath() + ".tmp");
+        long oldLength = sidecar.length();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 128))) {
+            out.write(MAGIC);
+            out.writeByte(partial ? FLAG_PARTIAL : 0);
+            out.writeByte(maxLevel);
+            out.writeInt(bufferMask);
+            out.writeByte(LEVEL_COUNT);
+            for (long count : counts) {
+                out.writeLong(count);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "write failed: " + sidecar + ", " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        if (temp.renameTo(sidecar)) {
+            SizeLedger.record(sidecar, sidecar.length() - oldLength, 0);
+            dirty = false;
+        } else {
+            temp.delete();
+        }
+    }
+
+    private static Snapshot readSnapshot(DataInputStream in) throws IOException {
+        for (byte b : MAGIC) {
+            if (in.readByte() != b) {
+                throw new IOException("bad summary magic");
+            }
+        }
+        int flags = in.readUnsignedByte();
+        int maxLevel = in.readByte();
+        int bufferMask = in.readInt();
+        int levelCount = in.readUnsignedByte();
+        long[] counts = new long[LEVEL_COUNT];
+        for (int i = 0; i < levelCount; i++) {
+            long count = in.readLong();
+            if (i < LEVEL_COUNT) {
+                counts[i] = count;
+            }
+        }
+        if (maxLevel >= LEVEL_COUNT) {
+            maxLevel = NO_LEVEL;
+        }
+        return new Snapshot(maxLevel, bufferMask, counts, (flags & FLAG_PARTIAL) != 0);
+    }
+
+    /**
+     * 从摘要文件读取的只读结果
+     */
+    static final class Snapshot {
+        // 最高级别的序号，没有记录时为 -1
+        final int maxLevel;
+        final int bufferMask;
+        final long[] counts;
+        // 续写没有摘要的旧分段，统计不包括之前的内容
+        final boolean partial;
+
+        Snapshot(int maxLevel, int bufferMask, long[] counts, boolean partial) {
+            this.maxLevel = maxLevel;
+            this.bufferMask = bufferMask;
+            this.counts = counts;
+            this.partial = partial;
+        }
+
+        Level getMaxLevel() {
+            return maxLevel < 0 ? null : Level.values()[maxLevel];
+        }
+
+        boolean contains(BufferType bufferType) {
+            return (bufferMask & (1 << bufferType.ordinal())) != 0;
+        }
+    }
+}
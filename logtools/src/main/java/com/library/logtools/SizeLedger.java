@@ -0,0 +1,120 @@
+package com.library.logtools;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 受管理目录的字节数与文件数台账
+ * <p>
+ * 分段写入、滚动、压缩以及索引等附属文件在变化时增量记账，超过 maxFolderSize 或 maxFileCount
+ * 时立即触发一次清理；{@link AutoManagerLogTools} 每次完整遍历目录后用实际值校正累计误差。
+ * 附属文件只计字节数、不计文件数，与清理时的统计方式一致。
+ */
+final class SizeLedger {
+    private static final ConcurrentHashMap<String, SizeLedger> ledgers = new ConcurrentHashMap<>();
+
+    private final File directory;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicBoolean cleanPending = new AtomicBoolean();
+    // 第一次完整遍历之前只记账，不触发清理
+    private volatile boolean reconciled;
+
+    private SizeLedger(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 开始管理 directory，已注册时返回已有台账
+     */
+    static SizeLedger register(File directory) {
+        String key = directory.getAbsolutePath();
+        SizeLedger ledger = ledgers.get(key);
+        if (ledger == null) {
+            ledger = new SizeLedger(directory);
+            SizeLedger existing = ledgers.putIfAbsent(key, ledger);
+            if (existing != null) {
+                ledger = existing;
+            }
+        }
+        return ledger;
+    }
+
+    /**
+     * file 所在的受管理目录的台账，不在任何受管理目录下时返回 null
+     */
+    static SizeLedger of(File file) {
+        if (ledgers.isEmpty()) {
+            return null;
+        }
+        for (File dir = file.getAbsoluteFile().getParentFile(); dir != null; dir = dir.getParentFile()) {
+            SizeLedger ledger = ledgers.get(dir.getPath());
+            if (ledger != null) {
+                return ledger;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 为 file 所在的受管理目录记账
+     */
+    static void record(File file, long deltaBytes, int deltaFiles) {
+        SizeLedger ledger = of(file);
+        if (ledger != null) {
+            ledger.add(deltaBytes, deltaFiles);
+        }
+    }
+
+    void add(long deltaBytes, int deltaFiles) {
+        if (deltaBytes == 0 && deltaFiles == 0) {
+            return;
+        }
+        long totalBytes = bytes.addAndGet(deltaBytes);
+        int totalFiles = deltaFiles == 0 ? files.get() : files.addAndGet(deltaFiles);
+        if (!reconciled) {
+            return;
+        }
+        LogConfig config = LogConfigStore.get();
+        if ((totalBytes > config.getMaxFolderSize() || totalFiles > config.getMaxFileCount())
+                && cleanPending.compareAndSet(false, true)) {
+            AutoManagerLogTools.checkAndCleanAsync(directory);
+        }
+    }
+
+    /**
+     * 完整遍历开始前调用，返回当前的 {字节数, 文件数}，校正时据此保留遍历期间记录的增量
+     */
+    long[] mark() {
+        return new long[]{bytes.get(), files.get()};
+    }
+
+    /**
+     * 用完整遍历得到的实际值校正台账，遍历期间各分段记录的增量叠加在遍历结果之上
+     *
+     * @param mark 遍历开始前 {@link #mark()} 的返回值
+     */
+    void reconcile(long[] mark, long totalBytes, int totalFiles) {
+        bytes.addAndGet(totalBytes - mark[0]);
+        files.addAndGet(totalFiles - (int) mark[1]);
+        reconciled = true;
+    }
+
+    /**
+     * 清理结束，之后再次超限时可以重新触发
+     */
+    void onCleanFinished() {
+        cleanPending.set(false);
+    }
+
+    long getBytes() {
+        return bytes.get();
+    }
+
+    int getFileCount() {
+        return files.get();
+    }
+}
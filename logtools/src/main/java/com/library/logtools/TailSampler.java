@@ -0,0 +1,153 @@
+package com.library.logtools;
+
+/**
+ * 尾部采样：低于 persistLevel 的记录不写入文件，只保存在内存环形缓冲区中，
+ * 出现不低于 triggerLevel 的记录时先把缓冲区中的记录按原顺序写入主日志
+ * <p>
+ * 暂存的记录没有行号，也不写入过滤日志；写出时才分配行号，并按暂存的过滤规则命中结果写入过滤日志。
+ * 写出的记录保留原时间戳，因此主日志中会出现早于前面记录的时间，{@link SegmentIndex} 会为此建立条目。
+ * <p>
+ * 记录以编码后的字节连续保存在一个预分配的字节数组中，级别、时间等字段保存在按槽位预分配的数组中，
+ * 不为每条记录创建对象。槽位用完或字节空间不足时覆盖最旧的记录。只在写日志线程使用。
+ */
+final class TailSampler {
+    // 按每条记录的平均字节数估算缓冲区大小
+    private static final int AVERAGE_RECORD_BYTES = 192;
+    private static final int MIN_DATA_SIZE = 16 * 1024;
+    private static final int MAX_DATA_SIZE = 4 * 1024 * 1024;
+    private static final Level[] LEVELS = Level.values();
+    private static final BufferType[] BUFFER_TYPES = BufferType.values();
+
+    final Level persistLevel;
+    final Level triggerLevel;
+    private final byte[] data;
+    private final long[] offsets;
+    private final int[] bodyLengths;
+    private final int[] messageOffsets;
+    private final long[] times;
+    private final int[] pids;
+    private final byte[] levels;
+    private final byte[] bufferTypes;
+    private final String[] tags;
+    private final String[] locations;
+    // 命中的 ROUTE 规则，没有时为 null
+    private final FilterRule[][] routes;
+    private FilterRule[] polledRoutes;
+    // 最旧与下一条记录的序号，以及已写入 data 的总字节数
+    private long head;
+    private long tail;
+    private long written;
+
+    TailSampler(Level persistLevel, Level triggerLevel, int maxRecords) {
+        this.persistLevel = persistLevel;
+        this.triggerLevel = triggerLevel;
+        int slots = Math.max(1, maxRecords);
+        data = new byte[(int) Math.max(MIN_DATA_SIZE, Math.min(MAX_DATA_SIZE, (long) slots * AVERAGE_RECORD_BYTES))];
+        offsets = new long[slots];
+        bodyLengths = new int[slots];
+        messageOffsets = new int[slots];
+        times = new long[slots];
+        pids = new int[slots];
+        levels = new byte[slots];
+        bufferTypes = new byte[slots];
+        tags = new String[slots];
+        locations = new String[slots];
+        routes = new FilterRule[slots][];
+    }
+
+    /**
+     * 是否只保存在内存中，不直接写入文件
+     */
+    boolean isSampled(Level level) {
+        return level != Level.UNKNOWN && level.ordinal() < persistLevel.ordinal();
+    }
+
+    /**
+     * 是否需要先写出缓冲区中的记录
+     */
+    boolean isTrigger(Level level) {
+        return level != Level.UNKNOWN && level.ordinal() >= triggerLevel.ordinal() && head != tail;
+    }
+
+    /**
+     * 保存一条记录及其过滤规则命中结果，超过缓冲区大小的记录直接丢弃
+     */
+    void add(EncodedRecord record, FilterRuleSet.Evaluation evaluation) {
+        int length = record.getBodyLength();
+        if (length > data.length) {
+            return;
+        }
+        int slots = offsets.length;
+        // 腾出槽位与字节空间
+        while (head != tail && (tail - head >= slots || written + length - offsets[(int) (head % slots)] > data.length)) {
+            evict();
+        }
+        int slot = (int) (tail % slots);
+        int position = (int) (written % data.length);
+        int first = Math.min(length, data.length - position);
+        System.arraycopy(record.getBytes(), 0, data, position, first);
+        System.arraycopy(record.getBytes(), first, data, 0, length - first);
+        offsets[slot] = written;
+        bodyLengths[slot] = length;
+        messageOffsets[slot] = record.getMessageOffset();
+        times[slot] = record.timeMillis;
+        pids[slot] = record.pid;
+        levels[slot] = (byte) record.level.ordinal();
+        bufferTypes[slot] = (byte) record.bufferType.ordinal();
+        tags[slot] = record.tag;
+        locations[slot] = record.location;
+        if (evaluation != null && evaluation.routeCount > 0) {
+            FilterRule[] matched = new FilterRule[evaluation.routeCount];
+            System.arraycopy(evaluation.routes, 0, matched, 0, matched.length);
+            routes[slot] = matched;
+        }
+        written += length;
+        tail++;
+    }
+
+    /**
+     * 取出最旧的一条记录写入 target，没有记录时返回 false；行号由调用方分配，
+     * 命中的过滤规则通过 {@link #polledRoutes()} 获取
+     */
+    boolean poll(EncodedRecord target) {
+        if (head == tail) {
+            return false;
+        }
+        int slot = (int) (head % offsets.length);
+        int length = bodyLengths[slot];
+        byte[] bytes = target.ensureCapacity(length);
+        int position = (int) (offsets[slot] % data.length);
+        int first = Math.min(length, data.length - position);
+        System.arraycopy(data, position, bytes, 0, first);
+        System.arraycopy(data, 0, bytes, first, length - first);
+        target.setLayout(length, messageOffsets[slot]);
+        target.timeMillis = times[slot];
+        target.pid = pids[slot];
+        target.level = LEVELS[levels[slot]];
+        target.bufferType = BUFFER_TYPES[bufferTypes[slot]];
+        target.tag = tags[slot];
+        target.location = locations[slot];
+        polledRoutes = routes[slot];
+        evict();
+        return true;
+    }
+
+    /**
+     * 最近一次 {@link #poll} 取出的记录命中的 ROUTE 规则，没有时为 null
+     */
+    FilterRule[] polledRoutes() {
+        return polledRoutes;
+    }
+
+    int size() {
+        return (int) (tail - head);
+    }
+
+    private void evict() {
+        int slot = (int) (head % offsets.length);
+        tags[slot] = null;
+        locations[slot] = null;
+        routes[slot] = null;
+        head++;
+    }
+}
@@ -0,0 +1,48 @@
+package com.library.logtools;
+
+/**
+ * 不经过 CharsetEncoder 的 UTF-8 编码，直接写入可扩容的字节数组
+ */
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * 将 text 编码写入 record 的缓冲区 position 处
+     *
+     * @return 写入后的位置
+     */
+    static int encode(CharSequence text, EncodedRecord record, int position) {
+        byte[] bytes = record.ensureCapacity(position + text.length() * 3);
+        return encode(text, bytes, position);
+    }
+
+    /**
+     * 调用方需保证 bytes 至少还有 text.length() * 3 个字节的空间
+     */
+    static int encode(CharSequence text, byte[] bytes, int position) {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[position++] = '?';
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+}
@@ -0,0 +1,23 @@
+package com.library.logtools;
+
+/**
+ * 写日志线程（消费者）在环形队列为空时的等待策略
+ */
+public enum WaitStrategy {
+    /**
+     * 锁 + 条件变量挂起，CPU 占用最低，唤醒延迟最大（默认）
+     */
+    BLOCKING,
+    /**
+     * 先自旋再 yield，最后短暂 park，兼顾延迟与 CPU
+     */
+    SLEEPING,
+    /**
+     * 自旋后 Thread.yield()，适合有空闲核心的设备
+     */
+    YIELDING,
+    /**
+     * 纯自旋，延迟最低但独占一个核心，仅用于压测
+     */
+    BUSY_SPIN
+}
@@ -0,0 +1,171 @@
+package com.library.logtools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+public class BinarySegmentRoundTripTest {
+    private static final String[] TAGS = {"Net", "Camera", "中文标签", null};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LogClock clock = new LogClock();
+
+    @Test
+    public void export_matchesTextFormat() throws Exception {
+        BinarySegmentEncoder encoder = new BinarySegmentEncoder();
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        long time = 1_760_000_000_000L;
+        // 超过一个时间块，包含调用位置、null tag、非 ASCII 消息与时间回退（尾部采样写出的较早记录）
+        int count = 600;
+        for (int i = 0; i < count; i++) {
+            time += i % 50 == 49 ? -2_000 : 7;
+            String location = i % 5 == 0 ? "(Main.java:" + (i % 3) + ")#run" : null;
+            EncodedRecord record = record(i + 1, Level.values()[i % 6], BufferType.values()[i % 5], 1000 + i % 3,
+                    TAGS[i % TAGS.length], location, time, "message " + i + (i % 7 == 0 ? " 消息" : ""));
+            expected.append(append(encoder, segment, record));
+            record.release();
+        }
+        File file = write(segment);
+
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        assertEquals(count, LogExporter.exportText(file, exported));
+        assertEquals(expected.toString(), exported.toString("UTF-8"));
+        assertEquals(expected.toString(), readAll(LogExporter.openText(file)));
+    }
+
+    @Test
+    public void invalidate_redefinesDictionary() throws Exception {
+        BinarySegmentEncoder encoder = new BinarySegmentEncoder();
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        EncodedRecord first = record(1, Level.I, BufferType.MAIN, 1, "A", null, 1000, "first");
+        expected.append(append(encoder, segment, first));
+        // 上一帧写入失败：编码端丢弃字典，下一条记录重新定义同一个 tag
+        EncodedRecord lost = record(2, Level.I, BufferType.MAIN, 1, "B", null, 1001, "lost");
+        encoder.encodeHead(lost);
+        encoder.invalidate();
+        EncodedRecord third = record(3, Level.W, BufferType.MAIN, 1, "B", null, 1002, "third");
+        expected.append(append(encoder, segment, third));
+        EncodedRecord fourth = record(4, Level.W, BufferType.MAIN, 1, "A", null, 1003, "fourth");
+        expected.append(append(encoder, segment, fourth));
+
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        assertEquals(3, LogExporter.exportText(write(segment), exported));
+        assertEquals(expected.toString(), exported.toString("UTF-8"));
+    }
+
+    @Test
+    public void truncatedLastFrame_keepsDecodedRecords() throws Exception {
+        BinarySegmentEncoder encoder = new BinarySegmentEncoder();
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        String expected = append(encoder, segment, record(1, Level.I, BufferType.MAIN, 1, "A", null, 1000, "kept"));
+        append(encoder, segment, record(2, Level.I, BufferType.MAIN, 1, "A", null, 1001, "truncated message"));
+        byte[] bytes = segment.toByteArray();
+        ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        partial.write(bytes, 0, bytes.length - 5);
+
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        assertEquals(1, LogExporter.exportText(write(partial), exported));
+        assertEquals(expected, exported.toString("UTF-8"));
+    }
+
+    @Test
+    public void preallocatedPadding_endsSegment() throws Exception {
+        BinarySegmentEncoder encoder = new BinarySegmentEncoder();
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        String expected = append(encoder, segment, record(1, Level.E, BufferType.CRASH, 1, "A", null, 1000, "only"));
+        segment.write(new byte[64]);
+
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        assertEquals(1, LogExporter.exportText(write(segment), exported));
+        assertEquals(expected, exported.toString("UTF-8"));
+    }
+
+    @Test
+    public void textSegment_copiedAsIs() throws Exception {
+        String text = "<1> [1] [MAIN] [I] [2026-01-01 00:00:00.000] [T] plain\n";
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        segment.write(text.getBytes("UTF-8"));
+
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        assertEquals(-1, LogExporter.exportText(write(segment), exported));
+        assertEquals(text, exported.toString("UTF-8"));
+    }
+
+    @Test
+    public void zigzag_mapsSignedToUnsigned() {
+        assertEquals(0, BinarySegmentEncoder.zigzag(0));
+        assertEquals(1, BinarySegmentEncoder.zigzag(-1));
+        assertEquals(2, BinarySegmentEncoder.zigzag(1));
+        assertEquals(-1L, BinarySegmentEncoder.zigzag(Long.MIN_VALUE));
+    }
+
+    // 按写日志线程的方式构造记录，头部与文本格式相同
+    private EncodedRecord record(int line, Level level, BufferType bufferType, int pid, String tag, String location,
+                                 long time, String message) {
+        StringBuilder header = new StringBuilder();
+        header.append('[').append(pid).append("] ");
+        header.append('[').append(bufferType.name()).append("] ");
+        header.append('[').append(level.name()).append("] ");
+        header.append('[');
+        clock.appendTimestamp(header, time);
+        header.append("] ");
+        if (location != null) {
+            header.append("[ ").append(location).append(" ] ");
+        } else {
+            header.append('[').append(tag).append("] ");
+        }
+        EncodedRecord record = EncodedRecord.obtain();
+        record.encode(header, message);
+        record.lineNumber = line;
+        record.level = level;
+        record.bufferType = bufferType;
+        record.pid = pid;
+        record.tag = tag;
+        record.location = location;
+        record.timeMillis = time;
+        return record;
+    }
+
+    // 与 appendLine 相同：头部帧 + 不含换行符的消息；返回该记录对应的文本行
+    private static String append(BinarySegmentEncoder encoder, OutputStream out, EncodedRecord record)
+            throws Exception {
+        int headLength = encoder.encodeHead(record);
+        out.write(encoder.buffer(), 0, headLength);
+        out.write(record.getBytes(), record.getMessageOffset(), record.getMessageTextLength());
+        return "<" + record.lineNumber + "> " + new String(record.getBytes(), 0, record.getBodyLength(), "UTF-8");
+    }
+
+    private File write(ByteArrayOutputStream segment) throws Exception {
+        File file = folder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            segment.writeTo(out);
+        }
+        return file;
+    }
+
+    private static String readAll(InputStream in) throws Exception {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[37];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.library.logtools;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ByteMatcherTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void ignoresAsciiCase() {
+        assertEquals(3, find("Error", "an ERROR here"));
+        assertEquals(3, find("ERROR", "an error here"));
+    }
+
+    @Test
+    public void requiresWordBoundaries() {
+        assertEquals(-1, find("error", "xerror"));
+        assertEquals(-1, find("error", "errors"));
+        assertEquals(-1, find("error", "error2"));
+        assertEquals(1, find("error", "(error)"));
+        assertEquals(5, find("error", "_err error_"));
+        // 第一个候选不在边界上时继续向后查找
+        assertEquals(7, find("error", "errors error"));
+    }
+
+    @Test
+    public void bufferEdgesAreBoundaries() {
+        assertEquals(0, find("error", "error"));
+        assertEquals(0, find("error", "error at start"));
+        assertEquals(6, find("error", "ended error"));
+    }
+
+    @Test
+    public void boundaryUsesWholeBuffer_notSearchStart() {
+        ByteBuffer buffer = wrap("aerror error");
+        // 查找起点在单词中间，左侧的 'a' 仍然使 1 处不是边界
+        assertEquals(7, new ByteMatcher("error", true).indexOf(buffer, 1, buffer.limit()));
+    }
+
+    @Test
+    public void searchLimitedToRange() {
+        ByteBuffer buffer = wrap("one error\ntwo error\n");
+        ByteMatcher matcher = new ByteMatcher("error", true);
+        assertEquals(4, matcher.indexOf(buffer, 0, 10));
+        assertEquals(14, matcher.indexOf(buffer, 10, buffer.limit()));
+        assertEquals(-1, matcher.indexOf(buffer, 0, 8));
+        assertEquals(-1, matcher.indexOf(buffer, 15, buffer.limit()));
+    }
+
+    @Test
+    public void punctuationEdges_onlyCheckTokenSide() {
+        // 首字符不是字母数字：左侧不要求边界；尾字符是数字：右侧要求边界
+        assertEquals(1, find("=5", "x=5 y"));
+        assertEquals(-1, find("=5", "x=5y"));
+        assertEquals(3, find("[x]", "abc[x]def"));
+    }
+
+    @Test
+    public void nonAsciiTerm() {
+        String text = "请求 超时 了";
+        int expected = "请求 ".getBytes(UTF_8).length;
+        assertEquals(expected, find("超时", text));
+        assertEquals(-1, find("超时", "请求超 时"));
+    }
+
+    @Test
+    public void agreesWithBruteForce() {
+        Random random = new Random(3);
+        for (int round = 0; round < 2000; round++) {
+            String term = randomText(random, 1 + random.nextInt(4));
+            String text = randomText(random, random.nextInt(40));
+            ByteBuffer buffer = wrap(text);
+            int from = text.isEmpty() ? 0 : random.nextInt(text.length());
+            assertEquals(term + " in \"" + text + "\" from " + from, bruteForce(term, text, from),
+                    new ByteMatcher(term, true).indexOf(buffer, from, buffer.limit()));
+            assertEquals(term + " in \"" + text + "\" from " + from,
+                    text.toLowerCase(Locale.US).indexOf(term.toLowerCase(Locale.US), from),
+                    new ByteMatcher(term, false).indexOf(buffer, from, buffer.limit()));
+        }
+    }
+
+    @Test
+    public void substring_matchesInsideWords() {
+        assertEquals(7, findSubstring("timeout", "ConnectTimeoutException"));
+        assertEquals(2, findSubstring("Exception", "IOException: reset"));
+        assertEquals(1, findSubstring("error", "xerror"));
+        assertEquals(-1, findSubstring("errors", "error"));
+        assertEquals(3, findSubstring("超时", "请超时"));
+    }
+
+    private static int find(String term, String text) {
+        ByteBuffer buffer = wrap(text);
+        return new ByteMatcher(term, true).indexOf(buffer, 0, buffer.limit());
+    }
+
+    private static int findSubstring(String term, String text) {
+        ByteBuffer buffer = wrap(text);
+        return new ByteMatcher(term, false).indexOf(buffer, 0, buffer.limit());
+    }
+
+    private static ByteBuffer wrap(String text) {
+        return ByteBuffer.wrap(text.getBytes(UTF_8));
+    }
+
+    private static int bruteForce(String term, String text, int from) {
+        String lowerTerm = term.toLowerCase(Locale.US);
+        String lowerText = text.toLowerCase(Locale.US);
+        boolean left = isToken(term.charAt(0));
+        boolean right = isToken(term.charAt(term.length() - 1));
+        for (int i = from; i + term.length() <= text.length(); i++) {
+            if (!lowerText.startsWith(lowerTerm, i)) {
+                continue;
+            }
+            int end = i + term.length();
+            if (left && i > 0 && isToken(text.charAt(i - 1))) {
+                continue;
+            }
+            if (right && end < text.length() && isToken(text.charAt(end))) {
+                continue;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean isToken(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    // 少量字母、数字与分隔符，产生大量部分匹配与边界情况
+    private static String randomText(Random random, int length) {
+        String alphabet = "aAb1 -";
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,224 @@
+package com.library.logtools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CleanupPlannerTest {
+    private static final String[] SIDECARS = {SegmentIndex.EXTENSION, SegmentBloom.EXTENSION,
+            SegmentSummary.EXTENSION};
+    private static final RetentionRule[] NO_RULES = new RetentionRule[0];
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void underLimits_selectsNothing() throws Exception {
+        create("log_20260101_1.txt", 100);
+        create("log_20260101_1.txt.idx", 20);
+        CleanupPlanner planner = scan();
+        assertEquals(120, planner.getTotalSize());
+        // 附属文件只计大小，不计文件数
+        assertEquals(1, planner.getTotalCount());
+        assertTrue(planner.plan(NO_RULES, 1000, 10, 0.5, now()).isEmpty());
+    }
+
+    @Test
+    public void overSize_selectsOldestUntilTarget() throws Exception {
+        create("log_20260103_2.txt", 100);
+        create("log_20260102_1.txt", 100);
+        create("log_20260103_1.txt", 100);
+        create("log_20260101_1.txt", 100);
+        create("log_20260101_1.txt.idx", 20);
+        // 420 字节，上限 300，删到 150 以下至少需要释放 270
+        List<CleanupPlanner.Entry> selected = scan().plan(NO_RULES, 300, 100, 0.5, now());
+        assertEquals(Arrays.asList("log_20260101_1.txt", "log_20260102_1.txt", "log_20260103_1.txt"),
+                names(selected));
+        assertEquals(120, selected.get(0).weight);
+    }
+
+    @Test
+    public void overCount_selectsOldestFiles() throws Exception {
+        for (int day = 1; day <= 5; day++) {
+            create("log_2026010" + day + "_1.txt", 10);
+            create("log_2026010" + day + "_1.txt.sum", 10);
+        }
+        List<CleanupPlanner.Entry> selected = scan().plan(NO_RULES, 10_000, 4, 0.5, now());
+        assertEquals(Arrays.asList("log_20260101_1.txt", "log_20260102_1.txt", "log_20260103_1.txt"),
+                names(selected));
+    }
+
+    @Test
+    public void sameDay_orderedByIndex() throws Exception {
+        create("log_20260101_10.txt", 100);
+        create("log_20260101_9.txt", 100);
+        create("log_20260101_2.txt", 100);
+        List<CleanupPlanner.Entry> selected = scan().plan(NO_RULES, 150, 100, 1.0, now());
+        assertEquals(Arrays.asList("log_20260101_2.txt", "log_20260101_9.txt"), names(selected));
+    }
+
+    @Test
+    public void otherFiles_orderedByModificationTime() throws Exception {
+        create("log_20260105_1.txt", 100);
+        File old = create("notes.txt", 100);
+        assertTrue(old.setLastModified(millis(2026, 1, 1)));
+        List<CleanupPlanner.Entry> selected = scan().plan(NO_RULES, 150, 100, 1.0, now());
+        assertEquals(Collections.singletonList("notes.txt"), names(selected));
+    }
+
+    @Test
+    public void orphanSidecar_deletedDuringScan() throws Exception {
+        create("log_20260101_1.txt", 100);
+        File orphan = create("log_20260101_9.txt.idx", 50);
+        File compressedOwner = create("log_20260102_1.txt.gz", 10);
+        File kept = create("log_20260102_1.txt.bloom", 30);
+        CleanupPlanner planner = scan();
+        assertFalse(orphan.exists());
+        assertTrue(kept.exists());
+        assertEquals(140, planner.getTotalSize());
+        assertEquals(2, planner.getTotalCount());
+        // 压缩后分段的附属文件仍然计入分段
+        List<CleanupPlanner.Entry> selected = planner.plan(NO_RULES, 1, 100, 0.5, now());
+        assertEquals(compressedOwner, selected.get(1).file);
+        assertEquals(40, selected.get(1).weight);
+    }
+
+    @Test
+    public void maxAge_deletesExpiredEvenUnderLimits() throws Exception {
+        create("filter_20260101_1.txt", 10);
+        create("filter_20260109_1.txt", 10);
+        create("log_20260101_1.txt", 10);
+        RetentionRule[] rules = {new RetentionRule("filter").withPrefix("filter_").withMaxAgeDays(3)};
+        List<CleanupPlanner.Entry> selected = scan().plan(rules, 10_000, 100, 0.5, now());
+        assertEquals(Collections.singletonList("filter_20260101_1.txt"), names(selected));
+    }
+
+    @Test
+    public void minAge_protectsMatchingFilesUntilOthersAreGone() throws Exception {
+        File error = create("log_20260101_1.txt", 100);
+        writeSummary(error, Level.E);
+        create("log_20260105_1.txt", 100);
+        create("log_20260106_1.txt", 100);
+
+        List<CleanupPlanner.Entry> withoutRules = scan().plan(NO_RULES, 250, 100, 1.0, now());
+        assertEquals(Collections.singletonList("log_20260101_1.txt"), names(withoutRules));
+
+        RetentionRule[] rules = {new RetentionRule("error").withMinLevel(Level.E).withMinAgeDays(14)};
+        List<CleanupPlanner.Entry> withRules = scan().plan(rules, 250, 100, 1.0, now());
+        assertEquals(Arrays.asList("log_20260105_1.txt", "log_20260106_1.txt"), names(withRules));
+
+        // 其它文件都删完仍超限时才删除受保护的文件
+        List<CleanupPlanner.Entry> all = scan().plan(rules, 1, 100, 1.0, now());
+        assertEquals(3, all.size());
+        assertEquals("log_20260101_1.txt", all.get(0).file.getName());
+    }
+
+    @Test
+    public void quota_trimsCategoryOnly() throws Exception {
+        create("filter_20260101_1.txt", 100);
+        create("filter_20260102_1.txt", 100);
+        create("filter_20260103_1.txt", 100);
+        create("log_20260101_1.txt", 100);
+        create("log_20260102_1.txt", 100);
+        RetentionRule[] rules = {new RetentionRule("filter").withPrefix("filter_").withQuotaRatio(0.2)};
+        // 配额 200，超出后删到配额的一半
+        List<CleanupPlanner.Entry> selected = scan().plan(rules, 1000, 100, 0.5, now());
+        assertEquals(Arrays.asList("filter_20260101_1.txt", "filter_20260102_1.txt"), names(selected));
+    }
+
+    @Test
+    public void partialSummary_notMatchedByLevelRules() throws Exception {
+        create("log_20260101_1.txt", 100);
+        File resumed = create("log_20260102_1.txt", 100);
+        create("log_20260103_1.txt", 100);
+        // 续写前没有摘要：只记录了续写后的 V 级别，之前可能已有 E/F
+        writeSummary(resumed, Level.V, true);
+        File verbose = create("log_20260104_1.txt", 100);
+        writeSummary(verbose, Level.V, false);
+
+        RetentionRule[] rules = {new RetentionRule("verbose").withMaxLevel(Level.D).withQuotaRatio(0.1)};
+        List<CleanupPlanner.Entry> selected = scan().plan(rules, 1000, 100, 0.5, now());
+        assertEquals(Collections.singletonList("log_20260104_1.txt"), names(selected));
+
+        RetentionRule[] byPrefix = {new RetentionRule("log").withPrefix("log_").withQuotaRatio(0.1)};
+        assertEquals(4, scan().plan(byPrefix, 1000, 100, 0.5, now()).size());
+    }
+
+    @Test
+    public void activeSegment_countedButNeverSelected() throws Exception {
+        create("log_20260101_1.txt", 100);
+        create("log_20260102_1.txt", 100);
+        SegmentRotator rotator = new SegmentRotator("log_", ".txt");
+        rotator.setMaxFileSize(1024 * 1024);
+        rotator.setDirectory(folder.getRoot());
+        try {
+            File active = rotator.getCurrentFile();
+            assertNotNull(active);
+            byte[] line = "<1> active\n".getBytes("UTF-8");
+            assertTrue(rotator.append(new byte[0], 0, line, 0, line.length, Level.I, BufferType.MAIN));
+            rotator.flush();
+
+            CleanupPlanner planner = scan();
+            assertEquals(3, planner.getTotalCount());
+            // 摘要在第一条记录写入时落盘
+            assertEquals(200 + line.length + SegmentSummary.sidecarOf(active).length(), planner.getTotalSize());
+            List<CleanupPlanner.Entry> selected = planner.plan(NO_RULES, 1, 1, 0.5, now());
+            assertEquals(Arrays.asList("log_20260101_1.txt", "log_20260102_1.txt"), names(selected));
+        } finally {
+            rotator.close();
+        }
+    }
+
+    private CleanupPlanner scan() {
+        return CleanupPlanner.scan(folder.getRoot(), SIDECARS);
+    }
+
+    private File create(String name, int length) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+        return file;
+    }
+
+    private static void writeSummary(File segment, Level level) {
+        writeSummary(segment, level, false);
+    }
+
+    private static void writeSummary(File segment, Level level, boolean resumed) {
+        SegmentSummary summary = new SegmentSummary();
+        summary.onSegmentOpened(segment, resumed);
+        summary.onAppended(level, BufferType.MAIN);
+        summary.onSegmentClosed(segment);
+        assertTrue(SegmentSummary.sidecarOf(segment).isFile());
+    }
+
+    private static List<String> names(List<CleanupPlanner.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (CleanupPlanner.Entry entry : entries) {
+            names.add(entry.file.getName());
+        }
+        return names;
+    }
+
+    private static long now() {
+        return millis(2026, 1, 10);
+    }
+
+    private static long millis(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day, 12, 0);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,189 @@
+package com.library.logtools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FilterRuleParserTest {
+
+    @Test
+    public void andBindsTighterThanOr() {
+        FilterRuleSet set = compile("route r : tag=A or tag=B and level>=E");
+        assertEquals(Collections.singletonList("r"), routes(set, Level.D, "A", ""));
+        assertEquals(Collections.<String>emptyList(), routes(set, Level.D, "B", ""));
+        assertEquals(Collections.singletonList("r"), routes(set, Level.E, "B", ""));
+    }
+
+    @Test
+    public void parenthesesOverridePrecedence() {
+        FilterRuleSet set = compile("route r : (tag=A or tag=B) and level>=E");
+        assertEquals(Collections.<String>emptyList(), routes(set, Level.D, "A", ""));
+        assertEquals(Collections.singletonList("r"), routes(set, Level.E, "A", ""));
+        assertEquals(Collections.singletonList("r"), routes(set, Level.F, "B", ""));
+    }
+
+    @Test
+    public void notBindsTighterThanAnd() {
+        FilterRuleSet set = compile("route r : not tag=A and level=W");
+        assertEquals(Collections.singletonList("r"), routes(set, Level.W, "B", ""));
+        assertEquals(Collections.<String>emptyList(), routes(set, Level.W, "A", ""));
+        assertEquals(Collections.<String>emptyList(), routes(set, Level.I, "B", ""));
+    }
+
+    @Test
+    public void symbolAliasesAndQuotedKeywords() {
+        FilterRuleSet set = compile("route r : !(tag=A) && (\"time out\" || keyword=\"say \\\"hi\\\"\")");
+        assertEquals(Collections.singletonList("r"), routes(set, Level.I, "B", "request time out"));
+        assertEquals(Collections.singletonList("r"), routes(set, Level.I, "B", "say \"hi\" now"));
+        assertEquals(Collections.<String>emptyList(), routes(set, Level.I, "A", "request time out"));
+        assertEquals(Collections.<String>emptyList(), routes(set, Level.I, "B", "timeout"));
+    }
+
+    @Test
+    public void conditions() {
+        assertMatches("route r : level<=D", Level.V, "T", "", true);
+        assertMatches("route r : level<D", Level.D, "T", "", false);
+        assertMatches("route r : level!=I", Level.I, "T", "", false);
+        assertMatches("route r : buffer=main", Level.I, "T", "", true);
+        assertMatches("route r : buffer!=MAIN", Level.I, "T", "", false);
+        assertMatches("route r : tag ~ \"^Ne.\"", Level.I, "Net", "", true);
+        assertMatches("route r : tag!=Net", Level.I, "Net", "", false);
+        assertMatches("route r : pid=7", Level.I, "T", "", true);
+        assertMatches("route r : pid!=7", Level.I, "T", "", false);
+        assertMatches("route r : msg ~ \"code=\\d+\"", Level.I, "T", "code=42", true);
+        assertMatches("route r : msg ~ \"code=\\d+\"", Level.I, "T", "code=x", false);
+    }
+
+    @Test
+    public void dropStopsEvaluation() {
+        FilterRuleSet set = compile(
+                "route before : tag=A",
+                "drop noisy : tag=A and level<=D",
+                "route after : tag=A");
+        FilterRuleSet.Evaluation evaluation = evaluate(set, Level.D, "A", "");
+        assertTrue(evaluation.drop);
+
+        evaluation = evaluate(set, Level.I, "A", "");
+        assertFalse(evaluation.drop);
+        assertEquals(Arrays.asList("before", "after"), names(evaluation));
+    }
+
+    @Test
+    public void groupAndAction() {
+        FilterRuleSet set = compile("route pay@payment : tag=Pay", "drop quiet : tag=Q");
+        FilterRuleSet.Evaluation evaluation = evaluate(set, Level.I, "Pay", "");
+        assertEquals(1, evaluation.routeCount);
+        assertEquals("payment", evaluation.routes[0].group);
+        List<FilterRuleStats> stats = set.stats();
+        assertEquals("ROUTE", stats.get(0).getAction());
+        assertEquals("DROP", stats.get(1).getAction());
+    }
+
+    @Test
+    public void commentsAndBlankLines_skipped() {
+        FilterRuleSet set = compile("# comment", "", "   ", null);
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void legacyKeywordLine_routesByKeyword() {
+        FilterRuleSet set = compile("timeout+ignored");
+        assertEquals(Collections.singletonList("timeout"), routes(set, Level.I, "T", "read timeout"));
+        assertEquals(Collections.<String>emptyList(), routes(set, Level.I, "T", "ignored"));
+    }
+
+    @Test
+    public void emptyLegacyKeyword_ignored() {
+        FilterRuleSet set = compile("+abc", "+", " + ", "route r : tag=A", "timeout");
+        assertEquals(2, set.stats().size());
+        assertEquals(Collections.singletonList("r"), routes(set, Level.I, "A", "ok"));
+        assertEquals(Arrays.asList("r", "timeout"), routes(set, Level.I, "A", "read timeout"));
+        assertEquals(Collections.<String>emptyList(), routes(set, Level.I, "B", "abc"));
+        assertEquals(Collections.singletonList("timeout"),
+                FilterRuleParser.keywordsOf(Arrays.asList("+abc", "+", "timeout")));
+    }
+
+    @Test
+    public void emptyKeywordInExpression_fallsBackToWholeLine() {
+        String line = "route r : keyword=\"\" or tag=A";
+        FilterRuleSet set = compile(line, "route k : keyword=one");
+        assertEquals(line, set.stats().get(0).getName());
+        assertEquals(Collections.<String>emptyList(), routes(set, Level.I, "A", "other"));
+        assertEquals(Collections.singletonList("k"), routes(set, Level.I, "A", "one"));
+    }
+
+    @Test
+    public void invalidExpressions_fallBackToKeyword() {
+        String[] invalid = {
+                "route r : tag=\"unterminated",
+                "route r : color=red",
+                "route r : msg=plain",
+                "route r : (tag=A",
+                "route r : tag=A)",
+                "route r : tag=A & level=E",
+                "route r : level>=X",
+                "route r : pid=abc",
+                "route r : tag ~ \"[\"",
+                "route r : level>=",
+                "route r : tag>A",
+        };
+        for (String line : invalid) {
+            FilterRuleSet set = compile(line);
+            List<FilterRuleStats> stats = set.stats();
+            assertEquals(line, 1, stats.size());
+            // 旧格式规则以整行（第一个 + 之前）为关键字与规则名
+            assertEquals(line, line, stats.get(0).getName());
+            assertEquals(line, Collections.singletonList(line), FilterRuleParser.keywordsOf(Arrays.asList(line)));
+            assertEquals(line, Collections.singletonList(line), routes(set, Level.E, "A", "xx " + line + " xx"));
+        }
+    }
+
+    @Test
+    public void invalidRule_doesNotAffectOthers() {
+        FilterRuleSet set = compile("route bad : color=red", "route good : tag=A");
+        assertEquals(Collections.singletonList("good"), routes(set, Level.I, "A", ""));
+    }
+
+    @Test
+    public void keywordsOf_collectsEveryReferencedKeyword() {
+        List<String> keywords = FilterRuleParser.keywordsOf(Arrays.asList(
+                "route a : keyword=one or \"two\"",
+                "drop b : keyword=one and not keyword=three",
+                "legacy"));
+        assertEquals(Arrays.asList("one", "two", "three", "legacy"), keywords);
+    }
+
+    private static void assertMatches(String rule, Level level, String tag, String message, boolean expected) {
+        List<String> routes = routes(compile(rule), level, tag, message);
+        assertEquals(rule, expected, !routes.isEmpty());
+    }
+
+    private static FilterRuleSet compile(String... lines) {
+        return FilterRuleParser.compile(Arrays.asList(lines));
+    }
+
+    private static List<String> routes(FilterRuleSet set, Level level, String tag, String message) {
+        return names(evaluate(set, level, tag, message));
+    }
+
+    private static FilterRuleSet.Evaluation evaluate(FilterRuleSet set, Level level, String tag, String message) {
+        LogRecord record = new LogRecord();
+        record.set(level, BufferType.MAIN, 7, tag, message, true, false, null);
+        FilterRuleSet.Evaluation evaluation = new FilterRuleSet.Evaluation();
+        set.evaluate(record, evaluation);
+        return evaluation;
+    }
+
+    private static List<String> names(FilterRuleSet.Evaluation evaluation) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < evaluation.routeCount; i++) {
+            names.add(evaluation.routes[i].name);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,105 @@
+package com.library.logtools;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class GroupCommitWriterTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void restorePolicy() {
+        FaceLogTools.setFlushPolicy(FlushPolicy.DEFAULT);
+    }
+
+    @Test
+    public void belowThreshold_staysBufferedUntilImmediateLevel() throws Exception {
+        FaceLogTools.setFlushPolicy(new FlushPolicy(1024, 60_000, Level.E));
+        File file = folder.newFile("log_20260101_1.txt");
+        GroupCommitWriter writer = new GroupCommitWriter(file);
+        try {
+            append(writer, "debug\n", Level.D);
+            assertEquals(0, file.length());
+            assertEquals(6, writer.length());
+
+            append(writer, "error\n", Level.E);
+            assertEquals(12, file.length());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void byteThreshold_flushes() throws Exception {
+        FaceLogTools.setFlushPolicy(new FlushPolicy(10, 60_000, null));
+        File file = folder.newFile("log_20260101_1.txt");
+        GroupCommitWriter writer = new GroupCommitWriter(file);
+        try {
+            append(writer, "12345\n", Level.F);
+            assertEquals(0, file.length());
+            append(writer, "12345\n", Level.D);
+            assertEquals(12, file.length());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void commitIfDue_waitsForMaxLatency() throws Exception {
+        FaceLogTools.setFlushPolicy(new FlushPolicy(1024, 50, null));
+        File file = folder.newFile("log_20260101_1.txt");
+        GroupCommitWriter writer = new GroupCommitWriter(file);
+        try {
+            assertEquals(-1, writer.commitIfDue(System.nanoTime()));
+            append(writer, "line\n", Level.I);
+            long remaining = writer.commitIfDue(System.nanoTime());
+            assertTrue(remaining > 0 && remaining <= 50_000_000L);
+            assertEquals(0, file.length());
+
+            assertEquals(-1, writer.commitIfDue(System.nanoTime() + 50_000_000L));
+            assertEquals(5, file.length());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void reopen_continuesFromExistingLength() throws Exception {
+        File file = folder.newFile("log_20260101_1.txt");
+        GroupCommitWriter first = new GroupCommitWriter(file);
+        append(first, "first\n", Level.I);
+        first.close();
+
+        GroupCommitWriter second = new GroupCommitWriter(file);
+        try {
+            assertEquals(6, second.length());
+            append(second, "second\n", Level.I);
+            assertEquals(13, second.length());
+        } finally {
+            second.close();
+        }
+        assertEquals(13, file.length());
+    }
+
+    @Test
+    public void earliest_ignoresNoWait() {
+        assertEquals(-1, GroupCommitWriter.earliest(-1, -1));
+        assertEquals(5, GroupCommitWriter.earliest(-1, 5));
+        assertEquals(5, GroupCommitWriter.earliest(5, -1));
+        assertEquals(3, GroupCommitWriter.earliest(5, 3));
+    }
+
+    private static void append(GroupCommitWriter writer, String line, Level level) throws Exception {
+        byte[] bytes = line.getBytes(UTF_8);
+        writer.append(new byte[0], 0, bytes, 0, bytes.length, level);
+    }
+}
@@ -0,0 +1,81 @@
+package com.library.logtools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KeywordMatcherTest {
+
+    @Test
+    public void overlappingKeywords_allFoundInInsertionOrder() {
+        KeywordMatcher matcher = new KeywordMatcher(Arrays.asList("hers", "he", "she", "his"));
+        assertEquals(Arrays.asList("hers", "he", "she"), matcher.findAll("ushers"));
+        assertEquals(Collections.singletonList("his"), matcher.findAll("this"));
+        assertTrue(matcher.findAll("nothing here? no").contains("he"));
+        assertEquals(Collections.<String>emptyList(), matcher.findAll("xyz"));
+    }
+
+    @Test
+    public void emptyKeywords_keepCallerIndices() {
+        KeywordMatcher matcher = new KeywordMatcher(Arrays.asList("", "a", null, "b"));
+        assertEquals(4, matcher.size());
+        assertFalse(matcher.isEmpty());
+        assertEquals(1, matcher.indexOf("a"));
+        assertEquals(3, matcher.indexOf("b"));
+        assertEquals(-1, matcher.indexOf("c"));
+        boolean[] found = new boolean[matcher.size()];
+        assertEquals(1, matcher.matchInto("xbx", found));
+        assertArrayEquals(new boolean[]{false, false, false, true}, found);
+        assertEquals(Arrays.asList("a", "b"), matcher.findAll("ab"));
+        assertTrue(new KeywordMatcher(Arrays.asList("", null)).isEmpty());
+    }
+
+    @Test
+    public void emptyMatcher_matchesNothing() {
+        assertTrue(KeywordMatcher.EMPTY.isEmpty());
+        assertTrue(KeywordMatcher.EMPTY.findAll("anything").isEmpty());
+        assertEquals(0, KeywordMatcher.EMPTY.matchInto("anything", new boolean[0]));
+    }
+
+    @Test
+    public void matchInto_agreesWithContains() {
+        Random random = new Random(42);
+        List<String> keywords = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            keywords.add(randomText(random, 1 + random.nextInt(4)));
+        }
+        KeywordMatcher matcher = new KeywordMatcher(keywords);
+        boolean[] found = new boolean[matcher.size()];
+        for (int round = 0; round < 500; round++) {
+            String text = randomText(random, random.nextInt(60));
+            int count = matcher.matchInto(text, found);
+            int expectedCount = 0;
+            for (String keyword : keywords) {
+                int index = matcher.indexOf(keyword);
+                boolean expected = text.contains(keyword);
+                assertEquals(keyword + " in " + text, expected, found[index]);
+            }
+            for (boolean hit : found) {
+                if (hit) {
+                    expectedCount++;
+                }
+            }
+            assertEquals(expectedCount, count);
+        }
+    }
+
+    // 小字母表让关键字之间大量共享前缀与后缀
+    private static String randomText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(3)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,149 @@
+package com.library.logtools;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LogCollectorClientTest {
+
+    @Test
+    public void failedBatch_resentWithoutDuplicatesAndKeepsTime() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        LogCollectorClient client = new LogCollectorClient("test", connector);
+        client.add(record("a", 1000));
+        client.add(record("b", 2000));
+        client.send();
+
+        // 收集进程已收到这一批，但发送端认为失败
+        client.add(record("c", 3000));
+        connector.failNextFlush = true;
+        try {
+            client.send();
+            fail("send should fail");
+        } catch (IOException expected) {
+        }
+
+        long before = System.currentTimeMillis();
+        client.add(record("d", 0));
+        long after = System.currentTimeMillis();
+        client.send();
+        assertEquals(2, connector.connections.size());
+
+        List<LogRecord> received = receiveAll(connector);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), messages(received));
+        assertEquals(1000, received.get(0).timeMillis);
+        assertEquals(3000, received.get(2).timeMillis);
+        // 没有时间的记录在加入批次时取时间
+        assertTrue(received.get(3).timeMillis >= before && received.get(3).timeMillis <= after);
+        assertEquals(Level.W, received.get(0).level);
+        assertEquals("Tag", received.get(0).tag);
+    }
+
+    @Test
+    public void takePending_returnsUnsentRecordsWithTheirTime() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        LogCollectorClient client = new LogCollectorClient("test", connector);
+        client.add(record("sent", 1000));
+        client.send();
+
+        // 收集进程退出：已有连接写入失败，之后无法重连
+        connector.broken = true;
+        connector.refuse = true;
+        client.add(record("e", 5000));
+        client.add(record("f", 0));
+        try {
+            client.send();
+            fail("send should fail");
+        } catch (IOException expected) {
+        }
+        List<LogRecord> pending = client.takePending();
+        assertEquals(Arrays.asList("e", "f"), messages(pending));
+        assertEquals(5000, pending.get(0).timeMillis);
+        assertTrue(pending.get(1).timeMillis > 0);
+        assertTrue(client.takePending().isEmpty());
+
+        // 接管后写入的记录不会再被发送
+        connector.broken = false;
+        connector.refuse = false;
+        client.add(record("g", 6000));
+        client.send();
+        assertEquals(Arrays.asList("sent", "g"), messages(receiveAll(connector)));
+    }
+
+    private static LogRecord record(String message, long timeMillis) {
+        LogRecord record = new LogRecord();
+        record.set(Level.W, BufferType.MAIN, 7, "Tag", message, true, false, null);
+        record.timeMillis = timeMillis;
+        return record;
+    }
+
+    // 按连接顺序交给收集进程解码，模拟同一个收集进程先后收到的连接
+    private static List<LogRecord> receiveAll(FakeConnector connector) throws IOException {
+        final List<LogRecord> records = new ArrayList<>();
+        for (ByteArrayOutputStream connection : connector.connections) {
+            LogCollector.receive(new ByteArrayInputStream(connection.toByteArray()), new LogCollector.Publisher() {
+                @Override
+                public void publish(LogRecord record) {
+                    LogRecord copy = new LogRecord();
+                    copy.set(record.level, record.bufferType, record.pid, record.tag, record.message,
+                            record.writeToFile, record.showStackTrace, record.caller);
+                    copy.timeMillis = record.timeMillis;
+                    records.add(copy);
+                }
+            });
+        }
+        return records;
+    }
+
+    private static List<String> messages(List<LogRecord> records) {
+        List<String> messages = new ArrayList<>();
+        for (LogRecord record : records) {
+            messages.add(record.message);
+        }
+        return messages;
+    }
+
+    // 每次连接记录写入的字节；可拒绝连接、让写入失败，或在数据写入后让 flush 失败
+    private static final class FakeConnector implements LogCollectorClient.Connector {
+        final List<ByteArrayOutputStream> connections = new ArrayList<>();
+        boolean refuse;
+        boolean broken;
+        boolean failNextFlush;
+
+        @Override
+        public OutputStream connect(String name) throws IOException {
+            if (refuse) {
+                throw new IOException("refused");
+            }
+            ByteArrayOutputStream connection = new ByteArrayOutputStream() {
+                @Override
+                public synchronized void write(byte[] b, int off, int len) {
+                    if (!broken) {
+                        super.write(b, off, len);
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (broken) {
+                        throw new IOException("collector gone");
+                    }
+                    if (failNextFlush) {
+                        failNextFlush = false;
+                        throw new IOException("broken pipe");
+                    }
+                }
+            };
+            connections.add(connection);
+            return connection;
+        }
+    }
+}
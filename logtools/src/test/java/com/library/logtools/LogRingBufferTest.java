@@ -0,0 +1,112 @@
+package com.library.logtools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LogRingBufferTest {
+    private static final int PRODUCERS = 4;
+    private static final int RECORDS_PER_PRODUCER = 20_000;
+
+    @Test
+    public void multipleProducers_keepPerProducerOrder() throws Exception {
+        // 队列远小于记录总数，生产者会反复等待写日志线程腾出空间
+        LogRingBuffer buffer = new LogRingBuffer(64, WaitStrategy.BLOCKING);
+        final int[] lastSeen = new int[PRODUCERS];
+        final List<String> errors = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(PRODUCERS * RECORDS_PER_PRODUCER);
+        for (int i = 0; i < PRODUCERS; i++) {
+            lastSeen[i] = -1;
+        }
+        buffer.start(new LogRingBuffer.RecordHandler() {
+            @Override
+            public void onRecord(LogRecord record, boolean endOfBatch) {
+                int producer = record.pid;
+                int index = Integer.parseInt(record.message);
+                if (index != lastSeen[producer] + 1) {
+                    errors.add("producer " + producer + ": " + lastSeen[producer] + " -> " + index);
+                }
+                lastSeen[producer] = index;
+                done.countDown();
+            }
+
+            @Override
+            public long onIdle() {
+                return -1;
+            }
+        });
+
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < RECORDS_PER_PRODUCER; i++) {
+                        long sequence = buffer.next();
+                        buffer.get(sequence).set(Level.D, BufferType.MAIN, producer, "T", String.valueOf(i),
+                                true, false, null);
+                        buffer.publish(sequence);
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertTrue("records not consumed", done.await(10, TimeUnit.SECONDS));
+        assertTrue(errors.toString(), errors.isEmpty());
+        for (int p = 0; p < PRODUCERS; p++) {
+            assertEquals(RECORDS_PER_PRODUCER - 1, lastSeen[p]);
+        }
+    }
+
+    @Test
+    public void nextOrDrop_onConsumerThreadWithFullQueue_dropsInsteadOfBlocking() throws Exception {
+        final LogRingBuffer buffer = new LogRingBuffer(4, WaitStrategy.BLOCKING);
+        final CountDownLatch handled = new CountDownLatch(1);
+        final long[] claimed = new long[8];
+        buffer.start(new LogRingBuffer.RecordHandler() {
+            @Override
+            public void onRecord(LogRecord record, boolean endOfBatch) {
+                if (!"outer".equals(record.message)) {
+                    return;
+                }
+                // 在写日志线程中提交超过容量的记录，队列满后应返回 -1 而不是等待自己
+                for (int i = 0; i < claimed.length; i++) {
+                    claimed[i] = buffer.nextOrDrop();
+                    if (claimed[i] >= 0) {
+                        buffer.get(claimed[i]).set(Level.D, BufferType.MAIN, 0, "T", "inner", true, false, null);
+                        buffer.publish(claimed[i]);
+                    }
+                }
+                handled.countDown();
+            }
+
+            @Override
+            public long onIdle() {
+                return -1;
+            }
+        });
+        long sequence = buffer.next();
+        buffer.get(sequence).set(Level.D, BufferType.MAIN, 0, "T", "outer", true, false, null);
+        buffer.publish(sequence);
+
+        assertTrue("writer thread blocked on its own queue", handled.await(5, TimeUnit.SECONDS));
+        int dropped = 0;
+        for (long value : claimed) {
+            if (value < 0) {
+                dropped++;
+            }
+        }
+        assertTrue(dropped > 0);
+        assertEquals(dropped, buffer.getDroppedCount());
+    }
+}
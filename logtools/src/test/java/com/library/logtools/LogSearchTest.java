@@ -0,0 +1,60 @@
+package com.library.logtools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LogSearchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void substringSearch_ignoresBloomForPartialWords() throws Exception {
+        File segment = writeSegment("log_20260101_1.txt", "<1> [1] [MAIN] [E] [T] java.net.ConnectTimeoutException",
+                "<2> [1] [MAIN] [I] [T] ok");
+        assertEquals(Collections.singletonList("<1> [1] [MAIN] [E] [T] java.net.ConnectTimeoutException"),
+                LogSearch.search(folder.getRoot(), "timeout"));
+        assertEquals(Collections.singletonList(segment), LogSearch.candidates(folder.getRoot(), "timeout"));
+        // 完整单词查找时 Bloom 过滤器排除该分段
+        assertTrue(LogSearch.search(folder.getRoot(), "timeout", true).isEmpty());
+        assertTrue(LogSearch.candidates(folder.getRoot(), "timeout", true).isEmpty());
+    }
+
+    @Test
+    public void onlyLogSegmentsSearched() throws Exception {
+        File older = writeSegment("log_20260101_1.txt", "<1> [1] [MAIN] [E] [T] needle one");
+        File newer = writeSegment("log_20260102_1.txt", "<1> [1] [MAIN] [E] [T] needle two");
+        assertTrue(older.setLastModified(newer.lastModified() - 10_000));
+        writeSegment("crash_20260101_1.txt", "needle crash");
+        writeSegment("notes.txt", "needle notes");
+        writeSegment("log_notes.txt", "needle");
+        assertEquals(Arrays.asList(older, newer), LogSearch.listSegments(folder.getRoot()));
+        List<String> lines = LogSearch.search(folder.getRoot(), "needle");
+        assertEquals(Arrays.asList("<1> [1] [MAIN] [E] [T] needle one", "<1> [1] [MAIN] [E] [T] needle two"), lines);
+    }
+
+    // 按分段关闭时的方式写入文本并生成 Bloom 过滤器
+    private File writeSegment(String name, String... lines) throws Exception {
+        File segment = new File(folder.getRoot(), name);
+        SegmentBloom bloom = new SegmentBloom();
+        bloom.onSegmentOpened(segment, false);
+        try (FileOutputStream out = new FileOutputStream(segment)) {
+            for (String line : lines) {
+                byte[] bytes = (line + "\n").getBytes("UTF-8");
+                out.write(bytes);
+                bloom.add(bytes, 0, bytes.length);
+            }
+        }
+        bloom.onSegmentClosed(segment);
+        return segment;
+    }
+}
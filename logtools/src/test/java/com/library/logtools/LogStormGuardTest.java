@@ -0,0 +1,145 @@
+package com.library.logtools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LogStormGuardTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    private final LogStormGuard guard = new LogStormGuard();
+    // 与 LogStormGuard 初始化时的统计起点对齐
+    private final long start = System.nanoTime();
+
+    @Test
+    public void tokenBucket_allowsBurstThenRefills() {
+        guard.setRateLimit(2, 3);
+        assertTrue(guard.isActive());
+        assertEquals(3, admitted("Net", 10, start));
+        // 每秒补充 2 个令牌，半秒补充 1 个
+        assertEquals(1, admitted("Net", 10, start + SECOND / 2));
+        assertEquals(2, admitted("Net", 10, start + SECOND * 3 / 2));
+        // 长时间空闲也不超过突发上限
+        assertEquals(3, admitted("Net", 10, start + SECOND * 100));
+        // 不同 tag 各自计数
+        assertEquals(3, admitted("Other", 10, start + SECOND * 100));
+    }
+
+    @Test
+    public void tagRateLimit_overridesDefault() {
+        guard.setRateLimit(1, 1);
+        guard.setTagRateLimit("Free", 0, 0);
+        guard.setTagRateLimit("Strict", 1, 2);
+        assertEquals(10, admitted("Free", 10, start));
+        assertEquals(2, admitted("Strict", 10, start));
+        assertEquals(1, admitted("Other", 10, start));
+        guard.setTagRateLimit("Strict", -1, 0);
+        assertEquals(1, admitted("Strict", 10, start + SECOND * 10));
+    }
+
+    @Test
+    public void suppressedCount_reportedEachInterval() {
+        guard.setRateLimit(1, 1);
+        assertEquals(1, admitted("Net", 5, start));
+        assertTrue(notices().isEmpty());
+        assertTrue(guard.reportIfDue(start + SECOND) > 0);
+        assertTrue(notices().isEmpty());
+
+        assertEquals(LogStormGuard.REPORT_INTERVAL_NANOS,
+                guard.reportIfDue(start + LogStormGuard.REPORT_INTERVAL_NANOS));
+        List<String> notices = notices();
+        assertEquals(1, notices.size());
+        assertTrue(notices.get(0), notices.get(0).startsWith("W Net 4 records suppressed by rate limit"));
+    }
+
+    @Test
+    public void repeats_collapsedUntilDifferentRecord() {
+        guard.setCollapseRepeats(true);
+        assertTrue(guard.admit(record(Level.I, "Net", "retry"), start));
+        assertFalse(guard.admit(record(Level.I, "Net", "retry"), start + 1));
+        assertFalse(guard.admit(record(Level.I, "Net", "retry"), start + 2));
+        assertTrue(notices().isEmpty());
+        // 级别不同不是重复
+        assertTrue(guard.admit(record(Level.W, "Net", "retry"), start + 3));
+        assertEquals(Collections.singletonList("I Net last message repeated 2 times"), notices());
+        assertTrue(guard.admit(record(Level.W, "Net", "done"), start + 4));
+        assertTrue(notices().isEmpty());
+    }
+
+    @Test
+    public void repeats_reportedAtIntervalAndIdleTagsDropped() {
+        guard.setCollapseRepeats(true);
+        assertEquals(-1, guard.reportIfDue(start));
+        guard.admit(record(Level.I, "Net", "retry"), start);
+        guard.admit(record(Level.I, "Net", "retry"), start + 1);
+        long first = start + LogStormGuard.REPORT_INTERVAL_NANOS;
+        guard.reportIfDue(first);
+        assertEquals(Collections.singletonList("I Net last message repeated 1 times"), notices());
+        assertEquals(1, guard.trackedTags());
+        // 一个间隔内没有新记录的 tag 不再跟踪
+        guard.reportIfDue(first + LogStormGuard.REPORT_INTERVAL_NANOS);
+        assertTrue(notices().isEmpty());
+        assertEquals(0, guard.trackedTags());
+        assertEquals(-1, guard.reportIfDue(first + LogStormGuard.REPORT_INTERVAL_NANOS * 2));
+    }
+
+    @Test
+    public void trackedTags_boundedEvenWhenAllHavePendingCounts() {
+        guard.setCollapseRepeats(true);
+        for (int i = 0; i < LogStormGuard.MAX_TRACKED_TAGS; i++) {
+            guard.admit(record(Level.I, "T" + i, "same"), start);
+            guard.admit(record(Level.I, "T" + i, "same"), start);
+        }
+        assertEquals(LogStormGuard.MAX_TRACKED_TAGS, guard.trackedTags());
+        assertTrue(notices().isEmpty());
+
+        assertTrue(guard.admit(record(Level.I, "New", "first"), start));
+        assertEquals(1, guard.trackedTags());
+        // 清理前写出每个 tag 的折叠统计
+        assertEquals(LogStormGuard.MAX_TRACKED_TAGS, notices().size());
+    }
+
+    @Test
+    public void trim_keepsTagsWithPendingCountsWhenIdleOnesSuffice() {
+        guard.setCollapseRepeats(true);
+        guard.admit(record(Level.I, "Busy", "same"), start);
+        guard.admit(record(Level.I, "Busy", "same"), start);
+        for (int i = 1; i < LogStormGuard.MAX_TRACKED_TAGS; i++) {
+            guard.admit(record(Level.I, "T" + i, "once"), start);
+        }
+        guard.admit(record(Level.I, "New", "first"), start);
+        assertEquals(2, guard.trackedTags());
+        assertTrue(notices().isEmpty());
+        assertFalse(guard.admit(record(Level.I, "Busy", "same"), start));
+    }
+
+    private int admitted(String tag, int count, long nowNanos) {
+        int admitted = 0;
+        for (int i = 0; i < count; i++) {
+            if (guard.admit(record(Level.I, tag, "message " + i), nowNanos)) {
+                admitted++;
+            }
+        }
+        return admitted;
+    }
+
+    private static LogRecord record(Level level, String tag, String message) {
+        LogRecord record = new LogRecord();
+        record.set(level, BufferType.MAIN, 7, tag, message, true, false, null);
+        return record;
+    }
+
+    // "级别 tag 消息" 形式的待写出统计
+    private List<String> notices() {
+        List<String> notices = new ArrayList<>();
+        LogRecord record = new LogRecord();
+        while (guard.pollNotice(record)) {
+            notices.add(record.level + " " + record.tag + " " + record.message);
+        }
+        return notices;
+    }
+}
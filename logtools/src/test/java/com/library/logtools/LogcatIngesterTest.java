@@ -0,0 +1,168 @@
+package com.library.logtools;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LogcatIngesterTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @After
+    public void tearDown() {
+        LogcatIngester.stopAll();
+    }
+
+    @Test
+    public void parseLine_threadtime() {
+        LogcatIngester ingester = new LogcatIngester(BufferType.SYSTEM, null);
+        assertTrue(parse(ingester, "10-18 09:15:02.123  1234  1250 I ActivityManager: Start proc 4321:com.app/u0a12"));
+        assertEquals(Level.I, ingester.level);
+        assertEquals(1234, ingester.pid);
+        assertEquals("ActivityManager", ingester.tag);
+        assertEquals("Start proc 4321:com.app/u0a12", ingester.message);
+        assertEquals(0, ingester.timeStart);
+    }
+
+    @Test
+    public void parseLine_paddedTagAndColonsInMessage() {
+        LogcatIngester ingester = new LogcatIngester(BufferType.SYSTEM, null);
+        assertTrue(parse(ingester, "10-18 09:15:02.123   321   400 W chatty  : uid=1000(system) expire 3 lines\r"));
+        assertEquals(Level.W, ingester.level);
+        assertEquals(321, ingester.pid);
+        assertEquals("chatty", ingester.tag);
+        assertEquals("uid=1000(system) expire 3 lines", ingester.message);
+
+        assertTrue(parse(ingester, "10-18 09:15:02.124   321   400 E Net:Http: url=http://a:80/ failed"));
+        assertEquals("Net:Http", ingester.tag);
+        assertEquals("url=http://a:80/ failed", ingester.message);
+
+        assertTrue(parse(ingester, "10-18 09:15:02.125   321   400 A libc: "));
+        assertEquals(Level.F, ingester.level);
+        assertEquals("", ingester.message);
+    }
+
+    @Test
+    public void parseLine_events() {
+        LogcatIngester ingester = new LogcatIngester(BufferType.EVENTS, null);
+        assertTrue(parse(ingester, "10-18 09:15:03.001  1000  1021 I am_proc_start: [0,4321,10012,com.app,activity,{com.app/.Main}]"));
+        assertEquals(Level.I, ingester.level);
+        assertEquals(1000, ingester.pid);
+        assertEquals("am_proc_start", ingester.tag);
+        assertEquals("[0,4321,10012,com.app,activity,{com.app/.Main}]", ingester.message);
+
+        assertTrue(parse(ingester, "10-18 09:15:03.002  1000  1021 I battery_level: [85,4123,312]"));
+        assertEquals("battery_level", ingester.tag);
+        // 相同的 tag 复用同一个 String
+        String tag = ingester.tag;
+        assertTrue(parse(ingester, "10-18 09:15:04.002  1000  1021 I battery_level: [84,4120,312]"));
+        assertSame(tag, ingester.tag);
+    }
+
+    @Test
+    public void parseLine_keepsLogcatTime() {
+        LogcatIngester ingester = new LogcatIngester(BufferType.SYSTEM, null);
+        long time = System.currentTimeMillis() - 25_000;
+        assertTrue(parse(ingester, format(time) + "  1234  1250 I Tag: replayed"));
+        assertEquals(time, ingester.timeMillis);
+        // 同一分钟内复用缓存的前缀
+        assertTrue(parse(ingester, format(time + 1) + "  1234  1250 I Tag: next"));
+        assertEquals(time + 1, ingester.timeMillis);
+
+        // 超前当前时间的日期属于上一年
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.MONTH, 2);
+        assertTrue(parse(ingester, format(calendar.getTimeInMillis()) + "  1234  1250 I Tag: old"));
+        calendar.add(Calendar.YEAR, -1);
+        assertEquals(calendar.getTimeInMillis(), ingester.timeMillis);
+
+        assertTrue(parse(ingester, "10-18 09:15:xx.123  1234  1250 I Tag: message"));
+        assertEquals(0, ingester.timeMillis);
+        assertTrue(parse(ingester, "10-18 9:15:02.123  1234  1250 I Tag: message"));
+        assertEquals(-1, ingester.timeStart);
+        assertEquals(0, ingester.timeMillis);
+    }
+
+    @Test
+    public void parseLine_rejectsNonRecords() {
+        LogcatIngester ingester = new LogcatIngester(BufferType.SYSTEM, null);
+        assertFalse(parse(ingester, "--------- beginning of system"));
+        assertFalse(parse(ingester, ""));
+        assertFalse(parse(ingester, "10-18 09:15:02.123  abc  1250 I Tag: message"));
+        assertFalse(parse(ingester, "10-18 09:15:02.123  1234  1250 I no colon here"));
+        assertFalse(parse(ingester, "10-18 09:15:02.123  1234"));
+    }
+
+    @Test
+    public void restart_resumesFromLastLineAndSkipsTruncatedRemainder() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        write(output, "--------- beginning of system\n");
+        write(output, "10-18 09:15:02.100  1000  1021 I First: one\n");
+        // 超过读取缓冲区的一行，截断后剩余部分本身像一条更晚的记录，不能被当作新行解析
+        StringBuilder longLine = new StringBuilder("10-18 09:15:02.200  1000  1021 I Long: ");
+        while (longLine.length() < 64 * 1024) {
+            longLine.append('x');
+        }
+        longLine.append("10-18 23:59:59.999  1000  1021 I Remainder: tail\n");
+        write(output, longLine.toString());
+
+        FakeLauncher launcher = new FakeLauncher(output.toByteArray());
+        LogcatIngester.start(BufferType.EVENTS, launcher);
+        assertTrue("logcat not restarted", launcher.relaunched.await(10, TimeUnit.SECONDS));
+
+        assertEquals(BufferType.EVENTS, launcher.buffer);
+        // 首次从当前时间开始，重启后从最后一条已读记录的时间继续
+        assertTrue(launcher.since.get(0), launcher.since.get(0).matches("\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.\\d{3}"));
+        assertEquals("10-18 09:15:02.200", launcher.since.get(1));
+    }
+
+    private static boolean parse(LogcatIngester ingester, String line) {
+        byte[] bytes = line.getBytes(UTF_8);
+        return ingester.parseLine(bytes, 0, bytes.length);
+    }
+
+    private static String format(long millis) {
+        return new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US).format(new Date(millis));
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) throws IOException {
+        out.write(text.getBytes(UTF_8));
+    }
+
+    // 第一次启动输出固定文本后结束，触发重启；记录每次启动的参数
+    private static final class FakeLauncher implements LogcatLauncher {
+        private final byte[] firstOutput;
+        final List<String> since = new ArrayList<>();
+        final CountDownLatch relaunched = new CountDownLatch(1);
+        volatile BufferType buffer;
+
+        FakeLauncher(byte[] firstOutput) {
+            this.firstOutput = firstOutput;
+        }
+
+        @Override
+        public synchronized InputStream launch(BufferType buffer, String since) {
+            this.buffer = buffer;
+            this.since.add(since);
+            if (this.since.size() == 1) {
+                return new ByteArrayInputStream(firstOutput);
+            }
+            relaunched.countDown();
+            return new ByteArrayInputStream(new byte[0]);
+        }
+    }
+}
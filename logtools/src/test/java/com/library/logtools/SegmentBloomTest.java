@@ -0,0 +1,119 @@
+package com.library.logtools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SegmentBloomTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyWrittenToken_mightBeContained() throws Exception {
+        File segment = folder.newFile("log_20260101_1.txt");
+        SegmentBloom bloom = new SegmentBloom();
+        bloom.onSegmentOpened(segment, false);
+        Random random = new Random(7);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            String token = randomToken(random);
+            tokens.add(token);
+            add(bloom, "[1] [MAIN] [I] [T] " + token + "=" + i + ", ok");
+        }
+        bloom.onSegmentClosed(segment);
+        assertTrue(SegmentBloom.sidecarOf(segment).isFile());
+
+        for (String token : tokens) {
+            assertTrue(token, SegmentBloom.mightContain(segment, SegmentBloom.hashTokens(token)));
+            // 查询与写入使用相同的分词规则，大小写与标点不影响结果
+            assertTrue(token, SegmentBloom.mightContain(segment,
+                    SegmentBloom.hashTokens("\"" + token.toUpperCase(Locale.US) + "\"")));
+        }
+        // 多个单词都需要出现
+        assertTrue(SegmentBloom.mightContain(segment,
+                SegmentBloom.hashTokens(tokens.get(0) + " " + tokens.get(1) + " " + tokens.get(2))));
+    }
+
+    @Test
+    public void absentTokens_mostlyRejected() throws Exception {
+        File segment = folder.newFile("log_20260101_1.txt");
+        SegmentBloom bloom = new SegmentBloom();
+        bloom.onSegmentOpened(segment, false);
+        for (int i = 0; i < 1000; i++) {
+            add(bloom, "present" + i);
+        }
+        bloom.onSegmentClosed(segment);
+
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (SegmentBloom.mightContain(segment, SegmentBloom.hashTokens("absent" + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 20);
+    }
+
+    @Test
+    public void shortTokens_notFiltered() {
+        assertEquals(0, SegmentBloom.hashTokens("ab c? d").length);
+        assertEquals(2, SegmentBloom.hashTokens("abc, x, defg").length);
+    }
+
+    @Test
+    public void substringTerm_onlyInnerTokensFiltered() {
+        // 子串查找时首尾单词可能是日志中更长单词的一部分
+        assertEquals(0, SegmentBloom.hashTokens("timeout", false).length);
+        assertEquals(0, SegmentBloom.hashTokens("connect timeout", false).length);
+        assertArrayEquals(SegmentBloom.hashTokens("reset"), SegmentBloom.hashTokens("peer reset by", false));
+        assertArrayEquals(SegmentBloom.hashTokens("timeout"), SegmentBloom.hashTokens(" timeout:", false));
+    }
+
+    @Test
+    public void missingOrResumedFilter_alwaysMightContain() throws Exception {
+        File segment = folder.newFile("log_20260101_1.txt");
+        long[] hashes = SegmentBloom.hashTokens("anything");
+        assertTrue(SegmentBloom.mightContain(segment, hashes));
+
+        // 续写的分段前面的内容没有分词，不生成过滤器
+        SegmentBloom bloom = new SegmentBloom();
+        bloom.onSegmentOpened(segment, true);
+        add(bloom, "something else");
+        bloom.onSegmentClosed(segment);
+        assertFalse(SegmentBloom.sidecarOf(segment).exists());
+        assertTrue(SegmentBloom.mightContain(segment, hashes));
+    }
+
+    @Test
+    public void corruptFilter_alwaysMightContain() throws Exception {
+        File segment = folder.newFile("log_20260101_1.txt");
+        try (FileOutputStream out = new FileOutputStream(SegmentBloom.sidecarOf(segment))) {
+            out.write(new byte[]{'X', 'X', 'X', 'X', 0, 0, 0, 3});
+        }
+        assertTrue(SegmentBloom.mightContain(segment, SegmentBloom.hashTokens("anything")));
+    }
+
+    private static void add(SegmentBloom bloom, String text) throws Exception {
+        byte[] bytes = text.getBytes("UTF-8");
+        bloom.add(bytes, 0, bytes.length);
+    }
+
+    private static String randomToken(Random random) {
+        int length = 3 + random.nextInt(10);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int c = random.nextInt(36);
+            builder.append(c < 10 ? (char) ('0' + c) : (char) ((random.nextBoolean() ? 'a' : 'A') + c - 10));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,186 @@
+package com.library.logtools;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SegmentIndexTest {
+    private static final long BASE = 1_760_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LogClock clock = new LogClock();
+    private File segment;
+    private SegmentIndex index;
+    private FileOutputStream out;
+    private long offset;
+    private int line;
+    // 写入的每条记录的首行与时间，用于逐条比对
+    private final List<String> lines = new ArrayList<>();
+    private final List<Long> times = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        segment = new File(folder.getRoot(), "log_20260101_1.txt");
+        index = new SegmentIndex();
+        index.onSegmentOpened(segment, false);
+        out = new FileOutputStream(segment);
+    }
+
+    @Test
+    public void entries_sparseAndStartAtFirstRecord() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            append(BASE + i, "message " + i);
+        }
+        close();
+        long[] entries = SegmentIndex.read(segment);
+        assertEquals(0, entries.length % 3);
+        assertEquals(1, entries[0]);
+        assertEquals(BASE, entries[1]);
+        assertEquals(0, entries[2]);
+        // 每 256 条一个条目
+        assertEquals(4 * 3, entries.length);
+        assertEquals(257, entries[3]);
+    }
+
+    @Test
+    public void readLines_matchesWrittenRecords() throws Exception {
+        for (int i = 0; i < 1500; i++) {
+            append(BASE + i, "message " + i);
+        }
+        close();
+        assertEquals(lines.subList(0, 3), SegmentReader.readLines(segment, 1, 3));
+        assertEquals(lines.subList(255, 260), SegmentReader.readLines(segment, 256, 5));
+        assertEquals(lines.subList(1490, 1500), SegmentReader.readLines(segment, 1491, 50));
+        assertTrue(SegmentReader.readLines(segment, 1501, 10).isEmpty());
+        assertTrue(SegmentReader.readLines(segment, 10, 0).isEmpty());
+    }
+
+    @Test
+    public void readLines_includesContinuationLines() throws Exception {
+        append(BASE, "first");
+        append(BASE + 1, "second\n\tat Foo.bar(Foo.java:1)");
+        append(BASE + 2, "third");
+        close();
+        List<String> result = SegmentReader.readLines(segment, 2, 1);
+        assertEquals(2, result.size());
+        assertEquals(lines.get(1), result.get(0));
+        assertEquals("\tat Foo.bar(Foo.java:1)", result.get(1));
+    }
+
+    @Test
+    public void readTimeRange_matchesBruteForce() throws Exception {
+        for (int i = 0; i < 2000; i++) {
+            // 同一毫秒多条记录，跨越索引点
+            append(BASE + i / 3, "message " + i);
+        }
+        close();
+        assertRange(BASE, BASE);
+        assertRange(BASE + 85, BASE + 86);
+        assertRange(BASE + 300, BASE + 450);
+        assertRange(BASE + 660, BASE + 10_000);
+        assertRange(BASE - 100, BASE - 1);
+    }
+
+    @Test
+    public void readTimeRange_findsLateRecordsFromTailSampling() throws Exception {
+        for (int i = 0; i < 1500; i++) {
+            append(BASE + i * 10L, "message " + i);
+        }
+        // 尾部采样写出的一批较早记录
+        for (int i = 0; i < 30; i++) {
+            append(BASE + 5000 + i, "sampled " + i);
+        }
+        for (int i = 1500; i < 2000; i++) {
+            append(BASE + i * 10L, "message " + i);
+        }
+        close();
+        assertRange(BASE + 5000, BASE + 5100);
+        assertRange(BASE + 19_000, BASE + 19_100);
+        assertRange(BASE + 14_995, BASE + 15_005);
+    }
+
+    @Test
+    public void resumedSegment_keepsMaxTimeFromExistingEntries() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            append(BASE + i * 10L, "message " + i);
+        }
+        close();
+        index = new SegmentIndex();
+        index.onSegmentOpened(segment, true);
+        out = new FileOutputStream(segment, true);
+        // 续写后的第一条记录早于续写前的最大时间
+        append(BASE + 15, "late after resume");
+        for (int i = 300; i < 400; i++) {
+            append(BASE + i * 10L, "message " + i);
+        }
+        close();
+        assertRange(BASE + 10, BASE + 20);
+        assertRange(BASE + 2990, BASE + 3100);
+    }
+
+    @Test
+    public void missingIndex_readsFromStart() throws Exception {
+        for (int i = 0; i < 600; i++) {
+            append(BASE + i, "message " + i);
+        }
+        close();
+        assertTrue(SegmentIndex.sidecarOf(segment).delete());
+        assertEquals(0, SegmentIndex.read(segment).length);
+        assertEquals(lines.subList(400, 405), SegmentReader.readLines(segment, 401, 5));
+        assertRange(BASE + 500, BASE + 510);
+    }
+
+    @Test
+    public void lineHeadParsing() {
+        assertEquals(12, SegmentReader.lineNumberOf("<12> [1] [MAIN] [I] [x] [T] m"));
+        assertEquals(-1, SegmentReader.lineNumberOf("\tat Foo.bar"));
+        assertEquals(-1, SegmentReader.lineNumberOf("<> x"));
+        assertEquals(-1, SegmentReader.lineNumberOf("<12"));
+        StringBuilder timestamp = new StringBuilder();
+        clock.appendTimestamp(timestamp, BASE);
+        String text = "<3> [1] [MAIN] [I] [" + timestamp + "] [T] m";
+        assertEquals(timestamp.toString(), SegmentReader.timestampOf(text));
+        assertNull(SegmentReader.timestampOf("<3> [1] [MAIN]"));
+    }
+
+    private void assertRange(long from, long to) throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (times.get(i) >= from && times.get(i) <= to) {
+                expected.add(lines.get(i));
+            }
+        }
+        assertEquals(expected, SegmentReader.readTimeRange(segment, from, to));
+    }
+
+    // 按 appendLine 的方式写入 "<行号> [pid] [buffer] [level] [time] [tag] message" 并更新索引
+    private void append(long time, String message) throws Exception {
+        line++;
+        StringBuilder builder = new StringBuilder("<").append(line).append("> [1] [MAIN] [D] [");
+        clock.appendTimestamp(builder, time);
+        builder.append("] [T] ").append(message);
+        String text = builder.toString();
+        int newline = text.indexOf('\n');
+        lines.add(newline < 0 ? text : text.substring(0, newline));
+        times.add(time);
+        byte[] bytes = (text + "\n").getBytes("UTF-8");
+        index.onAppended(line, time, offset);
+        out.write(bytes);
+        offset += bytes.length;
+    }
+
+    private void close() throws Exception {
+        out.close();
+        index.onSegmentClosed(segment);
+    }
+}